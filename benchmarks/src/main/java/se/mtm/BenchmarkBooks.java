@@ -0,0 +1,80 @@
+package se.mtm;
+
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Books used as input to the benchmarks. All books are valid so the benchmarks measure the
+ * validation walk and not the reporting of issues.
+ */
+public final class BenchmarkBooks {
+
+    /**
+     * Input sizes used by the benchmarks.
+     */
+    public enum Size {
+        SMALL(1, 2, 25),
+        MEDIUM(5, 4, 100),
+        LARGE(40, 5, 100);
+
+        final int volumes;
+        final int sectionsPerVolume;
+        final int pagesPerSection;
+
+        Size(int volumes, int sectionsPerVolume, int pagesPerSection) {
+            this.volumes = volumes;
+            this.sectionsPerVolume = sectionsPerVolume;
+            this.pagesPerSection = pagesPerSection;
+        }
+    }
+
+    private BenchmarkBooks() {}
+
+    /**
+     * Create a book where each volume has a title section followed by content sections.
+     *
+     * @param size  Size of the book
+     * @return      The book as UTF-8 encoded PEF
+     */
+    public static byte[] book(Size size) throws IOException {
+        PEFGenerator generator = new PEFGenerator();
+        generator.setVolumes(size.volumes);
+        generator.setSectionsPerVolume(size.sectionsPerVolume);
+        generator.setPagesPerSection(size.pagesPerSection);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Parse a book into a normalized document the same way as processFileWithDocument.
+     */
+    public static Document parse(byte[] book) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(book)
+        );
+        document.normalize();
+        return document;
+    }
+
+    /**
+     * A stream that throws everything away, so reporting doesn't measure the console.
+     */
+    public static PrintStream nullStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package se.mtm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of complete documents, both the walk of an already parsed document and the
+ * full path from bytes with the DOM parser and the streaming engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DocumentBenchmark {
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BenchmarkBooks.Size size;
+
+    private PEFCheck pefCheck;
+    private byte[] book;
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pefCheck = new PEFCheck(BenchmarkBooks.nullStream());
+        book = BenchmarkBooks.book(size);
+        document = BenchmarkBooks.parse(book);
+    }
+
+    @Benchmark
+    public void processDocument() throws Exception {
+        pefCheck.processDocument(document, true);
+    }
+
+    @Benchmark
+    public void parseAndProcessDocument() throws Exception {
+        pefCheck.processDocument(BenchmarkBooks.parse(book), true);
+    }
+
+    @Benchmark
+    public void processStream() throws Exception {
+        pefCheck.processStream(new ByteArrayInputStream(book), true);
+    }
+}
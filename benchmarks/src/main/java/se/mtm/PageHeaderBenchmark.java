@@ -0,0 +1,64 @@
+package se.mtm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the page numbers at the top of each page, this is done once for every page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PageHeaderBenchmark {
+    private final PEFCheck pefCheck = new PEFCheck();
+    private final PageIdentifiers pageIdentifiers = new PageIdentifiers();
+
+    private String alphaNumber = "#accg";
+    private String romanNumber = "__mcccxxxvii";
+    private String rightRow = "    #bc                     #a";
+    private String leftRangeRow = "    #daj            #bjh--#baj";
+    private String indexRow = "                         __iii";
+
+    @Benchmark
+    public int alphaPageNumber() {
+        return pefCheck.getPageNumber(alphaNumber);
+    }
+
+    @Benchmark
+    public int romanPageNumber() {
+        return pefCheck.getPageNumber(romanNumber);
+    }
+
+    @Benchmark
+    public PageIdentifiers rightPageIdentifiers() {
+        return pefCheck.getPageIdentifiers(rightRow, false, false);
+    }
+
+    @Benchmark
+    public PageIdentifiers leftRangePageIdentifiers() {
+        return pefCheck.getPageIdentifiers(leftRangeRow, true, false);
+    }
+
+    @Benchmark
+    public PageIdentifiers indexPageIdentifiers() {
+        return pefCheck.getPageIdentifiers(indexRow, false, true);
+    }
+
+    @Benchmark
+    public PageIdentifiers reusedPageIdentifiers() {
+        pefCheck.readPageIdentifiers(leftRangeRow, true, false, pageIdentifiers);
+        return pageIdentifiers;
+    }
+}
@@ -0,0 +1,58 @@
+package se.mtm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction and validation of a single section of a parsed document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SectionBenchmark {
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public BenchmarkBooks.Size size;
+
+    private PEFCheck pefCheck;
+    private Element section;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pefCheck = new PEFCheck(BenchmarkBooks.nullStream());
+        Document document = BenchmarkBooks.parse(BenchmarkBooks.book(size));
+        NodeList sections = document.getElementsByTagName("section");
+        // The first section is the title section.
+        section = (Element) sections.item(1);
+    }
+
+    @Benchmark
+    public List<PageIdentifiers> processSection() throws Exception {
+        return pefCheck.processSection(section, false);
+    }
+
+    @Benchmark
+    public int processAndValidateSection() throws Exception {
+        List<PageIdentifiers> pageIdentifiers = pefCheck.processSection(section, false);
+        pefCheck.hasEmptyPages(pageIdentifiers);
+        return pefCheck.validatePageSequence(pageIdentifiers, 0);
+    }
+}
@@ -0,0 +1,58 @@
+package se.mtm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Base for the findings writers, buffers the output and only flushes on request unless
+ * auto flush is turned on.
+ */
+public abstract class AbstractFindingsWriter implements FindingsWriter {
+    private final Writer out;
+
+    /**
+     * Flush after every line, used when the caller expects the old unbuffered behaviour.
+     */
+    private final boolean autoFlush;
+
+    protected AbstractFindingsWriter(Writer out) {
+        this(out, false);
+    }
+
+    protected AbstractFindingsWriter(Writer out, boolean autoFlush) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 14);
+        this.autoFlush = autoFlush;
+    }
+
+    /**
+     * Write a line to the buffer.
+     *
+     * @param line  Text of the line without line separator.
+     */
+    protected void writeLine(String line) {
+        try {
+            out.write(line);
+            out.write(lineSeparator());
+            if (autoFlush) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected String lineSeparator() {
+        return "\n";
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
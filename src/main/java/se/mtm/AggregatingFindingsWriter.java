@@ -0,0 +1,170 @@
+package se.mtm;
+
+/**
+ * Summarizes the findings of each file before passing them on to another writer. Findings of
+ * the same kind that follow each other in a section are merged into one, like a run of empty
+ * pages or a chain of gaps in a broken numbering, see Finding.getCount. At most a limit of
+ * findings is written per file, the rest are counted per kind and written as one finding of
+ * kind SUPPRESSED when the file is done. Errors are never merged or left out.
+ *
+ * The last finding and the suppressed count are held until the file is done: at endFile,
+ * at startFile of the next file or at finishFile. Flushing doesn't end the file, so a run of
+ * findings flushed in parts is still written as one range.
+ */
+public class AggregatingFindingsWriter implements FindingsWriter {
+    private final FindingsWriter delegate;
+    private final int maxFindings;
+
+    private String file;
+    private Finding pending;
+    private int written = 0;
+    private final int[] suppressed = new int[FindingKind.values().length];
+
+    /**
+     * @param delegate      Writer the summarized findings are written to.
+     * @param maxFindings   Findings written per file before the rest are suppressed, 0 for no limit.
+     */
+    public AggregatingFindingsWriter(FindingsWriter delegate, int maxFindings) {
+        if (maxFindings < 0) {
+            throw new IllegalArgumentException("The limit of findings can't be negative");
+        }
+        this.delegate = delegate;
+        this.maxFindings = maxFindings;
+    }
+
+    @Override
+    public void writeHeader() {
+        delegate.writeHeader();
+    }
+
+    @Override
+    public void startFile(String file) {
+        finishFile();
+        this.file = file;
+        written = 0;
+        delegate.startFile(file);
+    }
+
+    @Override
+    public void write(Finding finding) {
+        if (pending != null) {
+            Finding merged = merge(pending, finding);
+            if (merged != null) {
+                pending = merged;
+                return;
+            }
+            emit(pending);
+        }
+        if (finding.getKind() == FindingKind.ERROR) {
+            pending = null;
+            delegate.write(finding);
+        } else {
+            pending = finding;
+        }
+    }
+
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        finishFile();
+        delegate.endFile(file, issues, failed);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    /**
+     * End the current file without a result record: write the finding held back for merging
+     * and the count of suppressed findings. Called by endFile and by startFile of the next file.
+     */
+    public void finishFile() {
+        if (pending != null) {
+            emit(pending);
+            pending = null;
+        }
+        int total = 0;
+        StringBuilder kinds = new StringBuilder();
+        for (FindingKind kind : FindingKind.values()) {
+            if (suppressed[kind.ordinal()] > 0) {
+                if (kinds.length() > 0) {
+                    kinds.append(", ");
+                }
+                kinds.append(suppressed[kind.ordinal()]).append(' ').append(describe(kind));
+                total += suppressed[kind.ordinal()];
+                suppressed[kind.ordinal()] = 0;
+            }
+        }
+        if (total > 0) {
+            delegate.write(new Finding(file, 0, 0, FindingKind.SUPPRESSED, -1, null, -1, null, false,
+                    kinds.toString(), total));
+        }
+    }
+
+    private void emit(Finding finding) {
+        if (maxFindings > 0 && written >= maxFindings) {
+            suppressed[finding.getKind().ordinal()] += finding.getCount();
+            return;
+        }
+        written++;
+        delegate.write(finding);
+    }
+
+    /**
+     * @return  The findings merged into one, or null if the finding doesn't continue the previous one.
+     */
+    static Finding merge(Finding previous, Finding finding) {
+        if (previous.getKind() != finding.getKind()
+                || previous.getVolume() != finding.getVolume()
+                || previous.getSection() != finding.getSection()
+                || previous.isIndexPage() != finding.isIndexPage()
+                || !equal(previous.getFile(), finding.getFile())) {
+            return null;
+        }
+        switch (finding.getKind()) {
+            case EMPTY_PAGE:
+                if (finding.getPage() != previous.getPage() + 1) {
+                    return null;
+                }
+                boolean range = previous.getFirstPage() != -1;
+                return new Finding(
+                        finding.getFile(), finding.getVolume(), finding.getSection(), finding.getKind(),
+                        finding.getPage(), finding.getPrintablePage(), -1, null,
+                        finding.isIndexPage(), null, previous.getCount() + finding.getCount(),
+                        range ? previous.getFirstPage() : previous.getPage(),
+                        range ? previous.getPrintableFirstPage() : previous.getPrintablePage()
+                );
+            case MISSING_PAGES:
+            case ORIGINAL_PAGES:
+                if (finding.getPreviousPage() != previous.getPage()
+                        || !equal(previous.getMessage(), finding.getMessage())) {
+                    return null;
+                }
+                return new Finding(
+                        finding.getFile(), finding.getVolume(), finding.getSection(), finding.getKind(),
+                        finding.getPage(), finding.getPrintablePage(),
+                        previous.getPreviousPage(), previous.getPrintablePreviousPage(),
+                        finding.isIndexPage(), finding.getMessage(), previous.getCount() + finding.getCount()
+                );
+            default:
+                return null;
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String describe(FindingKind kind) {
+        switch (kind) {
+            case MISSING_PAGES:
+                return "missing page gap(s)";
+            case EMPTY_PAGE:
+                return "empty page(s)";
+            case ORIGINAL_PAGES:
+                return "original page finding(s)";
+            default:
+                return kind.name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package se.mtm;
+
+/**
+ * Summary of a batch run over several files.
+ */
+public class BatchSummary {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_ISSUES = 2;
+
+    private int files = 0;
+    private int filesWithIssues = 0;
+    private int failedFiles = 0;
+    private long issues = 0;
+
+    /**
+     * Add the result of one file to the summary.
+     *
+     * @param fileIssues    Number of issues reported for the file
+     * @param failed        True if the file could not be processed
+     */
+    public synchronized void add(int fileIssues, boolean failed) {
+        files++;
+        issues += fileIssues;
+        if (failed) {
+            failedFiles++;
+        } else if (fileIssues > 0) {
+            filesWithIssues++;
+        }
+    }
+
+    public synchronized int getFiles() {
+        return files;
+    }
+
+    public synchronized int getFilesWithIssues() {
+        return filesWithIssues;
+    }
+
+    public synchronized int getFailedFiles() {
+        return failedFiles;
+    }
+
+    public synchronized long getIssues() {
+        return issues;
+    }
+
+    /**
+     * @return  Exit code for the run, EXIT_ISSUES if any file had issues or failed.
+     */
+    public synchronized int getExitCode() {
+        return filesWithIssues > 0 || failedFiles > 0 ? EXIT_ISSUES : EXIT_OK;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Checked " + files + " file(s), " + filesWithIssues + " with issues, " +
+                failedFiles + " failed, " + issues + " issue(s) in total";
+    }
+}
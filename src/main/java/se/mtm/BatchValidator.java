@@ -0,0 +1,639 @@
+package se.mtm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Validates a batch of files on a bounded pool of worker threads. The findings of each file are
+ * collected by the worker and written as one block, so reports of different files are never
+ * mixed in the output.
+ */
+public class BatchValidator {
+    private static final String GZIP_SUFFIX = ".xml.gz";
+    private static final String ZIP_SUFFIX = ".zip";
+
+    /**
+     * Memory used by a file, for the parser buffers and the report. The workers stream or scan
+     * the document, so unlike processFileWithDocument the memory doesn't grow with the file.
+     * Buffers read ahead are held within the budget of the ReadAhead.
+     */
+    private static final long FILE_MEMORY = 1 << 20;
+
+    private final int threads;
+    private final FindingsFormat format;
+    private final ValidationSession session;
+
+    private final boolean fileResults;
+    private final ProgressJournal journal;
+    private final long memoryBudget;
+    private final int readAheadDepth;
+    private final long readAheadBytes;
+    private final boolean summarizeFindings;
+    private final int maxFindings;
+
+    /**
+     * Settings of a validator, all of them are fixed when the validator is built.
+     */
+    public static class Builder {
+        private final int threads;
+        private FindingsFormat format = FindingsFormat.TEXT;
+        private ValidationSession session;
+        private boolean fileResults = false;
+        private ProgressJournal journal;
+        private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+        private int readAheadDepth = 0;
+        private long readAheadBytes = 256L << 20;
+        private boolean summarizeFindings = false;
+        private int maxFindings = 0;
+
+        /**
+         * @param threads   Number of files to validate at the same time.
+         */
+        public Builder(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least one thread is needed");
+            }
+            this.threads = threads;
+        }
+
+        /**
+         * @param format    Format of the reported findings, text by default.
+         */
+        public Builder format(FindingsFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * @param session   Session with the options and parser resources of the files, see
+         *                  ValidationSession. A new session by default.
+         */
+        public Builder session(ValidationSession session) {
+            this.session = session;
+            return this;
+        }
+
+        /**
+         * Write a result record for every file when it is done, also for files without findings.
+         *
+         * @param fileResults   True to write result records.
+         */
+        public Builder fileResults(boolean fileResults) {
+            this.fileResults = fileResults;
+            return this;
+        }
+
+        /**
+         * Record each completed file in a journal. Files the journal already holds, unchanged and
+         * checked with the same options, are not validated again, their stored findings are
+         * reported instead.
+         *
+         * @param journal   Journal to use or null to validate every file.
+         */
+        public Builder journal(ProgressJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Limit the memory of the files validated at the same time. Each file is estimated to
+         * use the buffers of the parser, files wait while the files being validated would use
+         * more. A budget over the buffers of all threads doesn't limit the files.
+         *
+         * @param memoryBudget  Estimated memory in bytes, by default half the maximum heap.
+         */
+        public Builder memoryBudget(long memoryBudget) {
+            if (memoryBudget < 1) {
+                throw new IllegalArgumentException("The memory budget must be positive");
+            }
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Read files ahead of the workers on a thread of their own, so the disk and the workers
+         * are busy at the same time, see ReadAhead. Not used with a result cache, where unchanged
+         * files are not read at all, or with volume threads, which map each file.
+         *
+         * @param depth     Number of files read ahead, 0 to let the workers read the files.
+         * @param bytes     Bytes the files read ahead may hold together.
+         */
+        public Builder readAhead(int depth, long bytes) {
+            if (depth < 0 || bytes < 1) {
+                throw new IllegalArgumentException("Incorrect read ahead of " + depth + " files in " + bytes + " bytes");
+            }
+            this.readAheadDepth = depth;
+            this.readAheadBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Summarize the report of each file, see AggregatingFindingsWriter. Findings following each
+         * other are merged into ranges and findings over the limit are counted instead of written.
+         * The cache and the journal still hold every finding. By default every finding is reported.
+         *
+         * @param summarize     True to summarize, false for every finding in full.
+         * @param maxFindings   Findings reported per file when summarizing, 0 for no limit.
+         */
+        public Builder summarizeFindings(boolean summarize, int maxFindings) {
+            if (maxFindings < 0) {
+                throw new IllegalArgumentException("The limit of findings can't be negative");
+            }
+            this.summarizeFindings = summarize;
+            this.maxFindings = maxFindings;
+            return this;
+        }
+
+        public BatchValidator build() {
+            return new BatchValidator(this);
+        }
+    }
+
+    /**
+     * @param threads   Number of files to validate at the same time.
+     */
+    public BatchValidator(int threads) {
+        this(new Builder(threads));
+    }
+
+    /**
+     * @param threads   Number of files to validate at the same time.
+     * @param format    Format of the reported findings.
+     */
+    public BatchValidator(int threads, FindingsFormat format) {
+        this(new Builder(threads).format(format));
+    }
+
+    /**
+     * @param threads   Number of files to validate at the same time.
+     * @param format    Format of the reported findings.
+     * @param session   Session with the options and parser resources of the files, see ValidationSession.
+     */
+    public BatchValidator(int threads, FindingsFormat format, ValidationSession session) {
+        this(new Builder(threads).format(format).session(session));
+    }
+
+    private BatchValidator(Builder builder) {
+        this.threads = builder.threads;
+        this.format = builder.format;
+        this.session = builder.session != null ? builder.session : new ValidationSession();
+        this.fileResults = builder.fileResults;
+        this.journal = builder.journal;
+        this.memoryBudget = builder.memoryBudget;
+        this.readAheadDepth = builder.readAheadDepth;
+        this.readAheadBytes = builder.readAheadBytes;
+        this.summarizeFindings = builder.summarizeFindings;
+        this.maxFindings = builder.maxFindings;
+    }
+
+    public ResultCache getResultCache() {
+        return session.getCheckOptions().getResultCache();
+    }
+
+    public ProgressJournal getJournal() {
+        return journal;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    public boolean isSummarizeFindings() {
+        return summarizeFindings;
+    }
+
+    public int getMaxFindings() {
+        return maxFindings;
+    }
+
+    /**
+     * @return  Session with the parser resources and options shared by all files.
+     */
+    public ValidationSession getSession() {
+        return session;
+    }
+
+    /**
+     * Validate all files and write the report of each file to the output stream. Files are
+     * validated in parallel but reported in the order of the list.
+     *
+     * @param files                 Files to validate
+     * @param out                   Stream to write the reports to
+     * @return                      Summary of the run
+     * @throws InterruptedException Throws exception if interrupted while waiting for the workers.
+     */
+    public BatchSummary validate(List<File> files, PrintStream out) throws InterruptedException {
+        BatchSummary summary = new BatchSummary();
+        writeHeader(out);
+
+        FileScheduler executor = newExecutor();
+        OrderedOutput output = newOrderedOutput(out);
+        try {
+            for (File file : files) {
+                submit(executor, file, file.getName(), FileOptions.DEFAULT, output, summary);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        awaitTermination(executor);
+        return summary;
+    }
+
+    /**
+     * Validate the files found below a directory. Files are validated as they are found and
+     * reported in the order of the walk, with their path relative to the directory as name.
+     *
+     * @param directory             Directory to validate
+     * @param discovery             Decides which files below the directory are validated
+     * @param out                   Stream to write the reports to
+     * @return                      Summary of the run
+     * @throws IOException          Throws exception if the directory can't be listed.
+     * @throws InterruptedException Throws exception if interrupted while waiting for the workers.
+     */
+    public BatchSummary validate(File directory, FileDiscovery discovery, PrintStream out)
+            throws IOException, InterruptedException {
+        BatchSummary summary = new BatchSummary();
+        writeHeader(out);
+
+        FileScheduler executor = newExecutor();
+        OrderedOutput output = newOrderedOutput(out);
+        try {
+            discovery.walk(directory, new FileDiscovery.Visitor() {
+                @Override
+                public void file(File file, String name) {
+                    submit(executor, file, name, FileOptions.DEFAULT, output, summary);
+                }
+
+                @Override
+                public void error(String name, IOException e) {
+                    int ticket = output.reserve();
+                    executor.execute(() -> validate(name, null, 0, pefCheck -> {
+                        pefCheck.startFile(name);
+                        throw e;
+                    }, FileOptions.DEFAULT, output, ticket, summary));
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        awaitTermination(executor);
+        return summary;
+    }
+
+    /**
+     * Validate the files listed in a manifest, one file per line. A line holds the path of the
+     * file, optionally followed by file options separated by tabs, see FileOptions. Empty lines
+     * and lines starting with # are skipped.
+     *
+     * The manifest is read while the files are validated, at most a few files per worker are
+     * waiting at any time. The report of each file is written as soon as it is done, followed
+     * by a result record when the validator is built with fileResults.
+     *
+     * @param manifest              Lines of the manifest
+     * @param baseDirectory         Directory relative paths are resolved against, null for the
+     *                              working directory
+     * @param out                   Stream to write the reports to
+     * @return                      Summary of the run
+     * @throws IOException          Throws exception if the manifest can't be read.
+     * @throws InterruptedException Throws exception if interrupted while waiting for the workers.
+     */
+    public BatchSummary validateManifest(BufferedReader manifest, File baseDirectory, PrintStream out)
+            throws IOException, InterruptedException {
+        BatchSummary summary = new BatchSummary();
+        writeHeader(out);
+
+        FileScheduler executor = newExecutor();
+        OrderedOutput output = OrderedOutput.unordered(out);
+        try {
+            String line;
+            while ((line = manifest.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                String name = fields[0].trim();
+                File file = new File(name);
+                if (!file.isAbsolute() && baseDirectory != null) {
+                    file = new File(baseDirectory, name);
+                }
+                FileOptions options;
+                try {
+                    options = FileOptions.parse(Arrays.copyOfRange(fields, 1, fields.length));
+                } catch (IllegalArgumentException e) {
+                    int ticket = output.reserve();
+                    executor.execute(() -> validate(name, null, 0, pefCheck -> {
+                        pefCheck.startFile(name);
+                        throw e;
+                    }, FileOptions.DEFAULT, output, ticket, summary));
+                    continue;
+                }
+                submit(executor, file, name, options, output, summary);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        awaitTermination(executor);
+        return summary;
+    }
+
+    private void awaitTermination(FileScheduler executor) throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // Keep waiting, large books can take a while.
+        }
+        session.storeTimings();
+    }
+
+    /**
+     * Reports can wait for a slow file before them, a few for each worker are kept.
+     */
+    private OrderedOutput newOrderedOutput(PrintStream out) {
+        return new OrderedOutput(out, getWindow());
+    }
+
+    /**
+     * @return  Number of files that can be waiting, the files within are started longest first.
+     */
+    private int getWindow() {
+        return Math.max(64, threads * 16);
+    }
+
+    /**
+     * @param name  Name of a file
+     * @return      True if the file is a PEF file or an archive that can hold PEF files.
+     */
+    public static boolean isSupportedFile(String name) {
+        return name.endsWith(".xml") || name.endsWith(GZIP_SUFFIX) || name.endsWith(ZIP_SUFFIX);
+    }
+
+    /**
+     * Hand a file to the workers and write its report as soon as it is done.
+     */
+    void submit(FileScheduler executor, File file, PrintStream out, BatchSummary summary) {
+        submit(executor, file, file.getName(), FileOptions.DEFAULT, OrderedOutput.unordered(out), summary);
+    }
+
+    /**
+     * Hand a file to the workers. Gzipped files are streamed through the decompressor and each
+     * PEF entry of a zip archive is validated as a file of its own, spread over the workers.
+     */
+    void submit(FileScheduler executor, File file, String name, FileOptions options, OrderedOutput output,
+                BatchSummary summary) {
+        if (name.endsWith(ZIP_SUFFIX)) {
+            submitZipEntries(executor, file, name, options, output, summary);
+        } else if (name.endsWith(GZIP_SUFFIX)) {
+            schedule(executor, name, file, getGzipSize(file), pefCheck -> {
+                try (InputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+                    pefCheck.processStream(name, in);
+                }
+            }, options, output, summary);
+        } else if (executor.getReadAhead() != null) {
+            submitReadAhead(executor, file, name, options, output, summary);
+        } else {
+            schedule(executor, name, file, file.length(), pefCheck -> pefCheck.processFile(file, name),
+                    options, output, summary);
+        }
+    }
+
+    /**
+     * Read a file ahead and queue it when it has been read. Files that weren't read ahead
+     * are read by the worker.
+     */
+    private void submitReadAhead(FileScheduler executor, File file, String name, FileOptions options,
+                                 OrderedOutput output, BatchSummary summary) {
+        long bytes = file.length();
+        int ticket = output.reserve();
+        executor.getReadAhead().read(file, content -> executor.execute(() -> {
+            try {
+                validate(name, file, bytes, pefCheck -> {
+                    if (content != null) {
+                        pefCheck.processBuffer(name, content.take());
+                    } else {
+                        pefCheck.processFile(file, name);
+                    }
+                }, options, output, ticket, summary);
+            } finally {
+                if (content != null) {
+                    content.release();
+                }
+            }
+        }, FILE_MEMORY, session.getTimings().estimate(name, bytes)));
+    }
+
+    /**
+     * Queue a file with the memory of a streamed file and the time expected from its size.
+     *
+     * @param bytes Size of the document once read
+     */
+    private void schedule(FileScheduler executor, String name, File source, long bytes, Check check,
+                          FileOptions options, OrderedOutput output, BatchSummary summary) {
+        int ticket = output.reserve();
+        executor.execute(() -> validate(name, source, bytes, check, options, output, ticket, summary),
+                FILE_MEMORY, session.getTimings().estimate(name, bytes));
+    }
+
+    /**
+     * @return  Size of the content of a gzipped file, from the trailer of the file.
+     */
+    private static long getGzipSize(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < 4) {
+                return in.length();
+            }
+            in.seek(in.length() - 4);
+            // Stored modulo 2^32, little endian. The content is never smaller than the compressed file.
+            long size = Integer.reverseBytes(in.readInt()) & 0xffffffffL;
+            return Math.max(size, in.length());
+        } catch (IOException e) {
+            return file.length();
+        }
+    }
+
+    /**
+     * Submit each xml entry of a zip archive. The archive is read with ZipFile so the workers
+     * can inflate different entries at the same time, it is closed when the last entry is done.
+     * Findings are reported under archive.zip!/entry.xml.
+     */
+    private void submitZipEntries(FileScheduler executor, File file, String archiveName, FileOptions options,
+                                  OrderedOutput output, BatchSummary summary) {
+        ZipFile zipFile;
+        try {
+            zipFile = new ZipFile(file);
+        } catch (IOException e) {
+            int ticket = output.reserve();
+            executor.execute(() -> validate(archiveName, null, 0, pefCheck -> {
+                pefCheck.startFile(archiveName);
+                throw e;
+            }, options, output, ticket, summary));
+            return;
+        }
+
+        List<ZipEntry> entries = new ArrayList<>();
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+            ZipEntry entry = enumeration.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".xml")) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            closeQuietly(zipFile);
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(entries.size());
+        for (ZipEntry entry : entries) {
+            String name = archiveName + "!/" + entry.getName();
+            long bytes = entry.getSize() != -1 ? entry.getSize() : file.length();
+            int ticket = output.reserve();
+            executor.execute(() -> {
+                try {
+                    validate(name, file, bytes, pefCheck -> {
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            pefCheck.processStream(name, new BufferedInputStream(in, 1 << 16));
+                        }
+                    }, options, output, ticket, summary);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        closeQuietly(zipFile);
+                    }
+                }
+            }, FILE_MEMORY, session.getTimings().estimate(name, bytes));
+        }
+    }
+
+    private static void closeQuietly(ZipFile zipFile) {
+        try {
+            zipFile.close();
+        } catch (IOException e) {
+            // Only read from, nothing is lost.
+        }
+    }
+
+    /**
+     * Write the header of the findings format, if it has one.
+     */
+    void writeHeader(PrintStream out) {
+        FindingsWriter header = format.newWriter(new OutputStreamWriter(out, Charset.defaultCharset()));
+        header.writeHeader();
+        header.flush();
+    }
+
+    /**
+     * Create the workers. Files wait in a queue of the size of the output window, the longest
+     * of them are started first as long as the memory budget allows, see FileScheduler. When
+     * the queue is full the submitting thread waits. Files are read ahead when set.
+     */
+    FileScheduler newExecutor() {
+        FileScheduler scheduler = new FileScheduler(threads, memoryBudget, getWindow());
+        if (readAheadDepth > 0 && getResultCache() == null && session.getVolumeThreads() == 0) {
+            scheduler.setReadAhead(new ReadAhead(readAheadDepth, readAheadBytes));
+        }
+        return scheduler;
+    }
+
+    /**
+     * A check of one file or archive entry.
+     */
+    private interface Check {
+        void run(PEFCheck pefCheck) throws Exception;
+    }
+
+    /**
+     * Validate one file into a buffer and write the buffer as one block. Files completed by an
+     * earlier run are reported from the journal instead.
+     *
+     * @param source    The file or the archive it is read from, null if it shouldn't be journaled.
+     * @param bytes     Size of the document, the time taken per byte is used to schedule later files
+     */
+    private void validate(String name, File source, long bytes, Check check, FileOptions options, OrderedOutput output,
+                          int ticket, BatchSummary summary) {
+        ProgressJournal journal = source == null ? null : this.journal;
+        // Taken before the file is read, a file changed while it is validated is validated again on resume.
+        long size = journal == null ? 0 : source.length();
+        long modified = journal == null ? 0 : source.lastModified();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        FindingsWriter findingsWriter = format.newWriter(new OutputStreamWriter(buffer, Charset.defaultCharset()));
+        AggregatingFindingsWriter aggregator = null;
+        if (summarizeFindings) {
+            aggregator = new AggregatingFindingsWriter(findingsWriter, maxFindings);
+            findingsWriter = aggregator;
+        }
+        RecordingFindingsWriter recorder = journal == null ? null : new RecordingFindingsWriter(findingsWriter);
+        PEFCheck pefCheck = session.newCheck(recorder == null ? findingsWriter : recorder,
+                options.apply(session.getCheckOptions()));
+        ProgressJournal.Entry completed = null;
+        boolean failed = false;
+        try {
+            completed = journal == null ? null : journal.get(name, source, pefCheck.getCacheOptions());
+            if (completed != null) {
+                findingsWriter.startFile(name);
+                for (Finding finding : completed.getFindings()) {
+                    findingsWriter.write(new Finding(
+                            name, finding.getVolume(), finding.getSection(), finding.getKind(),
+                            finding.getPage(), finding.getPrintablePage(), finding.getPreviousPage(),
+                            finding.getPrintablePreviousPage(), finding.isIndexPage(), finding.getMessage()
+                    ));
+                }
+                findingsWriter.flush();
+                failed = completed.isFailed();
+            } else {
+                long start = System.nanoTime();
+                check.run(pefCheck);
+                if (source != null) {
+                    session.getTimings().record(name, bytes, System.nanoTime() - start);
+                }
+            }
+        } catch (Exception e) {
+            // Parser messages can span several lines, keep the report to one line per issue.
+            pefCheck.reportError(name, e.toString().replaceAll("\\s*\\R\\s*", " "));
+            failed = true;
+        } finally {
+            if (fileResults) {
+                findingsWriter.endFile(name, completed != null ? completed.getIssues() : pefCheck.getIssueCount(), failed);
+                findingsWriter.flush();
+            } else if (aggregator != null) {
+                aggregator.finishFile();
+                aggregator.flush();
+            }
+            // Later reports wait for this one, it must be written whatever happens.
+            output.write(ticket, buffer.toByteArray());
+        }
+        if (completed != null) {
+            summary.add(completed.getIssues(), failed);
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.record(name, size, modified, pefCheck.getCacheOptions(), failed, pefCheck.getIssueCount(),
+                        recorder.getFindings());
+            } catch (IOException e) {
+                // The file is reported, it is only validated again if the run is resumed.
+                System.err.println("Could not write " + name + " to the journal: " + e.getMessage());
+            }
+        }
+        summary.add(pefCheck.getIssueCount(), failed);
+    }
+}
@@ -0,0 +1,96 @@
+package se.mtm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The options a PEFCheck validates with, chosen when the checker is created. Options can't be
+ * changed, the with methods return a copy with one option changed, so one instance can be
+ * shared by any number of checkers and threads.
+ */
+public final class CheckOptions {
+    private static final CheckOptions DEFAULTS = new CheckOptions(1, Rules.getDefaults(), false, null);
+
+    private final int numTitleSections;
+    private final List<String> rules;
+    private final boolean fastScan;
+    private final ResultCache resultCache;
+
+    private CheckOptions(int numTitleSections, List<String> rules, boolean fastScan, ResultCache resultCache) {
+        this.numTitleSections = numTitleSections;
+        this.rules = rules;
+        this.fastScan = fastScan;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @return  One title section, the default rules, no fast scan and no result cache.
+     */
+    public static CheckOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param numTitleSections  Number of sections at the start of each volume that hold the
+     *                          title and are not checked.
+     */
+    public CheckOptions withNumTitleSections(int numTitleSections) {
+        if (numTitleSections < 0) {
+            throw new IllegalArgumentException("Number of title sections can't be negative");
+        }
+        return new CheckOptions(numTitleSections, rules, fastScan, resultCache);
+    }
+
+    /**
+     * @param rules                     Names of the rules documents are checked with, in the order they are run
+     * @throws IllegalArgumentException Throws exception if a rule is unknown.
+     */
+    public CheckOptions withRules(List<String> rules) {
+        for (String rule : rules) {
+            Rules.check(rule);
+        }
+        return new CheckOptions(numTitleSections, Collections.unmodifiableList(new ArrayList<>(rules)),
+                fastScan, resultCache);
+    }
+
+    /**
+     * @param fastScan  True to scan memory mapped files instead of parsing them, see MappedPEFScanner.
+     */
+    public CheckOptions withFastScan(boolean fastScan) {
+        return new CheckOptions(numTitleSections, rules, fastScan, resultCache);
+    }
+
+    /**
+     * @param resultCache   Cache of earlier results, or null to always validate.
+     */
+    public CheckOptions withResultCache(ResultCache resultCache) {
+        return new CheckOptions(numTitleSections, rules, fastScan, resultCache);
+    }
+
+    public int getNumTitleSections() {
+        return numTitleSections;
+    }
+
+    /**
+     * @return  Names of the rules, the list can't be changed.
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public boolean isFastScan() {
+        return fastScan;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return  The options that affect the findings of a file, part of the cache key.
+     */
+    String getCacheKey() {
+        return "numTitleSections=" + numTitleSections + ";validateEmptyPages=true;rules=" + String.join(",", rules);
+    }
+}
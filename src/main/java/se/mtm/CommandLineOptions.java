@@ -0,0 +1,376 @@
+package se.mtm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options given to PEFCheck on the command line.
+ */
+public class CommandLineOptions {
+    /**
+     * Number of files to validate at the same time.
+     */
+    private int threads = 1;
+
+    /**
+     * Format of the reported findings.
+     */
+    private FindingsFormat format = FindingsFormat.TEXT;
+
+    /**
+     * Directory of the result cache, null if results shouldn't be cached.
+     */
+    private File cacheDirectory;
+
+    /**
+     * Maximum number of results in the cache.
+     */
+    private int cacheSize = 10000;
+
+    /**
+     * Keep running and validate files as they arrive in the directory.
+     */
+    private boolean watch = false;
+
+    /**
+     * Time in milliseconds a file must be unchanged before it is validated in watch mode.
+     */
+    private int quietPeriod = 2000;
+
+    /**
+     * Scan memory mapped files instead of parsing them.
+     */
+    private boolean fastScan = false;
+
+    /**
+     * Number of threads the volumes of a single file are validated on, 0 to not split files.
+     */
+    private int volumeThreads = 0;
+
+    /**
+     * Estimated memory in MB the files validated at the same time may use, 0 for the default.
+     */
+    private int memoryBudget = 0;
+
+    /**
+     * Number of files read ahead of the workers, 0 to let the workers read the files.
+     */
+    private int readAhead = 0;
+
+    /**
+     * MB the files read ahead may hold together.
+     */
+    private int readAheadSize = 256;
+
+    /**
+     * Merge findings following each other into ranges and count the findings after maxFindings.
+     */
+    private boolean summarize = false;
+
+    /**
+     * Findings reported per file when summarizing, the rest are counted, 0 for no limit.
+     */
+    private int maxFindings = 100;
+
+    /**
+     * Print parse and validation metrics at the end of the run.
+     */
+    private boolean metrics = false;
+
+    /**
+     * Port to serve validation requests on, 0 when not running as a server.
+     */
+    private int servePort = 0;
+
+    /**
+     * Number of requests the server validates at the same time.
+     */
+    private int maxRequests = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Levels of directories to look for files in, 1 for only the input directory.
+     */
+    private int maxDepth = 1;
+
+    /**
+     * Glob patterns of files to validate and of files and directories to skip.
+     */
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+
+    /**
+     * Names of the rules to check the files with.
+     */
+    private List<String> rules = Rules.getDefaults();
+
+    /**
+     * Manifest listing the files to validate, - for stdin.
+     */
+    private String manifest;
+
+    /**
+     * Journal of completed files, null if progress shouldn't be recorded.
+     */
+    private File journal;
+
+    /**
+     * Skip the files completed by the run that wrote the journal.
+     */
+    private boolean resume = false;
+
+    /**
+     * Directory with the files to validate.
+     */
+    private File inputDirectory;
+
+    private CommandLineOptions() {}
+
+    /**
+     * Parse the command line arguments.
+     *
+     * @param args                      Arguments given to main
+     * @return                          The parsed options
+     * @throws IllegalArgumentException Throws exception if the arguments are incorrect.
+     */
+    public static CommandLineOptions parse(String[] args) {
+        CommandLineOptions options = new CommandLineOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--threads")) {
+                options.threads = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--format")) {
+                options.format = FindingsFormat.fromName(value(args, ++i, arg));
+            } else if (arg.equals("--cache")) {
+                options.cacheDirectory = new File(value(args, ++i, arg));
+            } else if (arg.equals("--cache-size")) {
+                options.cacheSize = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--watch")) {
+                options.watch = true;
+            } else if (arg.equals("--quiet-period")) {
+                options.quietPeriod = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--fast-scan")) {
+                options.fastScan = true;
+            } else if (arg.equals("--memory-budget")) {
+                options.memoryBudget = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--read-ahead")) {
+                options.readAhead = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--read-ahead-size")) {
+                options.readAheadSize = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--volume-threads")) {
+                options.volumeThreads = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--recursive")) {
+                options.maxDepth = FileDiscovery.UNLIMITED;
+            } else if (arg.equals("--max-depth")) {
+                options.maxDepth = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.equals("--include")) {
+                options.includes.add(value(args, ++i, arg));
+            } else if (arg.equals("--exclude")) {
+                options.excludes.add(value(args, ++i, arg));
+            } else if (arg.equals("--rules")) {
+                options.rules = Rules.parse(value(args, ++i, arg));
+            } else if (arg.equals("--manifest")) {
+                options.manifest = value(args, ++i, arg);
+            } else if (arg.equals("--journal")) {
+                options.journal = new File(value(args, ++i, arg));
+            } else if (arg.equals("--resume")) {
+                options.resume = true;
+            } else if (arg.equals("--max-findings")) {
+                options.maxFindings = parseInt(arg, value(args, ++i, arg), 0);
+            } else if (arg.equals("--summarize")) {
+                options.summarize = true;
+            } else if (arg.equals("--metrics")) {
+                options.metrics = true;
+            } else if (arg.equals("--serve")) {
+                options.servePort = parsePositiveInt(arg, value(args, ++i, arg));
+                if (options.servePort > 65535) {
+                    throw new IllegalArgumentException("Incorrect port for " + arg + ": " + options.servePort);
+                }
+            } else if (arg.equals("--max-requests")) {
+                options.maxRequests = parsePositiveInt(arg, value(args, ++i, arg));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else if (options.inputDirectory == null) {
+                options.inputDirectory = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Only one input directory can be given");
+            }
+        }
+        if (options.inputDirectory == null && options.manifest == null) {
+            throw new IllegalArgumentException((String) null);
+        }
+        if (options.inputDirectory == null && (options.watch || options.servePort > 0)) {
+            throw new IllegalArgumentException("An input directory is needed to watch or serve");
+        }
+        if (options.journal != null && (options.watch || options.servePort > 0)) {
+            throw new IllegalArgumentException("A journal can't be used to watch or serve");
+        }
+        if (options.resume && options.journal == null) {
+            throw new IllegalArgumentException("--resume needs the --journal of the run to resume");
+        }
+        return options;
+    }
+
+    /**
+     * @return  Description of the available options.
+     */
+    public static String usage() {
+        return "Options:\n" +
+               "  --threads N    Number of files to validate at the same time (default 1)\n" +
+               "  --format F     Format of the findings: text, jsonl or csv (default text)\n" +
+               "  --cache DIR    Keep results in DIR and skip files that haven't changed\n" +
+               "  --cache-size N Maximum number of results in the cache (default 10000)\n" +
+               "  --recursive    Also validate files in subdirectories\n" +
+               "  --max-depth N  Levels of directories to look in, 1 is only the directory (default 1)\n" +
+               "  --include GLOB Only validate files whose relative path matches, can be repeated\n" +
+               "  --exclude GLOB Skip files and directories whose relative path matches, can be repeated\n" +
+               "  --rules LIST   Comma separated rules to check with (default " + String.join(",", Rules.getDefaults()) + ")\n" +
+               "                 available: " + String.join(", ", Rules.getNames()) + "\n" +
+               "  --manifest F   Validate the files listed in F, - for stdin, relative to the directory if given\n" +
+               "  --journal F    Record each completed file in F so an interrupted run can be resumed\n" +
+               "  --resume       Report the files completed in the journal without validating them again\n" +
+               "  --watch        Keep running and validate files as they arrive\n" +
+               "  --quiet-period MS  Time a file must be unchanged before it is validated (default 2000)\n" +
+               "  --fast-scan    Scan memory mapped files, falls back to the parser when needed\n" +
+               "  --memory-budget MB  Memory the files validated at the same time may use (default half the heap)\n" +
+               "  --read-ahead N Read N files ahead of the validation, for slow disks and network shares\n" +
+               "  --read-ahead-size MB  Memory the files read ahead may use (default 256)\n" +
+               "  --summarize    Merge findings that follow each other into ranges, count those after --max-findings\n" +
+               "  --max-findings N  Findings reported per file with --summarize, the rest are counted, 0 for no limit (default 100)\n" +
+               "  --volume-threads N  Validate the volumes of each file in parallel on N threads\n" +
+               "  --metrics      Print files, pages, findings and parse and validation time at the end\n" +
+               "  --serve PORT   Validate documents sent over HTTP on localhost, paths are relative to the directory\n" +
+               "  --max-requests N  Number of requests the server validates at the same time (default: processors)";
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int parsePositiveInt(String option, String value) {
+        return parseInt(option, value, 1);
+    }
+
+    private static int parseInt(String option, String value, int min) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result < min) {
+                throw new IllegalArgumentException(option + " must be at least " + min);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Incorrect number for " + option + ": " + value);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public FindingsFormat getFormat() {
+        return format;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public boolean isFastScan() {
+        return fastScan;
+    }
+
+    /**
+     * @return  The memory budget in MB, 0 for the default.
+     */
+    public int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return  Number of files to read ahead, 0 to not read ahead.
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    public int getReadAheadSize() {
+        return readAheadSize;
+    }
+
+    public int getVolumeThreads() {
+        return volumeThreads;
+    }
+
+    public boolean isSummarize() {
+        return summarize;
+    }
+
+    /**
+     * @return  Findings reported per file when summarizing, 0 for no limit.
+     */
+    public int getMaxFindings() {
+        return maxFindings;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public int getServePort() {
+        return servePort;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public String getManifest() {
+        return manifest;
+    }
+
+    public File getJournal() {
+        return journal;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @return  The input directory, may be null when a manifest is given.
+     */
+    public File getInputDirectory() {
+        return inputDirectory;
+    }
+}
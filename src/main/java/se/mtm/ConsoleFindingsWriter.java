@@ -0,0 +1,23 @@
+package se.mtm;
+
+/**
+ * Writes findings as text directly to System.out, used when no other writer is given. The
+ * current System.out is looked up for every line.
+ */
+class ConsoleFindingsWriter implements FindingsWriter {
+
+    @Override
+    public void startFile(String file) {
+        System.out.println(TextFindingsWriter.fileLine(file));
+    }
+
+    @Override
+    public void write(Finding finding) {
+        System.out.println(TextFindingsWriter.format(finding));
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
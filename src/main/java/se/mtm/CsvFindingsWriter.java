@@ -0,0 +1,90 @@
+package se.mtm;
+
+import java.io.Writer;
+
+/**
+ * Writes findings as comma separated values with one finding per row.
+ */
+public class CsvFindingsWriter extends AbstractFindingsWriter {
+    private final StringBuilder sb = new StringBuilder();
+
+    public CsvFindingsWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void writeHeader() {
+        writeLine("file,volume,section,kind,page,printable_page,previous_page,printable_previous_page,index_page,message,count,first_page,printable_first_page");
+    }
+
+    @Override
+    public void startFile(String file) {
+        // Every row carries the file name.
+    }
+
+    @Override
+    public void write(Finding finding) {
+        sb.setLength(0);
+        appendValue(finding.getFile()).append(',');
+        sb.append(finding.getVolume()).append(',');
+        sb.append(finding.getSection()).append(',');
+        sb.append(finding.getKind().name()).append(',');
+        boolean page = finding.getKind() != FindingKind.ERROR && finding.getKind() != FindingKind.SUPPRESSED;
+        if (page) {
+            sb.append(finding.getPage());
+        }
+        sb.append(',');
+        appendValue(finding.getPrintablePage()).append(',');
+        if (JsonLinesFindingsWriter.hasPreviousPage(finding)) {
+            sb.append(finding.getPreviousPage());
+        }
+        sb.append(',');
+        appendValue(finding.getPrintablePreviousPage()).append(',');
+        if (page) {
+            sb.append(finding.isIndexPage());
+        }
+        sb.append(',');
+        appendValue(finding.getMessage()).append(',');
+        sb.append(finding.getCount()).append(',');
+        if (finding.getFirstPage() != -1) {
+            sb.append(finding.getFirstPage());
+        }
+        sb.append(',');
+        appendValue(finding.getPrintableFirstPage());
+        writeLine(sb.toString());
+    }
+
+    /**
+     * The result is a row of kind RESULT with the outcome as message.
+     */
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        sb.setLength(0);
+        appendValue(file).append(",,,RESULT,,,,,,");
+        sb.append(failed ? "failed" : issues == 0 ? "ok" : issues + " issue(s)").append(",,,");
+        writeLine(sb.toString());
+    }
+
+    private StringBuilder appendValue(String value) {
+        if (value == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
@@ -0,0 +1,69 @@
+package se.mtm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds back the findings of a call while another call of a shared PEFCheck is writing, so
+ * the findings of each call are written together when the writer is free.
+ */
+class DeferredFindingsWriter implements FindingsWriter {
+    private final List<Object> events = new ArrayList<>();
+
+    @Override
+    public void startFile(String file) {
+        events.add(new StartFile(file));
+    }
+
+    @Override
+    public void write(Finding finding) {
+        events.add(finding);
+    }
+
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        events.add(new EndFile(file, issues, failed));
+    }
+
+    @Override
+    public void flush() {
+        // Written as one block when the call is done.
+    }
+
+    /**
+     * Write the held back files and findings in the order they were reported.
+     */
+    void writeTo(FindingsWriter writer) {
+        for (Object event : events) {
+            if (event instanceof Finding) {
+                writer.write((Finding) event);
+            } else if (event instanceof StartFile) {
+                writer.startFile(((StartFile) event).file);
+            } else {
+                EndFile end = (EndFile) event;
+                writer.endFile(end.file, end.issues, end.failed);
+            }
+        }
+        events.clear();
+    }
+
+    private static class StartFile {
+        final String file;
+
+        StartFile(String file) {
+            this.file = file;
+        }
+    }
+
+    private static class EndFile {
+        final String file;
+        final int issues;
+        final boolean failed;
+
+        EndFile(String file, int issues, boolean failed) {
+            this.file = file;
+            this.issues = issues;
+            this.failed = failed;
+        }
+    }
+}
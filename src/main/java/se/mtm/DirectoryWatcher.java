@@ -0,0 +1,230 @@
+package se.mtm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory and validates xml files and archives as they arrive or change. A file is only
+ * validated when its size and modification time have been stable for a quiet period, so
+ * files that are still being written are left alone. Validation runs on the workers of a
+ * BatchValidator and the findings of each file are written as soon as the file is done.
+ */
+public class DirectoryWatcher {
+    private final Path directory;
+    private final BatchValidator batchValidator;
+    private final long quietPeriodMillis;
+
+    /**
+     * Files that have changed and are waiting to be stable, only used by the watching thread.
+     */
+    private final Map<Path, FileState> pending = new HashMap<>();
+
+    /**
+     * Size and time of the files when they were last validated, removed when the file is.
+     */
+    private final Map<Path, FileState> validated = new HashMap<>();
+
+    private volatile boolean running = true;
+    private volatile WatchService watchService;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Size and modification time of a file and when they last changed.
+     */
+    private static class FileState {
+        long size;
+        long modified;
+        long changedAt;
+
+        FileState(long size, long modified, long changedAt) {
+            this.size = size;
+            this.modified = modified;
+            this.changedAt = changedAt;
+        }
+
+        boolean sameAs(FileState other) {
+            return other != null && size == other.size && modified == other.modified;
+        }
+    }
+
+    /**
+     * @param directory             Directory to watch
+     * @param batchValidator        Validator whose workers and output format are used
+     * @param quietPeriodMillis     Time a file must be unchanged before it is validated
+     */
+    public DirectoryWatcher(File directory, BatchValidator batchValidator, long quietPeriodMillis) {
+        this.directory = directory.toPath();
+        this.batchValidator = batchValidator;
+        this.quietPeriodMillis = quietPeriodMillis;
+    }
+
+    /**
+     * Validate the files already in the directory and then every new or changed file until
+     * stop is called.
+     *
+     * @param out                   Stream to write the findings to
+     * @param summary               Summary updated for every validated file
+     * @throws IOException          Throws exception if the directory can't be watched.
+     * @throws InterruptedException Throws exception if interrupted while waiting.
+     */
+    public void watch(PrintStream out, BatchSummary summary) throws IOException, InterruptedException {
+        try {
+            watchDirectory(out, summary);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void watchDirectory(PrintStream out, BatchSummary summary) throws IOException, InterruptedException {
+        batchValidator.writeHeader(out);
+        FileScheduler executor = batchValidator.newExecutor();
+        long pollMillis = Math.max(10, Math.min(250, quietPeriodMillis / 4));
+
+        try (WatchService ws = directory.getFileSystem().newWatchService()) {
+            watchService = ws;
+            directory.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            scanDirectory();
+
+            while (running) {
+                WatchKey key;
+                try {
+                    key = ws.poll(pollMillis, TimeUnit.MILLISECONDS);
+                } catch (ClosedWatchServiceException e) {
+                    break;
+                }
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost, look at every file again.
+                            scanDirectory();
+                            continue;
+                        }
+                        Path path = directory.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            pending.remove(path);
+                            validated.remove(path);
+                        } else {
+                            fileChanged(path);
+                        }
+                    }
+                    if (!key.reset()) {
+                        // The directory is no longer accessible.
+                        break;
+                    }
+                }
+                submitStableFiles(executor, out, summary);
+            }
+        } finally {
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Let the files already being validated finish.
+            }
+            batchValidator.getSession().storeTimings();
+        }
+    }
+
+    /**
+     * Stop watching, files already being validated are finished first. Use awaitTermination
+     * to wait for them.
+     */
+    public void stop() {
+        running = false;
+        WatchService ws = watchService;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    /**
+     * Wait until watch has returned after stop, with the files being validated done and reported.
+     *
+     * @param timeout   Longest time to wait
+     * @param unit      Unit of the timeout
+     * @return          True if watch has returned, false if the time ran out.
+     * @throws InterruptedException Throws exception if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    private void scanDirectory() throws IOException {
+        validated.keySet().removeIf(path -> !Files.isRegularFile(path));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                fileChanged(path);
+            }
+        }
+    }
+
+    private void fileChanged(Path path) {
+        if (!BatchValidator.isSupportedFile(path.getFileName().toString())) {
+            return;
+        }
+        FileState state = stat(path);
+        if (state == null || state.sameAs(validated.get(path))) {
+            return;
+        }
+        FileState current = pending.get(path);
+        if (current == null || !current.sameAs(state)) {
+            pending.put(path, state);
+        }
+    }
+
+    /**
+     * Submit the pending files that haven't changed during the quiet period.
+     */
+    private void submitStableFiles(FileScheduler executor, PrintStream out, BatchSummary summary) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, FileState>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, FileState> entry = it.next();
+            FileState state = stat(entry.getKey());
+            if (state == null) {
+                // Removed before it was done.
+                it.remove();
+                continue;
+            }
+            FileState last = entry.getValue();
+            if (!state.sameAs(last)) {
+                last.size = state.size;
+                last.modified = state.modified;
+                last.changedAt = now;
+                continue;
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(now - last.changedAt) < quietPeriodMillis) {
+                continue;
+            }
+            it.remove();
+            validated.put(entry.getKey(), last);
+            File file = entry.getKey().toFile();
+            batchValidator.submit(executor, file, out, summary);
+        }
+    }
+
+    private static FileState stat(Path path) {
+        File file = path.toFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        return new FileState(file.length(), file.lastModified(), System.nanoTime());
+    }
+}
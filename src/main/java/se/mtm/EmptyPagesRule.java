@@ -0,0 +1,43 @@
+package se.mtm;
+
+import java.util.Arrays;
+
+/**
+ * Reports pages without content below the page numbers. The empty pages of a section are
+ * reported when the section ends, after the missing pages of the section.
+ */
+public class EmptyPagesRule implements Rule {
+    private int[] emptyPages = new int[16];
+    private int emptyPageCount = 0;
+    private boolean indexSection;
+
+    @Override
+    public void startSection(RuleContext context, boolean indexSection) {
+        this.indexSection = indexSection;
+        emptyPageCount = 0;
+    }
+
+    @Override
+    public void page(RuleContext context, PageIdentifiers page) {
+        if (!page.isEmpty()) {
+            return;
+        }
+        if (emptyPageCount == emptyPages.length) {
+            emptyPages = Arrays.copyOf(emptyPages, emptyPageCount * 2);
+        }
+        emptyPages[emptyPageCount++] = page.getPefPage();
+    }
+
+    @Override
+    public void endSection(RuleContext context) {
+        for (int i = 0; i < emptyPageCount; i++) {
+            context.reportEmptyPage(emptyPages[i], indexSection);
+        }
+        emptyPageCount = 0;
+    }
+
+    @Override
+    public boolean isVolumeIndependent() {
+        return true;
+    }
+}
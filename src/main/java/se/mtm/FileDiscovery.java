@@ -0,0 +1,304 @@
+package se.mtm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the files to validate below a directory. Directories are listed in parallel ahead of
+ * the walk, which matters on network storage where listing a directory is slow, but only a
+ * limited number of listings run ahead of it, see setLookAhead. The files are handed out one
+ * at a time in a fixed order: entries of a directory sorted by name, subdirectories walked
+ * where they sort. The first file can be validated as soon as the directories leading to it
+ * are listed.
+ *
+ * Include and exclude patterns are globs matched against the path relative to the directory,
+ * with / between names. Patterns without a / are also matched against the name alone, so
+ * {@code *.xml.gz} matches in any directory. Excluded directories are not listed at all.
+ * Symbolic links to directories are not followed.
+ */
+public class FileDiscovery {
+    /**
+     * Depth of a walk without a limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+    private int maxDepth = 1;
+    private int threads = 4;
+    private int lookAhead = 64;
+
+    /**
+     * Receives the files in walk order.
+     */
+    public interface Visitor {
+        /**
+         * @param file  File to validate
+         * @param name  Path of the file relative to the directory
+         */
+        void file(File file, String name);
+
+        /**
+         * A directory that could not be listed.
+         *
+         * @param name  Path of the directory relative to the directory
+         * @param e     The reason
+         */
+        void error(String name, IOException e);
+    }
+
+    /**
+     * Glob pattern, matched against the file name too if it has no directory part.
+     */
+    private static class Pattern {
+        private final PathMatcher matcher;
+        private final boolean nameOnly;
+
+        Pattern(String glob) {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            nameOnly = glob.indexOf('/') == -1;
+        }
+
+        boolean matches(Path relative) {
+            return matcher.matches(relative) || (nameOnly && matcher.matches(relative.getFileName()));
+        }
+    }
+
+    /**
+     * An entry of a listed directory, directories that will be walked are listed when found.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final Path path;
+        final String name;
+        final FutureTask<List<Entry>> listing;
+        /**
+         * True if the listing holds one of the look ahead permits until the walk reaches it.
+         */
+        boolean queued;
+
+        Entry(Path path, String name, FutureTask<List<Entry>> listing) {
+            this.path = path;
+            this.name = name;
+            this.listing = listing;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return name.compareTo(other.name);
+        }
+    }
+
+    /**
+     * Only walk files whose path matches one of the patterns, all supported files are walked
+     * if no pattern is given.
+     */
+    public void addInclude(String glob) {
+        includes.add(new Pattern(glob));
+    }
+
+    /**
+     * Skip files and directories whose path matches the pattern.
+     */
+    public void addExclude(String glob) {
+        excludes.add(new Pattern(glob));
+    }
+
+    /**
+     * @param maxDepth  Levels of directories to walk, 1 only looks at the files of the
+     *                  directory itself.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param threads   Number of directories to list at the same time.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param lookAhead Number of directory listings queued ahead of the walk, 0 to only list
+     *                  directories when the walk reaches them.
+     */
+    public void setLookAhead(int lookAhead) {
+        if (lookAhead < 0) {
+            throw new IllegalArgumentException("The look ahead can't be negative");
+        }
+        this.lookAhead = lookAhead;
+    }
+
+    /**
+     * Walk a directory and hand each file to the visitor on the calling thread.
+     *
+     * @param directory             Directory to walk
+     * @param visitor               Receives the files
+     * @throws IOException          Throws exception if the directory itself can't be listed.
+     * @throws InterruptedException Throws exception if interrupted while waiting for a listing.
+     */
+    public void walk(File directory, Visitor visitor) throws IOException, InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pefcheck-discovery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Path root = directory.toPath();
+            Semaphore ahead = new Semaphore(lookAhead);
+            FutureTask<List<Entry>> listing = listing(executor, ahead, root, root, 1);
+            listing.run();
+            walk(getListing(listing), ahead, visitor);
+        } catch (ListingException e) {
+            throw e.getCause();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void walk(List<Entry> entries, Semaphore ahead, Visitor visitor) throws InterruptedException {
+        for (Entry entry : entries) {
+            if (entry.listing == null) {
+                visitor.file(entry.path.toFile(), entry.name);
+                continue;
+            }
+            // Listings still in the queue are run here instead of waiting for their turn.
+            entry.listing.run();
+            List<Entry> children;
+            try {
+                children = getListing(entry.listing);
+            } catch (ListingException e) {
+                visitor.error(entry.name, e.getCause());
+                continue;
+            } finally {
+                if (entry.queued) {
+                    ahead.release();
+                }
+            }
+            walk(children, ahead, visitor);
+        }
+    }
+
+    private static List<Entry> getListing(FutureTask<List<Entry>> listing) throws InterruptedException {
+        try {
+            return listing.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new ListingException((IOException) cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Create the listing of a directory. The listing queues the listings of the subdirectories
+     * it finds in walk order while there are look ahead permits, so the walk rarely has to
+     * wait. Each permit is given back when the walk reaches the listing, the listings without
+     * one are run by the walk itself.
+     */
+    private FutureTask<List<Entry>> listing(ExecutorService executor, Semaphore ahead, Path root, Path dir,
+                                            int depth) {
+        return new FutureTask<>(() -> list(executor, ahead, root, dir, depth));
+    }
+
+    private List<Entry> list(ExecutorService executor, Semaphore ahead, Path root, Path dir, int depth)
+            throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                Path relative = root.relativize(path);
+                String name = relative.toString().replace(File.separatorChar, '/');
+                if (matchesAny(excludes, relative)) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    // Removed while listing.
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (depth < maxDepth) {
+                        entries.add(new Entry(path, name, listing(executor, ahead, root, path, depth + 1)));
+                    }
+                } else if (accept(path, relative)) {
+                    entries.add(new Entry(path, name, null));
+                }
+            }
+        }
+        Collections.sort(entries);
+        for (Entry entry : entries) {
+            if (entry.listing != null && ahead.tryAcquire()) {
+                entry.queued = true;
+                executor.execute(entry.listing);
+            }
+        }
+        return entries;
+    }
+
+    private boolean accept(Path path, Path relative) {
+        if (!BatchValidator.isSupportedFile(path.getFileName().toString())) {
+            return false;
+        }
+        if (!includes.isEmpty() && !matchesAny(includes, relative)) {
+            return false;
+        }
+        // Links to files are followed, links to directories are not.
+        return Files.isRegularFile(path);
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, Path relative) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carries the IOException of a listing out of the walk.
+     */
+    private static class ListingException extends RuntimeException {
+        ListingException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
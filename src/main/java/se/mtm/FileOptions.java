@@ -0,0 +1,71 @@
+package se.mtm;
+
+/**
+ * Options that can be given for a single file, like the lines of a manifest. Options are
+ * written as name=value, options that are not given keep the defaults of PEFCheck.
+ *
+ * Supported options:
+ * title-sections=N     Number of sections at the start of each volume that are not checked
+ */
+public class FileOptions {
+    /**
+     * No options, files are checked with the defaults.
+     */
+    public static final FileOptions DEFAULT = new FileOptions(-1);
+
+    private final int titleSections;
+
+    private FileOptions(int titleSections) {
+        this.titleSections = titleSections;
+    }
+
+    /**
+     * Parse options given as name=value.
+     *
+     * @param options                   The options
+     * @return                          The parsed options
+     * @throws IllegalArgumentException Throws exception if an option is unknown or incorrect.
+     */
+    public static FileOptions parse(String... options) {
+        int titleSections = -1;
+        for (String option : options) {
+            option = option.trim();
+            if (option.isEmpty()) {
+                continue;
+            }
+            int eq = option.indexOf('=');
+            String name = eq == -1 ? option : option.substring(0, eq).trim();
+            String value = eq == -1 ? "" : option.substring(eq + 1).trim();
+            if (name.equals("title-sections")) {
+                try {
+                    titleSections = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    titleSections = -1;
+                }
+                if (titleSections < 0) {
+                    throw new IllegalArgumentException("Incorrect number for title-sections: " + value);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown file option " + name);
+            }
+        }
+        return titleSections == -1 ? DEFAULT : new FileOptions(titleSections);
+    }
+
+    /**
+     * Apply the options to the options of the run.
+     *
+     * @param options   Options files are checked with by default
+     * @return          The options to check the file with
+     */
+    public CheckOptions apply(CheckOptions options) {
+        return titleSections == -1 ? options : options.withNumTitleSections(titleSections);
+    }
+
+    /**
+     * @return  Number of title sections or -1 if not given.
+     */
+    public int getTitleSections() {
+        return titleSections;
+    }
+}
@@ -0,0 +1,226 @@
+package se.mtm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the files of a batch on a fixed number of workers, longest expected file first, while
+ * the estimated memory of the running files stays within a budget.
+ *
+ * When the longest waiting file doesn't fit in the memory left, workers take the longest file
+ * that does, so small files keep the workers busy while a large one runs. A file that has been
+ * passed over a few times is not passed over again, the workers wait for memory to be freed
+ * instead. A file larger than the whole budget is run when nothing else is running.
+ *
+ * Submitting blocks while the queue is full, the queue is the window files can be reordered in.
+ */
+class FileScheduler implements Executor {
+    /**
+     * Times a file can be passed over by smaller files before it waits for memory to be freed.
+     */
+    static final int MAX_PASSES = 4;
+
+    private static final Comparator<Job> LONGEST_FIRST = (a, b) -> a.expectedNanos != b.expectedNanos
+            ? Long.compare(b.expectedNanos, a.expectedNanos)
+            : Long.compare(a.sequence, b.sequence);
+
+    private final long memoryBudget;
+    private final int capacity;
+    private final List<Thread> workers = new ArrayList<>();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(LONGEST_FIRST);
+
+    private volatile ReadAhead readAhead;
+
+    private long memoryInUse = 0;
+    private int running = 0;
+    private long sequence = 0;
+    private boolean shutdown = false;
+
+    private static class Job {
+        final Runnable task;
+        final long memory;
+        final long expectedNanos;
+        final long sequence;
+        int passes = 0;
+
+        Job(Runnable task, long memory, long expectedNanos, long sequence) {
+            this.task = task;
+            this.memory = memory;
+            this.expectedNanos = expectedNanos;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * @param threads       Number of files to run at the same time
+     * @param memoryBudget  Estimated memory the running files may use together, in bytes
+     * @param capacity      Number of files that can wait before submitting blocks
+     */
+    FileScheduler(int threads, long memoryBudget, int capacity) {
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("At least one thread and one waiting file are needed");
+        }
+        this.memoryBudget = memoryBudget;
+        this.capacity = capacity;
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "pefcheck-worker-" + (i + 1));
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Run a short task without memory cost, like reporting a file that can't be read, before
+     * the queued files.
+     */
+    @Override
+    public void execute(Runnable task) {
+        execute(task, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Queue a file, blocks while the queue is full.
+     *
+     * @param task          Validation of the file
+     * @param memory        Estimated memory used while the file is validated
+     * @param expectedNanos Estimated time to validate the file, longer files start first
+     */
+    synchronized void execute(Runnable task, long memory, long expectedNanos) {
+        boolean interrupted = false;
+        while (queue.size() >= capacity && !shutdown) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("The scheduler has been shut down");
+        }
+        queue.add(new Job(task, memory, expectedNanos, sequence++));
+        notifyAll();
+    }
+
+    /**
+     * Read files ahead of the workers, see ReadAhead. The files read ahead are queued here
+     * when they have been read.
+     *
+     * @param readAhead Reader to use, closed when the scheduler is shut down.
+     */
+    void setReadAhead(ReadAhead readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * @return  Reader to submit files through, or null if files are read by the workers.
+     */
+    ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Run the queued files and stop the workers when the queue is empty. Files still being
+     * read ahead are queued first.
+     */
+    void shutdown() {
+        ReadAhead reader = readAhead;
+        if (reader != null) {
+            reader.close();
+        }
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return  True if all files are done and the workers have stopped.
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long left = deadline - System.nanoTime();
+            if (left > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(worker, left);
+            }
+        }
+        return workers.stream().noneMatch(Thread::isAlive);
+    }
+
+    synchronized long getMemoryInUse() {
+        return memoryInUse;
+    }
+
+    private void work() {
+        Job job;
+        while ((job = take()) != null) {
+            try {
+                job.task.run();
+            } catch (Throwable e) {
+                // Like ThreadPoolExecutor, a failing task doesn't take the worker with it.
+                e.printStackTrace();
+            } finally {
+                done(job);
+            }
+        }
+    }
+
+    private synchronized Job take() {
+        while (true) {
+            Job job = next();
+            if (job != null) {
+                queue.remove(job);
+                memoryInUse += job.memory;
+                running++;
+                notifyAll();
+                return job;
+            }
+            if (shutdown && queue.isEmpty()) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Workers only stop when shut down, the queued files must still be run.
+            }
+        }
+    }
+
+    /**
+     * @return  The next file to run or null if the workers must wait.
+     */
+    private Job next() {
+        Job longest = queue.peek();
+        if (longest == null || running == 0 || memoryInUse + longest.memory <= memoryBudget) {
+            return longest;
+        }
+        if (longest.passes >= MAX_PASSES) {
+            return null;
+        }
+        Job fitting = null;
+        for (Job job : queue) {
+            if (memoryInUse + job.memory <= memoryBudget
+                    && (fitting == null || LONGEST_FIRST.compare(job, fitting) < 0)) {
+                fitting = job;
+            }
+        }
+        if (fitting != null) {
+            longest.passes++;
+        }
+        return fitting;
+    }
+
+    private synchronized void done(Job job) {
+        memoryInUse -= job.memory;
+        running--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,101 @@
+package se.mtm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time taken by the files validated in a session, used to start the files expected to take
+ * longest first. Files that haven't been validated before, or have changed size since, are
+ * expected to take as long per byte as the files so far.
+ *
+ * With a result cache the timings are kept in the cache directory, so the next run can use
+ * them too, see ResultCache.loadTimings.
+ */
+class FileTimings {
+    /**
+     * Number of files whose time is remembered.
+     */
+    private static final int MAX_FILES = 10000;
+
+    private final Map<String, Timing> byFile = new LinkedHashMap<String, Timing>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Timing> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+    private long totalBytes = 0;
+    private long totalNanos = 0;
+
+    private static class Timing {
+        final long bytes;
+        final long nanos;
+
+        Timing(long bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * @param name  Name of the file
+     * @param bytes Size of the file
+     * @param nanos Time taken to validate it
+     */
+    synchronized void record(String name, long bytes, long nanos) {
+        byFile.put(name, new Timing(bytes, nanos));
+        totalBytes += bytes;
+        totalNanos += nanos;
+    }
+
+    /**
+     * @param name  Name of the file
+     * @param bytes Size of the file
+     * @return      The time the file took last time, or the time expected from its size.
+     */
+    synchronized long estimate(String name, long bytes) {
+        Timing timing = byFile.get(name);
+        if (timing != null && timing.bytes == bytes) {
+            return timing.nanos;
+        }
+        if (totalBytes == 0) {
+            return bytes;
+        }
+        return (long) (bytes * ((double) totalNanos / totalBytes));
+    }
+
+    /**
+     * Write the timings, least recently used first.
+     */
+    synchronized void write(DataOutputStream out) throws IOException {
+        out.writeLong(totalBytes);
+        out.writeLong(totalNanos);
+        out.writeInt(byFile.size());
+        for (Map.Entry<String, Timing> entry : byFile.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().bytes);
+            out.writeLong(entry.getValue().nanos);
+        }
+    }
+
+    /**
+     * Add timings written by write, files already timed in this session keep their time.
+     */
+    synchronized void read(DataInputStream in) throws IOException {
+        long bytes = in.readLong();
+        long nanos = in.readLong();
+        int count = in.readInt();
+        Map<String, Timing> read = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            read.put(in.readUTF(), new Timing(in.readLong(), in.readLong()));
+        }
+        Map<String, Timing> recorded = new LinkedHashMap<>(byFile);
+        byFile.clear();
+        byFile.putAll(read);
+        byFile.putAll(recorded);
+        totalBytes += bytes;
+        totalNanos += nanos;
+    }
+}
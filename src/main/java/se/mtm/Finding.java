@@ -0,0 +1,139 @@
+package se.mtm;
+
+/**
+ * A single issue found when validating a file. Volumes and sections are numbered from 1 in
+ * the order they appear in the file, title sections included. Page numbers are given both as
+ * decimal numbers and in the form used in the book, such as #ad or __iv.
+ */
+public class Finding {
+    private final String file;
+    private final int volume;
+    private final int section;
+    private final FindingKind kind;
+    private final int page;
+    private final String printablePage;
+    private final int previousPage;
+    private final String printablePreviousPage;
+    private final boolean indexPage;
+    private final String message;
+    private final int count;
+    private final int firstPage;
+    private final String printableFirstPage;
+
+    public Finding(String file, int volume, int section, FindingKind kind, int page, String printablePage,
+                   int previousPage, String printablePreviousPage, boolean indexPage, String message) {
+        this(file, volume, section, kind, page, printablePage, previousPage, printablePreviousPage, indexPage,
+                message, 1);
+    }
+
+    /**
+     * A finding standing for several findings of the same kind, see getCount.
+     */
+    public Finding(String file, int volume, int section, FindingKind kind, int page, String printablePage,
+                   int previousPage, String printablePreviousPage, boolean indexPage, String message, int count) {
+        this(file, volume, section, kind, page, printablePage, previousPage, printablePreviousPage, indexPage,
+                message, count, -1, null);
+    }
+
+    /**
+     * A finding standing for a range of pages, see getFirstPage.
+     */
+    public Finding(String file, int volume, int section, FindingKind kind, int page, String printablePage,
+                   int previousPage, String printablePreviousPage, boolean indexPage, String message, int count,
+                   int firstPage, String printableFirstPage) {
+        this.file = file;
+        this.volume = volume;
+        this.section = section;
+        this.kind = kind;
+        this.page = page;
+        this.printablePage = printablePage;
+        this.previousPage = previousPage;
+        this.printablePreviousPage = printablePreviousPage;
+        this.indexPage = indexPage;
+        this.message = message;
+        this.count = count;
+        this.firstPage = firstPage;
+        this.printableFirstPage = printableFirstPage;
+    }
+
+    /**
+     * @return  Name of the file, null if the document didn't come from a file.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return  Volume number starting from 1, 0 if not known.
+     */
+    public int getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return  Section number within the volume starting from 1, 0 if not known.
+     */
+    public int getSection() {
+        return section;
+    }
+
+    public FindingKind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return  The page the finding is about, -1 if not about a page.
+     */
+    public int getPage() {
+        return page;
+    }
+
+    public String getPrintablePage() {
+        return printablePage;
+    }
+
+    /**
+     * @return  For missing pages the page before the gap, otherwise -1.
+     */
+    public int getPreviousPage() {
+        return previousPage;
+    }
+
+    public String getPrintablePreviousPage() {
+        return printablePreviousPage;
+    }
+
+    public boolean isIndexPage() {
+        return indexPage;
+    }
+
+    /**
+     * @return  Description of an error, null for page findings.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Findings following each other are merged when the output is summarized. Merged missing
+     * pages go from the page before the first gap to the page after the last, merged empty pages
+     * from the first page to the page. For suppressed findings the number left out.
+     *
+     * @return  Number of findings this finding stands for, 1 if not merged.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return  For a range of empty pages the first page of the range, otherwise -1. The page
+     *          is the last page of the range.
+     */
+    public int getFirstPage() {
+        return firstPage;
+    }
+
+    public String getPrintableFirstPage() {
+        return printableFirstPage;
+    }
+}
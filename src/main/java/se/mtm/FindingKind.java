@@ -0,0 +1,31 @@
+package se.mtm;
+
+/**
+ * The kinds of issues PEFCheck reports.
+ */
+public enum FindingKind {
+    /**
+     * One or more pages are missing between two pages.
+     */
+    MISSING_PAGES,
+
+    /**
+     * A page has no content below the page numbers.
+     */
+    EMPTY_PAGE,
+
+    /**
+     * The file could not be processed.
+     */
+    ERROR,
+
+    /**
+     * The original page numbers of two pages don't follow each other.
+     */
+    ORIGINAL_PAGES,
+
+    /**
+     * Findings of a file over the limit were left out of the output, see AggregatingFindingsWriter.
+     */
+    SUPPRESSED
+}
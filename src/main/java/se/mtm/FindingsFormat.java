@@ -0,0 +1,43 @@
+package se.mtm;
+
+import java.io.Writer;
+
+/**
+ * Output formats for findings that can be chosen on the command line.
+ */
+public enum FindingsFormat {
+    TEXT,
+    JSONL,
+    CSV;
+
+    /**
+     * Create a writer for this format.
+     *
+     * @param out   Where the findings are written.
+     * @return      A buffered findings writer.
+     */
+    public FindingsWriter newWriter(Writer out) {
+        switch (this) {
+            case JSONL:
+                return new JsonLinesFindingsWriter(out);
+            case CSV:
+                return new CsvFindingsWriter(out);
+            default:
+                return new TextFindingsWriter(out);
+        }
+    }
+
+    /**
+     * @param name                      Name of the format as given on the command line.
+     * @return                          The format
+     * @throws IllegalArgumentException Throws exception if the format is unknown.
+     */
+    public static FindingsFormat fromName(String name) {
+        for (FindingsFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format " + name);
+    }
+}
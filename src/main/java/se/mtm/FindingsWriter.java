@@ -0,0 +1,41 @@
+package se.mtm;
+
+/**
+ * Receives the findings of the validation. Implementations decide how findings are presented,
+ * writing errors are thrown as UncheckedIOException.
+ */
+public interface FindingsWriter {
+
+    /**
+     * Called once before the first file of a run, used for headers of tabular formats.
+     */
+    default void writeHeader() {}
+
+    /**
+     * Called when processing of a file starts.
+     *
+     * @param file  Name of the file.
+     */
+    void startFile(String file);
+
+    /**
+     * Called for every finding.
+     *
+     * @param finding   The finding to write.
+     */
+    void write(Finding finding);
+
+    /**
+     * Called when a file is done, when the run asks for a result record per file.
+     *
+     * @param file      Name of the file.
+     * @param issues    Number of issues found in the file.
+     * @param failed    True if the file could not be processed.
+     */
+    default void endFile(String file, int issues, boolean failed) {}
+
+    /**
+     * Write buffered findings to the underlying stream.
+     */
+    void flush();
+}
@@ -0,0 +1,201 @@
+package se.mtm;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The flight recorder events, only used through ValidationEvents. The event types are made
+ * with jdk.jfr.EventFactory through reflection, so the class compiles for Java 8 and is only
+ * linked against the flight recorder when the JVM has one.
+ */
+final class JfrEvents {
+    private final Class<?> annotationElement;
+    private final Constructor<?> valueDescriptor;
+    private final Method create;
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method set;
+    private final Method commit;
+
+    private final EventType file;
+    private final EventType volume;
+    private final EventType section;
+    private final EventType finding;
+
+    /**
+     * A registered event type, the fields are set in the order they were given.
+     */
+    private final class EventType {
+        private final Object factory;
+        private final Object type;
+
+        private EventType(Object factory) throws ReflectiveOperationException {
+            this.factory = factory;
+            this.type = factory.getClass().getMethod("getEventType").invoke(factory);
+        }
+
+        /**
+         * @return  A started event, or null if the event type is not recorded.
+         */
+        Object begin() {
+            if (!(Boolean) invoke(isEnabled, type)) {
+                return null;
+            }
+            Object event = invoke(newEvent, factory);
+            invoke(JfrEvents.this.begin, event);
+            return event;
+        }
+
+        void end(Object event, Object... values) {
+            invoke(JfrEvents.this.end, event);
+            if ((Boolean) invoke(shouldCommit, event)) {
+                commitValues(event, values);
+            }
+        }
+
+        void commit(Object... values) {
+            if ((Boolean) invoke(isEnabled, type)) {
+                commitValues(invoke(newEvent, factory), values);
+            }
+        }
+
+        private void commitValues(Object event, Object[] values) {
+            for (int i = 0; i < values.length; i++) {
+                invoke(set, event, i, values[i]);
+            }
+            invoke(JfrEvents.this.commit, event);
+        }
+    }
+
+    private JfrEvents() throws ReflectiveOperationException {
+        annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+        create = Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class);
+        newEvent = create.getReturnType().getMethod("newEvent");
+        isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        begin = eventClass.getMethod("begin");
+        end = eventClass.getMethod("end");
+        shouldCommit = eventClass.getMethod("shouldCommit");
+        set = eventClass.getMethod("set", int.class, Object.class);
+        commit = eventClass.getMethod("commit");
+
+        file = type("se.mtm.ValidateFile", "Validate File", "Parsing and validation of one file",
+                field(String.class, "file", "File"),
+                field(long.class, "bytes", "Size", annotation("jdk.jfr.DataAmount", "BYTES")),
+                field(int.class, "volumes", "Volumes"),
+                field(int.class, "sections", "Sections"),
+                field(int.class, "pages", "Pages"),
+                field(int.class, "findings", "Findings"));
+        volume = type("se.mtm.ValidateVolume", "Validate Volume",
+                "Parsing and validation of the checked sections of one volume",
+                field(String.class, "file", "File"),
+                field(int.class, "volume", "Volume"),
+                field(int.class, "sections", "Sections"),
+                field(int.class, "pages", "Pages"));
+        section = type("se.mtm.ValidateSection", "Validate Section", "Parsing and validation of one section",
+                field(String.class, "file", "File"),
+                field(int.class, "volume", "Volume"),
+                field(int.class, "section", "Section"),
+                field(int.class, "pages", "Pages"),
+                field(boolean.class, "indexSection", "Index Section"));
+        finding = type("se.mtm.Finding", "Finding", "An issue reported for a file",
+                field(String.class, "file", "File"),
+                field(String.class, "kind", "Kind"),
+                field(int.class, "volume", "Volume"),
+                field(int.class, "section", "Section"),
+                field(int.class, "page", "Page"),
+                field(String.class, "message", "Message"));
+    }
+
+    /**
+     * @return  The events, or null if the flight recorder is not available in this JVM.
+     */
+    static JfrEvents create() {
+        try {
+            return new JfrEvents();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private EventType type(String name, String label, String description, Object... fields)
+            throws ReflectiveOperationException {
+        List<Object> annotations = Arrays.asList(
+                annotation("jdk.jfr.Name", name),
+                annotation("jdk.jfr.Label", label),
+                annotation("jdk.jfr.Category", new String[]{"PEFCheck"}),
+                annotation("jdk.jfr.Description", description),
+                annotation("jdk.jfr.StackTrace", false)
+        );
+        return new EventType(create.invoke(null, annotations, Arrays.asList(fields)));
+    }
+
+    private Object field(Class<?> type, String name, String label, Object... annotations)
+            throws ReflectiveOperationException {
+        List<Object> all = new ArrayList<>(Arrays.asList(annotations));
+        all.add(annotation("jdk.jfr.Label", label));
+        return valueDescriptor.newInstance(type, name, Collections.unmodifiableList(all));
+    }
+
+    private Object annotation(String className, Object value) throws ReflectiveOperationException {
+        Class<? extends Annotation> type = Class.forName(className).asSubclass(Annotation.class);
+        return annotationElement.getConstructor(Class.class, Object.class).newInstance(type, value);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    Object beginFile() {
+        return file.begin();
+    }
+
+    void endFile(Object started, String file, long bytes, int volumes, int sections, int pages, int findings) {
+        this.file.end(started, file, bytes, volumes, sections, pages, findings);
+    }
+
+    Object beginVolume() {
+        return volume.begin();
+    }
+
+    void endVolume(Object started, String file, int volume, int sections, int pages) {
+        this.volume.end(started, file, volume, sections, pages);
+    }
+
+    Object beginSection() {
+        return section.begin();
+    }
+
+    void endSection(Object started, String file, int volume, int section, int pages, boolean indexSection) {
+        this.section.end(started, file, volume, section, pages, indexSection);
+    }
+
+    void finding(Finding finding) {
+        this.finding.commit(finding.getFile(), finding.getKind().name(), finding.getVolume(),
+                finding.getSection(), finding.getPage(), finding.getMessage());
+    }
+}
@@ -0,0 +1,100 @@
+package se.mtm;
+
+import java.io.Writer;
+
+/**
+ * Writes each finding as a JSON object on its own line.
+ */
+public class JsonLinesFindingsWriter extends AbstractFindingsWriter {
+    private final StringBuilder sb = new StringBuilder();
+
+    public JsonLinesFindingsWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void startFile(String file) {
+        // Every finding carries the file name.
+    }
+
+    @Override
+    public void write(Finding finding) {
+        sb.setLength(0);
+        sb.append('{');
+        appendField("file", finding.getFile()).append(',');
+        sb.append("\"volume\":").append(finding.getVolume()).append(',');
+        sb.append("\"section\":").append(finding.getSection()).append(',');
+        appendField("kind", finding.getKind().name());
+        if (finding.getKind() == FindingKind.ERROR) {
+            sb.append(',');
+            appendField("message", finding.getMessage());
+        } else if (finding.getKind() == FindingKind.SUPPRESSED) {
+            sb.append(",\"count\":").append(finding.getCount()).append(',');
+            appendField("message", finding.getMessage());
+        } else {
+            if (finding.getFirstPage() != -1) {
+                sb.append(",\"firstPage\":").append(finding.getFirstPage()).append(',');
+                appendField("printableFirstPage", finding.getPrintableFirstPage());
+            }
+            sb.append(",\"page\":").append(finding.getPage()).append(',');
+            appendField("printablePage", finding.getPrintablePage());
+            if (hasPreviousPage(finding)) {
+                sb.append(",\"previousPage\":").append(finding.getPreviousPage()).append(',');
+                appendField("printablePreviousPage", finding.getPrintablePreviousPage());
+            }
+            sb.append(",\"indexPage\":").append(finding.isIndexPage());
+            if (finding.getCount() > 1) {
+                sb.append(",\"count\":").append(finding.getCount());
+            }
+            if (finding.getMessage() != null) {
+                sb.append(',');
+                appendField("message", finding.getMessage());
+            }
+        }
+        sb.append('}');
+        writeLine(sb.toString());
+    }
+
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        sb.setLength(0);
+        sb.append('{');
+        appendField("file", file).append(',');
+        appendField("result", failed ? "FAILED" : issues == 0 ? "OK" : "ISSUES");
+        sb.append(",\"issues\":").append(issues);
+        sb.append('}');
+        writeLine(sb.toString());
+    }
+
+    /**
+     * @return  True if the previous page is part of the finding.
+     */
+    static boolean hasPreviousPage(Finding finding) {
+        return finding.getKind() == FindingKind.MISSING_PAGES || finding.getKind() == FindingKind.ORIGINAL_PAGES;
+    }
+
+    private StringBuilder appendField(String name, String value) {
+        sb.append('"').append(name).append("\":");
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+}
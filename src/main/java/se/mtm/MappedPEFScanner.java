@@ -0,0 +1,443 @@
+package se.mtm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Fast scanner for large PEF files. Maps the file into memory and looks for element boundaries
+ * directly in the UTF-8 bytes, only the rows PEFStreamProcessor asks for are decoded. The
+ * events are handed to a PEFStreamProcessor, so the results are the same as for the streaming
+ * engine.
+ *
+ * The scanner only handles the plain XML PEF producers write. If it finds comments, CDATA,
+ * a DOCTYPE, entities anywhere in the text or attributes, names that aren't ASCII, namespace prefixes inside
+ * volumes, another encoding than UTF-8 or anything malformed it gives up and the caller should
+ * use the full parser for the file.
+ */
+class MappedPEFScanner {
+    private static final byte[] VOLUME = {'v', 'o', 'l', 'u', 'm', 'e'};
+    private static final byte[] PAGE = {'p', 'a', 'g', 'e'};
+
+    private final PEFStreamProcessor processor;
+
+    private ByteBuffer buffer;
+
+    /*
+     * Open elements, stored as positions of the names in the buffer.
+     */
+    private int[] nameStart = new int[16];
+    private int[] nameLength = new int[16];
+    private int depth = 0;
+
+    /*
+     * Attributes of the current start tag, stored the same way.
+     */
+    private int[] attributeStart = new int[8];
+    private int[] attributeLength = new int[8];
+
+    private char[] text = new char[256];
+
+    MappedPEFScanner(PEFStreamProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Scan a file and hand the events to the processor.
+     *
+     * @param file          File to scan
+     * @return              True if the whole file was scanned, false if the file contains
+     *                      something the scanner doesn't handle.
+     * @throws Exception    Throws exceptions when the document is not well formatted.
+     */
+    boolean process(File file) throws Exception {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return false;
+            }
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            // Some file systems can't be mapped, the full parser reads them instead.
+            return false;
+        }
+        return process(content);
+    }
+
+    /**
+     * Scan a document already in memory, like a file read ahead.
+     *
+     * @param content       The bytes of the document, from index 0 to the limit
+     * @return              True if the whole document was scanned, false if it contains
+     *                      something the scanner doesn't handle.
+     * @throws Exception    Throws exceptions when the document is not well formatted.
+     */
+    boolean process(ByteBuffer content) throws Exception {
+        buffer = content;
+        try {
+            return scan();
+        } finally {
+            buffer = null;
+        }
+    }
+
+    private boolean scan() throws Exception {
+        int end = buffer.limit();
+        int pos = 0;
+        if (end >= 3 && (buffer.get(0) & 0xff) == 0xef && (buffer.get(1) & 0xff) == 0xbb && (buffer.get(2) & 0xff) == 0xbf) {
+            pos = 3;
+        } else if (end >= 2 && (buffer.get(0) == 0 || buffer.get(1) == 0 || (buffer.get(0) & 0xff) >= 0xfe)) {
+            // UTF-16 or UTF-32
+            return false;
+        }
+        boolean seenRoot = false;
+
+        while (pos < end) {
+            int lt = indexOf((byte) '<', pos, end);
+            if (lt == -1) {
+                if (!skipText(pos, end)) {
+                    return false;
+                }
+                break;
+            }
+            if (lt > pos) {
+                if (depth > 0 && processor.wantsText() ? !text(pos, lt) : !skipText(pos, lt)) {
+                    return false;
+                }
+            }
+            if (lt + 1 >= end) {
+                return false;
+            }
+
+            byte next = buffer.get(lt + 1);
+            if (next == '?') {
+                int close = indexOf((byte) '?', (byte) '>', lt + 2, end);
+                if (close == -1) {
+                    return false;
+                }
+                if (!seenRoot && isXmlDeclaration(lt, close) && !isUtf8Declaration(lt, close)) {
+                    return false;
+                }
+                pos = close + 2;
+            } else if (next == '!') {
+                // Comment, CDATA section or DOCTYPE
+                return false;
+            } else if (next == '/') {
+                int nameEnd = nameEnd(lt + 2, end);
+                int gt = skipWhitespace(nameEnd, end);
+                if (gt >= end || buffer.get(gt) != '>' || depth == 0 || !sameName(lt + 2, nameEnd - lt - 2)) {
+                    return false;
+                }
+                processor.endElement();
+                depth--;
+                pos = gt + 1;
+            } else {
+                int start = lt + 1;
+                int nameEnd = nameEnd(start, end);
+                int gt = tagEnd(nameEnd, end);
+                if (gt == -1 || !isName(start, nameEnd)) {
+                    return false;
+                }
+                int colon = indexOf((byte) ':', start, nameEnd);
+                if (colon != -1 && (processor.inVolume() || equals(colon + 1, nameEnd, VOLUME, false))) {
+                    return false;
+                }
+                push(start, nameEnd - start);
+                seenRoot = true;
+                processor.startElement(equals(start, nameEnd, VOLUME, false), equals(start, nameEnd, PAGE, true));
+                if (buffer.get(gt - 1) == '/') {
+                    processor.endElement();
+                    depth--;
+                }
+                pos = gt + 1;
+            }
+        }
+        return depth == 0 && seenRoot;
+    }
+
+    /**
+     * Decode the UTF-8 text between two positions and pass it to the processor.
+     *
+     * @return  False if the text contains entities or malformed UTF-8.
+     */
+    private boolean text(int start, int end) {
+        if (text.length < end - start) {
+            text = Arrays.copyOf(text, Math.max(end - start, text.length * 2));
+        }
+        int length = 0;
+        int i = start;
+        while (i < end) {
+            int b = buffer.get(i++) & 0xff;
+            if (b < 0x80) {
+                if (b == '&') {
+                    return false;
+                }
+                if (b == '\r') {
+                    // Line endings are normalized by XML parsers.
+                    b = '\n';
+                    if (i < end && buffer.get(i) == '\n') {
+                        i++;
+                    }
+                }
+                text[length++] = (char) b;
+                continue;
+            }
+            int codePoint;
+            int extra;
+            if ((b >> 5) == 0x6) {
+                codePoint = b & 0x1f;
+                extra = 1;
+            } else if ((b >> 4) == 0xe) {
+                codePoint = b & 0x0f;
+                extra = 2;
+            } else if ((b >> 3) == 0x1e) {
+                codePoint = b & 0x07;
+                extra = 3;
+            } else {
+                return false;
+            }
+            if (i + extra > end) {
+                return false;
+            }
+            for (int j = 0; j < extra; j++) {
+                int c = buffer.get(i++) & 0xff;
+                if ((c >> 6) != 0x2) {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (c & 0x3f);
+            }
+            if (Character.isBmpCodePoint(codePoint)) {
+                text[length++] = (char) codePoint;
+            } else {
+                text[length++] = Character.highSurrogate(codePoint);
+                text[length++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        processor.characters(text, 0, length);
+        return true;
+    }
+
+    /**
+     * Check text the processor doesn't want, like rows after the page number and text between
+     * elements. Outside the root element only whitespace is allowed.
+     *
+     * @return  False if the text contains entities, or anything but whitespace outside the root.
+     */
+    private boolean skipText(int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '&') {
+                return false;
+            }
+            if (depth == 0 && b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isXmlDeclaration(int lt, int close) {
+        return close - lt >= 5 && buffer.get(lt + 2) == 'x' && buffer.get(lt + 3) == 'm' && buffer.get(lt + 4) == 'l'
+                && (buffer.get(lt + 5) == ' ' || buffer.get(lt + 5) == '?');
+    }
+
+    /**
+     * Check the encoding of the xml declaration, no encoding means UTF-8.
+     */
+    private boolean isUtf8Declaration(int lt, int close) {
+        final byte[] encoding = {'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g'};
+        for (int i = lt + 5; i + encoding.length < close; i++) {
+            if (!equals(i, i + encoding.length, encoding, false)) {
+                continue;
+            }
+            int quote = i + encoding.length;
+            while (quote < close && buffer.get(quote) != '"' && buffer.get(quote) != '\'') quote++;
+            int valueEnd = quote + 1;
+            while (valueEnd < close && buffer.get(valueEnd) != buffer.get(quote)) valueEnd++;
+            return equals(quote + 1, valueEnd, new byte[]{'u', 't', 'f', '-', '8'}, true)
+                    || equals(quote + 1, valueEnd, new byte[]{'u', 's', '-', 'a', 's', 'c', 'i', 'i'}, true);
+        }
+        return true;
+    }
+
+    private void push(int start, int length) {
+        if (depth == nameStart.length) {
+            nameStart = Arrays.copyOf(nameStart, depth * 2);
+            nameLength = Arrays.copyOf(nameLength, depth * 2);
+        }
+        nameStart[depth] = start;
+        nameLength[depth] = length;
+        depth++;
+    }
+
+    private boolean sameName(int start, int length) {
+        return nameLength[depth - 1] == length && sameBytes(nameStart[depth - 1], start, length);
+    }
+
+    private boolean sameBytes(int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(first + i) != buffer.get(second + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equals(int start, int end, byte[] name, boolean ignoreCase) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            byte b = buffer.get(start + i);
+            if (ignoreCase && b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nameEnd(int pos, int end) {
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                return pos;
+            }
+            pos++;
+        }
+        return end;
+    }
+
+    /**
+     * Find the end of a start tag after the element name. The attributes must be name="value"
+     * pairs separated by whitespace, with names used once and values without < or entities.
+     *
+     * @return  Position of the >, or -1 if the tag is malformed or holds something the scanner
+     *          doesn't handle, the parser then reports it.
+     */
+    private int tagEnd(int pos, int end) {
+        int attributes = 0;
+        while (true) {
+            int space = pos;
+            pos = skipWhitespace(pos, end);
+            if (pos >= end) {
+                return -1;
+            }
+            byte b = buffer.get(pos);
+            if (b == '>') {
+                return pos;
+            }
+            if (b == '/') {
+                return pos + 1 < end && buffer.get(pos + 1) == '>' ? pos + 1 : -1;
+            }
+            if (pos == space) {
+                return -1;
+            }
+            int start = pos;
+            while (pos < end && isNameByte(buffer.get(pos), pos == start)) {
+                pos++;
+            }
+            if (pos == start || isAttribute(start, pos - start, attributes)) {
+                return -1;
+            }
+            if (attributes == attributeStart.length) {
+                attributeStart = Arrays.copyOf(attributeStart, attributes * 2);
+                attributeLength = Arrays.copyOf(attributeLength, attributes * 2);
+            }
+            attributeStart[attributes] = start;
+            attributeLength[attributes] = pos - start;
+            attributes++;
+
+            pos = skipWhitespace(pos, end);
+            if (pos >= end || buffer.get(pos) != '=') {
+                return -1;
+            }
+            pos = skipWhitespace(pos + 1, end);
+            if (pos >= end || (buffer.get(pos) != '"' && buffer.get(pos) != '\'')) {
+                return -1;
+            }
+            byte quote = buffer.get(pos++);
+            while (pos < end && buffer.get(pos) != quote) {
+                if (buffer.get(pos) == '<' || buffer.get(pos) == '&') {
+                    return -1;
+                }
+                pos++;
+            }
+            if (pos >= end) {
+                return -1;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * @return  True if one of the first attributes of the tag has the name.
+     */
+    private boolean isAttribute(int start, int length, int attributes) {
+        for (int i = 0; i < attributes; i++) {
+            if (attributeLength[i] == length && sameBytes(attributeStart[i], start, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check an element name, only ASCII names are handled by the scanner.
+     */
+    private boolean isName(int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isNameByte(buffer.get(i), i == start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameByte(byte b, boolean first) {
+        if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == ':') {
+            return true;
+        }
+        return !first && ((b >= '0' && b <= '9') || b == '-' || b == '.');
+    }
+
+    private int skipWhitespace(int pos, int end) {
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return pos;
+            }
+            pos++;
+        }
+        return end;
+    }
+
+    private int indexOf(byte b, int pos, int end) {
+        while (pos < end) {
+            if (buffer.get(pos) == b) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private int indexOf(byte first, byte second, int pos, int end) {
+        while (pos < end - 1) {
+            if (buffer.get(pos) == first && buffer.get(pos + 1) == second) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+}
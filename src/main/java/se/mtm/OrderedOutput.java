@@ -0,0 +1,92 @@
+package se.mtm;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the reports of files in the order the files were submitted, whatever order the
+ * workers finish them in. Each file takes a ticket when it is submitted and its report is held
+ * until the reports of all earlier tickets have been written.
+ *
+ * Reports that are waiting for an earlier file are kept in memory. Taking a ticket blocks when
+ * too many reports are waiting, so a single slow file doesn't let the rest of a large directory
+ * pile up behind it.
+ */
+class OrderedOutput {
+    private final PrintStream out;
+    private final boolean ordered;
+    private final int maxPending;
+
+    private final Map<Integer, byte[]> pending = new HashMap<>();
+    private int nextTicket = 0;
+    private int nextToWrite = 0;
+
+    /**
+     * @param out           Stream to write the reports to
+     * @param maxPending    Number of tickets that can be out before taking one blocks
+     */
+    OrderedOutput(PrintStream out, int maxPending) {
+        this(out, true, maxPending);
+    }
+
+    private OrderedOutput(PrintStream out, boolean ordered, int maxPending) {
+        this.out = out;
+        this.ordered = ordered;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * @return  Output that writes each report as soon as it is done, used in watch mode where
+     *          files arrive in no particular order anyway.
+     */
+    static OrderedOutput unordered(PrintStream out) {
+        return new OrderedOutput(out, false, 0);
+    }
+
+    /**
+     * Take the place of the next file in the output.
+     *
+     * @return  Ticket to write the report of the file with.
+     */
+    synchronized int reserve() {
+        boolean interrupted = false;
+        while (ordered && nextTicket - nextToWrite >= maxPending) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return nextTicket++;
+    }
+
+    /**
+     * Write the report of a file, or hold it until the reports before it are written.
+     *
+     * @param ticket    Ticket given by reserve
+     * @param report    Report of the file, may be empty
+     */
+    synchronized void write(int ticket, byte[] report) {
+        if (!ordered) {
+            writeReport(report);
+            return;
+        }
+        pending.put(ticket, report);
+        while (pending.containsKey(nextToWrite)) {
+            writeReport(pending.remove(nextToWrite));
+            nextToWrite++;
+        }
+        notifyAll();
+    }
+
+    private void writeReport(byte[] report) {
+        synchronized (out) {
+            out.write(report, 0, report.length);
+            out.flush();
+        }
+    }
+}
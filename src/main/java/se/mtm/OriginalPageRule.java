@@ -0,0 +1,34 @@
+package se.mtm;
+
+/**
+ * Reports gaps and steps back in the original page numbers printed on the content pages. A
+ * page starts on the original page the page before it ended on, or on the next one. Pages
+ * without original page numbers are passed over.
+ */
+public class OriginalPageRule implements Rule {
+    static final String MISSING = "missing";
+    static final String OUT_OF_ORDER = "out of order";
+
+    private int lastOrgPage = -1;
+
+    @Override
+    public void page(RuleContext context, PageIdentifiers page) {
+        if (page.isIndexPage() || page.getOrgStartPage() == -1) {
+            return;
+        }
+        int orgStart = page.getOrgStartPage();
+        int orgEnd = page.getOrgEndPage() == -1 ? orgStart : page.getOrgEndPage();
+
+        if (lastOrgPage != -1) {
+            if (orgStart > lastOrgPage + 1) {
+                context.report(FindingKind.ORIGINAL_PAGES, orgStart, lastOrgPage, false, MISSING);
+            } else if (orgStart < lastOrgPage) {
+                context.report(FindingKind.ORIGINAL_PAGES, orgStart, lastOrgPage, false, OUT_OF_ORDER);
+            }
+        }
+        if (orgEnd < orgStart) {
+            context.report(FindingKind.ORIGINAL_PAGES, orgEnd, orgStart, false, OUT_OF_ORDER);
+        }
+        lastOrgPage = orgEnd;
+    }
+}
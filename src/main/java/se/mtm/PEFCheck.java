@@ -4,17 +4,186 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
+import javax.management.JMException;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Validates the page numbering of PEF documents and reports the findings to a writer.
+ *
+ * The options are chosen when the checker is created, see CheckOptions. The process methods
+ * can be called from any number of threads at the same time: every call is validated with a
+ * state of its own and the findings of a call are written together. When the writer is busy
+ * with another call the findings are held back until that call is done.
+ */
 public class PEFCheck {
-    private int numTitleSections = 1;
+    private final CheckOptions options;
+
+    /**
+     * Where findings are reported.
+     */
+    private FindingsWriter findingsWriter;
+
+    /**
+     * Held while findings are written to the writer, by a call or by the calls before it.
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    /**
+     * True for the instance validating a single call, which isn't shared between threads.
+     */
+    private final boolean singleCall;
+
+    /**
+     * Number of issues reported by this instance.
+     */
+    private volatile int issueCount = 0;
+
+    /*
+     * Location of the current finding in the document.
+     */
+    private String currentFile;
+
+    /**
+     * Size and structure of the current file so far, for its flight recorder event.
+     */
+    private long fileBytes;
+    private int fileVolumes;
+    private int fileSections;
+    private int filePages;
+    private int currentVolume;
+    private int currentSection;
+
+    /**
+     * Shared parser resources, see ValidationSession.
+     */
+    private final ValidationSession session;
+
+    /**
+     * Metrics of the session, updated for every file.
+     */
+    private final ValidationMetrics metrics;
+
+    public PEFCheck() {
+        this(null, ValidationSession.getDefault());
+    }
+
+    /**
+     * Create a checker that reports to its own stream, used when several files are checked
+     * at the same time and each file should be reported as one block.
+     *
+     * @param out   Stream to report issues to.
+     */
+    public PEFCheck(PrintStream out) {
+        this(new TextFindingsWriter(new OutputStreamWriter(out, Charset.defaultCharset()), true));
+    }
+
+    /**
+     * Create a checker that reports findings to a writer.
+     *
+     * @param findingsWriter    Writer to report findings to.
+     */
+    public PEFCheck(FindingsWriter findingsWriter) {
+        this(findingsWriter, ValidationSession.getDefault());
+    }
+
+    /**
+     * Create a checker that reports findings to a writer and uses the parser resources and
+     * options of a session.
+     *
+     * @param findingsWriter    Writer to report findings to.
+     * @param session           Session to take resources and options from.
+     */
+    public PEFCheck(FindingsWriter findingsWriter, ValidationSession session) {
+        this(findingsWriter, session, session.getCheckOptions());
+    }
+
+    /**
+     * Create a checker with options of its own.
+     *
+     * @param findingsWriter    Writer to report findings to, System.out if null.
+     * @param session           Session to take resources from.
+     * @param options           Options to validate with.
+     */
+    public PEFCheck(FindingsWriter findingsWriter, ValidationSession session, CheckOptions options) {
+        this.findingsWriter = findingsWriter != null ? findingsWriter : new ConsoleFindingsWriter();
+        this.session = session;
+        this.metrics = session.getMetrics();
+        this.options = options;
+        this.singleCall = false;
+    }
+
+    /**
+     * Create the instance of a single call. Nothing that changes is taken from the shared
+     * checker, the call reports under the file it is given.
+     *
+     * @param file  Name to report the findings of the call under, null if the call has none.
+     */
+    private PEFCheck(PEFCheck shared, FindingsWriter findingsWriter, String file) {
+        this.findingsWriter = findingsWriter;
+        this.session = shared.session;
+        this.metrics = shared.metrics;
+        this.options = shared.options;
+        this.currentFile = file;
+        this.singleCall = true;
+    }
+
+    /**
+     * A validation made by one call of a process method.
+     */
+    private interface Call<T, E extends Exception> {
+        T run(PEFCheck call) throws E;
+    }
+
+    /**
+     * Run a call on an instance of its own. The call writes directly to the writer if no other
+     * call is writing, otherwise its findings are held back and written when the writer is free.
+     * The issues and the location of the call are added to this instance when it is done, the
+     * location is where reportError reports a call that failed.
+     *
+     * @param file  Name to report the findings of the call under, null if the call has none.
+     */
+    private <T, E extends Exception> T call(String file, Call<T, E> call) throws E {
+        boolean direct = writerLock.tryLock();
+        DeferredFindingsWriter deferred = direct ? null : new DeferredFindingsWriter();
+        PEFCheck instance = new PEFCheck(this, direct ? findingsWriter : deferred, file);
+        try {
+            return call.run(instance);
+        } finally {
+            if (!direct) {
+                writerLock.lock();
+            }
+            try {
+                if (deferred != null) {
+                    deferred.writeTo(findingsWriter);
+                }
+                findingsWriter.flush();
+                issueCount += instance.issueCount;
+                setLocation(instance.currentVolume, instance.currentSection);
+            } finally {
+                writerLock.unlock();
+            }
+        }
+    }
 
     /**
      * This function takes a row of page identifiers and extracts the page numbers.
@@ -29,38 +198,65 @@ public class PEFCheck {
      */
     protected PageIdentifiers getPageIdentifiers(String row, boolean leftPage, boolean indexPage) {
         PageIdentifiers pageIdentifiers = new PageIdentifiers();
+        readPageIdentifiers(row, leftPage, indexPage, pageIdentifiers);
+        return pageIdentifiers;
+    }
+
+    /**
+     * Same as getPageIdentifiers but reads from any character sequence into an existing
+     * object, so the streaming engine can reuse both the row buffer and the result.
+     *
+     * @param row               Data from top of page
+     * @param leftPage          True if this is the left side page.
+     * @param indexPage         True if this is an index page.
+     * @param pageIdentifiers   Object to write the page numbers to, all values are replaced.
+     */
+    protected void readPageIdentifiers(CharSequence row, boolean leftPage, boolean indexPage,
+                                       PageIdentifiers pageIdentifiers) {
+        pageIdentifiers.setOrgStartPage(-1);
+        pageIdentifiers.setOrgEndPage(-1);
+        pageIdentifiers.setEmpty(false);
+        pageIdentifiers.setIndexPage(false);
+
+        int start = 0;
+        int end = row.length();
         if(indexPage) {
-            pageIdentifiers.setPefPage(getPageNumber(row));
-            return pageIdentifiers;
+            pageIdentifiers.setPefPage(PageNumberDecoder.decode(row, start, end));
+            return;
         }
 
-        String pefPage, orgPages;
-        row = row.trim();
-        int middle = row.indexOf(" ");
+        while (start < end && PageNumberDecoder.toAscii(row.charAt(start)) <= ' ') start++;
+        while (end > start && PageNumberDecoder.toAscii(row.charAt(end - 1)) <= ' ') end--;
+        int middle = PageNumberDecoder.indexOf(row, ' ', start, end);
 
-        if(middle == -1) {
-            pefPage = row;
-        } else {
+        int pefStart = start, pefEnd = end;
+        if(middle != -1) {
+            int orgStart, orgEnd;
             if (leftPage) {
-                pefPage = row.substring(0, middle);
-                orgPages = row.substring(middle + 1);
+                pefEnd = middle;
+                orgStart = middle + 1;
+                orgEnd = end;
             } else {
-                orgPages = row.substring(0, middle);
-                pefPage = row.substring(middle + 1);
+                orgStart = start;
+                orgEnd = middle;
+                pefStart = middle + 1;
             }
 
-            if(orgPages.contains("--")) {
-                String[] orgPagesArr = orgPages.split("--");
-                pageIdentifiers.setOrgStartPage(getPageNumber(orgPagesArr[0]));
-                pageIdentifiers.setOrgEndPage(getPageNumber(orgPagesArr[1]));
+            int separator = PageNumberDecoder.indexOfRange(row, orgStart, orgEnd);
+            if(separator != -1) {
+                int endPageStart = separator + 2;
+                int endPageEnd = PageNumberDecoder.indexOfRange(row, endPageStart, orgEnd);
+                if (endPageEnd == -1) {
+                    endPageEnd = orgEnd;
+                }
+                pageIdentifiers.setOrgStartPage(PageNumberDecoder.decode(row, orgStart, separator));
+                pageIdentifiers.setOrgEndPage(PageNumberDecoder.decode(row, endPageStart, endPageEnd));
             } else {
-                pageIdentifiers.setOrgStartPage(getPageNumber(orgPages));
+                pageIdentifiers.setOrgStartPage(PageNumberDecoder.decode(row, orgStart, orgEnd));
             }
         }
 
-        pageIdentifiers.setPefPage(getPageNumber(pefPage));
-
-        return pageIdentifiers;
+        pageIdentifiers.setPefPage(PageNumberDecoder.decode(row, pefStart, pefEnd));
     }
 
 
@@ -75,6 +271,17 @@ public class PEFCheck {
      * @return          Object with startPage, endPage in the original, the pef page and if the page is empty.
      */
     protected PageIdentifiers processPage(Element page, boolean leftPage, boolean indexPage, int lastPage) throws InvalidFormatException {
+        PageIdentifiers pageIdentifiers = new PageIdentifiers();
+        readPage(page, leftPage, indexPage, lastPage, pageIdentifiers);
+        return pageIdentifiers;
+    }
+
+    /**
+     * Same as processPage but reads into an existing object, so a section can be read
+     * without creating an object per page.
+     */
+    private void readPage(Element page, boolean leftPage, boolean indexPage, int lastPage,
+                          PageIdentifiers pageIdentifiers) throws InvalidFormatException {
         if (!page.getTagName().equalsIgnoreCase("page")) {
             throw new InvalidFormatException("page tag incorrect, lastPage " + getPrintablePageNumber(lastPage, indexPage));
         }
@@ -85,9 +292,7 @@ public class PEFCheck {
             throw new InvalidFormatException("No data in first row, lastPage " + getPrintablePageNumber(lastPage, indexPage));
         }
 
-        PageIdentifiers pageIdentifiers = getPageIdentifiers(
-                getFirstChild(page).getTextContent(), leftPage, indexPage
-        );
+        readPageIdentifiers(getFirstChild(page).getTextContent(), leftPage, indexPage, pageIdentifiers);
 
         if (pageIdentifiers.getPefPage() == -1) {
             throw new InvalidFormatException("Can't find the page number");
@@ -95,8 +300,6 @@ public class PEFCheck {
 
         pageIdentifiers.setEmpty(countChildren(page) < 2);
         pageIdentifiers.setIndexPage(indexPage);
-
-        return pageIdentifiers;
     }
 
     /**
@@ -106,50 +309,7 @@ public class PEFCheck {
      * @return      A number equal to the number representation. Returns -1 if incorrect.
      */
     protected int getPageNumber(String num) {
-        num = num.trim();
-        final String allowedSyntax = "(#[a-j]+)|(_[mdclxvi])|(__[mdclxvi]+)";
-        final String alphaNumbers = "jabcdefghi";
-
-        if (!num.matches(allowedSyntax)) {
-            return -1;
-        }
-
-        if(num.startsWith("#")) {
-            int sum = 0;
-            for(int i = 1; i < num.length(); i++) {
-                if(i != 1) {
-                    sum *= 10;
-                }
-                sum += alphaNumbers.indexOf(num.charAt(i));
-            }
-            return sum;
-        } else if(num.startsWith("__")) {
-            // We don't allow single numbers when 2 control characters are used.
-            if (num.length() < 4) {
-                return -1;
-            }
-            num = num.substring(2).toUpperCase();
-
-            int result = 0;
-            int[] decimal = {1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1};
-            String[] roman = {"M", "CM", "D", "CD", "C", "XC", "L", "XL", "X", "IX", "V", "IV", "I"};
-            for (int i = 0; i < decimal.length; i++) {
-                while (num.indexOf(roman[i]) == 0){
-                    result += decimal[i];
-                    num = num.substring(roman[i].length());
-                }
-            }
-            return result;
-        } else if(num.startsWith("_")) {
-            final String romanNumbers = "MDCLXVI";
-            final int[] romanToDecimal = {1000, 500, 100, 50, 10, 5, 1};
-            int index = romanNumbers.indexOf(num.substring(1).toUpperCase());
-            if(index == -1) {
-                return -1;
-            }
-            return romanToDecimal[index];
-        }
-        return -1;
+        return PageNumberDecoder.decode(num, 0, num.length());
     }
 
     /**
@@ -163,33 +323,11 @@ public class PEFCheck {
      * @throws Exception    Throws an exception if the section is not correctly formatted.
      */
     protected List<PageIdentifiers> processSection(Element section, boolean indexSection) throws Exception {
-        List<PageIdentifiers> pageIdentifiersList = new ArrayList<>();
-
-        if (!section.getTagName().equalsIgnoreCase("section")) {
-            throw new InvalidFormatException("section tag incorrect");
-        }
-        if (countChildren(section) == 0) {
-            throw new InvalidFormatException("No pages present");
-        }
-
-        NodeList pageList = section.getChildNodes();
-        boolean leftPage = false;
-        int lastPage = 0;
-
-        for(int j = 0; j < pageList.getLength(); j++) {
-            if(!(pageList.item(j) instanceof Element)) continue;
-            if(getFirstChild((Element)pageList.item(j)).getTextContent().contains("_noter")) continue;
-
-            PageIdentifiers pi = processPage((Element) pageList.item(j), leftPage, indexSection, lastPage);
-            lastPage = pi.getPefPage();
-            pageIdentifiersList.add(pi);
-            leftPage = !leftPage;
-        }
-
-        return pageIdentifiersList;
+        PageTable pageTable = new PageTable();
+        processSection(section, indexSection, new PageIdentifiers(), pageTable::add);
+        return pageTable;
     }
 
-
     /**
      * Process an PEF document finding which sections we should handle in different ways.
      *
@@ -198,15 +336,37 @@ public class PEFCheck {
      * @throws Exception        Throws exceptions when the document is not well formatted.
      */
     protected void processDocument(Document xmlDocument, boolean validateEmptyPages) throws Exception {
-        XPath xPath = XPathFactory.newInstance().newXPath();
+        if (!singleCall) {
+            call(null, call -> {
+                call.processDocument(xmlDocument, validateEmptyPages);
+                return null;
+            });
+            return;
+        }
+        ValidationSession.Expressions expressions = session.borrowExpressions();
+        long start = System.nanoTime();
+        try {
+            processDocument(xmlDocument, validateEmptyPages, expressions);
+        } finally {
+            metrics.validated(System.nanoTime() - start);
+            session.releaseExpressions(expressions);
+        }
+    }
 
-        int startPage = 0;
+    private void processDocument(Document xmlDocument, boolean validateEmptyPages,
+                                 ValidationSession.Expressions expressions) throws Exception {
+        RuleEngine engine = newRuleEngine(validateEmptyPages);
+        PageIdentifiers pi = new PageIdentifiers();
+        int sectionCount = 0;
+        int pageCount = 0;
 
-        NodeList volumeList = (NodeList) xPath.compile("//volume").evaluate(xmlDocument, XPathConstants.NODESET);
+        engine.startDocument();
+        NodeList volumeList = (NodeList) expressions.volumes.evaluate(xmlDocument, XPathConstants.NODESET);
         for(int i = 0; i < volumeList.getLength(); i++) {
-            NodeList sectionList = (NodeList) xPath.compile("./section").evaluate(volumeList.item(i), XPathConstants.NODESET);
+            NodeList sectionList = (NodeList) expressions.sections.evaluate(volumeList.item(i), XPathConstants.NODESET);
 
-            int indexStartPage = 0;
+            setLocation(i + 1, 0);
+            engine.startVolume();
 
             int sectionListLen = countChildren((Element) volumeList.item(i));
 
@@ -216,7 +376,7 @@ public class PEFCheck {
              */
             boolean lastVolume = volumeList.getLength() - 1 == i;
 
-            for(int j = numTitleSections; j < sectionListLen; j++) {
+            for(int j = options.getNumTitleSections(); j < sectionListLen; j++) {
                 if(!(sectionList.item(j) instanceof Element)) continue;
                 Element section = (Element) sectionList.item(j);
 
@@ -224,27 +384,92 @@ public class PEFCheck {
                     Element page = getFirstChild(section);
                     Element row = getFirstChild(page);
                     if(row.getTextContent().isEmpty()) {
-                        NodeList rowList = (NodeList) xPath.compile("./row").evaluate(page, XPathConstants.NODESET);
-                        if (rowList.getLength() > 1 && rowList.item(1).getTextContent().contains("::::")) {
+                        NodeList rowList = (NodeList) expressions.rows.evaluate(page, XPathConstants.NODESET);
+                        if (rowList.getLength() > 1 && PageNumberDecoder.contains(rowList.item(1).getTextContent(), "::::")) {
                             continue;
                         }
                     }
                 }
 
+                setLocation(i + 1, j + 1);
                 boolean indexSection = isIndexSection(section);
-                List<PageIdentifiers> pageIdentifiersList = processSection(section, indexSection);
+                engine.startSection(indexSection);
+                pageCount += processSection(section, indexSection, pi, engine::page);
+                engine.endSection();
+                sectionCount++;
+            }
+            engine.endVolume();
+        }
+        engine.endDocument();
+        countStructure(0, volumeList.getLength(), sectionCount, pageCount);
+    }
 
-                if(indexSection) {
-                    indexStartPage = validatePageSequence(pageIdentifiersList, indexStartPage);
-                } else {
-                    startPage = validatePageSequence(pageIdentifiersList, startPage);
-                }
+    /**
+     * A page read from a section, the page identifiers are reused for the next page.
+     */
+    private interface PageHandler {
+        void page(PageIdentifiers pi) throws InvalidFormatException;
+    }
 
-                if (validateEmptyPages) {
-                    hasEmptyPages(pageIdentifiersList);
-                }
+    /**
+     * Read the pages of a section and hand each page on as it is read, to the rules or to a list.
+     *
+     * @return  Number of pages in the section.
+     */
+    private int processSection(Element section, boolean indexSection, PageIdentifiers pi, PageHandler handler)
+            throws Exception {
+        if (!section.getTagName().equalsIgnoreCase("section")) {
+            throw new InvalidFormatException("section tag incorrect");
+        }
+        if (countChildren(section) == 0) {
+            throw new InvalidFormatException("No pages present");
+        }
+
+        NodeList pageList = section.getChildNodes();
+        boolean leftPage = false;
+        int lastPage = 0;
+        int pages = 0;
+
+        for(int j = 0; j < pageList.getLength(); j++) {
+            if(!(pageList.item(j) instanceof Element)) continue;
+            if(PageNumberDecoder.contains(getFirstChild((Element)pageList.item(j)).getTextContent(), "_noter")) continue;
+
+            readPage((Element) pageList.item(j), leftPage, indexSection, lastPage, pi);
+            lastPage = pi.getPefPage();
+            handler.page(pi);
+            leftPage = !leftPage;
+            pages++;
+        }
+        return pages;
+    }
+
+    /**
+     * Create the rules for one document.
+     *
+     * @param validateEmptyPages    False to leave out the empty pages rule
+     * @return                      Engine running the enabled rules
+     */
+    RuleEngine newRuleEngine(boolean validateEmptyPages) {
+        List<String> rules = options.getRules();
+        List<Rule> enabled = new ArrayList<>(rules.size());
+        for (String name : rules) {
+            if (!validateEmptyPages && name.equals(Rules.EMPTY_PAGES)) {
+                continue;
             }
+            enabled.add(Rules.create(name));
         }
+        return new RuleEngine(this, enabled);
+    }
+
+    public List<String> getRules() {
+        return options.getRules();
+    }
+
+    /**
+     * @return  The options this checker validates with.
+     */
+    public CheckOptions getOptions() {
+        return options;
     }
 
     /**
@@ -301,7 +526,7 @@ public class PEFCheck {
         }
         Element row = getFirstChild(page);
 
-        return row.getTextContent().trim().startsWith("_");
+        return PageNumberDecoder.firstNonBlank(row.getTextContent()) == '_';
     }
 
     /**
@@ -314,6 +539,17 @@ public class PEFCheck {
      * @return              A string presenting both the original number and decimal.
      */
     protected String getPrintablePageNumber(int pageNum, boolean indexPage) {
+        return getPefPageNumber(pageNum, indexPage) + " (" + pageNum + ")";
+    }
+
+    /**
+     * Present a page number the way it is written in the book.
+     *
+     * @param pageNum       Number to present
+     * @param indexPage     True if this should be presented as roman numbers.
+     * @return              A string presenting the number as in the book, like #ad or __iv.
+     */
+    protected String getPefPageNumber(int pageNum, boolean indexPage) {
         String result = "";
 
         if (indexPage) {
@@ -327,7 +563,7 @@ public class PEFCheck {
                 }
             }
             String prefix = result.length() == 1 ? "_" : "__";
-            return prefix + result + " (" + pageNum + ")";
+            return prefix + result;
         }
 
         String decimal = "1234567890";
@@ -339,7 +575,7 @@ public class PEFCheck {
             result += pef.charAt(index);
         }
 
-        return "#" + result + " (" + pageNum + ")";
+        return "#" + result;
     }
 
     /**
@@ -351,16 +587,62 @@ public class PEFCheck {
      * @return                      next start page
      */
     protected int validatePageSequence(List<PageIdentifiers> pageIdentifiers, int startPage) {
+        if (!singleCall) {
+            return call(null, call -> call.validatePageSequence(pageIdentifiers, startPage));
+        }
+        int page = startPage;
         for (PageIdentifiers pi : pageIdentifiers) {
-            if (pi.getPefPage() != startPage + 1) {
-                String error = "--- Missing page(s) between ";
-                error += getPrintablePageNumber(startPage, pi.isIndexPage());
-                error += " and " + getPrintablePageNumber(pi.getPefPage(), pi.isIndexPage());
-                System.out.println(error);
-            }
-            startPage = pi.getPefPage();
+            page = validatePageNumber(pi.getPefPage(), pi.isIndexPage(), page);
+        }
+        return page;
+    }
+
+    /**
+     * Validates a single page against the page before it and reports if pages are missing
+     * in between. Used by the list based validation as well as the streaming engine.
+     *
+     * @param pefPage       The pef page number of the current page
+     * @param indexPage     True if the page is an index page (Uses roman numbers)
+     * @param startPage     The page before the current page
+     * @return              next start page
+     */
+    protected int validatePageNumber(int pefPage, boolean indexPage, int startPage) {
+        if (pefPage != startPage + 1) {
+            reportMissingPages(pefPage, startPage, indexPage);
         }
-        return startPage;
+        return pefPage;
+    }
+
+    /**
+     * Report pages missing between two pages.
+     *
+     * @param pefPage       The page after the missing pages
+     * @param previousPage  The page before the missing pages
+     * @param indexPage     True if the pages are index pages (Uses roman numbers)
+     */
+    void reportMissingPages(int pefPage, int previousPage, boolean indexPage) {
+        report(FindingKind.MISSING_PAGES, pefPage, previousPage, indexPage, null);
+    }
+
+    /**
+     * Report a finding at the current location.
+     *
+     * @param kind          Kind of finding
+     * @param page          Page of the finding, -1 if none
+     * @param previousPage  Page before the finding, -1 if none
+     * @param indexPage     True if the pages are written with roman numbers
+     * @param message       Description, may be null
+     */
+    void report(FindingKind kind, int page, int previousPage, boolean indexPage, String message) {
+        Finding finding = new Finding(
+                currentFile, currentVolume, currentSection, kind,
+                page, page == -1 ? null : getPefPageNumber(page, indexPage),
+                previousPage, previousPage == -1 ? null : getPefPageNumber(previousPage, indexPage), indexPage, message
+        );
+        getFindingsWriter().write(finding);
+        ValidationEvents.finding(finding);
+        metrics.finding(kind);
+        issueCount++;
     }
 
     /**
@@ -371,6 +653,9 @@ public class PEFCheck {
      * @return                    true if empty pages where found.
      */
     protected boolean hasEmptyPages(List<PageIdentifiers> pageIdentifiers) throws InvalidFormatException {
+        if (!singleCall) {
+            return call(null, call -> call.hasEmptyPages(pageIdentifiers));
+        }
         boolean empty = false;
         for (PageIdentifiers pi : pageIdentifiers) {
             if(pi.getPefPage() == -1) {
@@ -378,13 +663,23 @@ public class PEFCheck {
             }
 
             if(pi.isEmpty()) {
-                System.out.println("--- Empty page " + getPrintablePageNumber(pi.getPefPage(), pi.isIndexPage()));
+                reportEmptyPage(pi.getPefPage(), pi.isIndexPage());
                 empty = true;
             }
         }
         return empty;
     }
 
+    /**
+     * Report a single empty page.
+     *
+     * @param pefPage       The pef page number of the empty page
+     * @param indexPage     True if the page is an index page (Uses roman numbers)
+     */
+    protected void reportEmptyPage(int pefPage, boolean indexPage) {
+        report(FindingKind.EMPTY_PAGE, pefPage, -1, indexPage, null);
+    }
+
     /**
      * This function takes a file and runs it through a processing with validation of
      * empty pages and checks the sequence of pages.
@@ -392,45 +687,644 @@ public class PEFCheck {
      * @param file      File to handle.
      */
     public void processFile(File file) throws Exception{
-        System.out.println("Checking file " + file.getName());
-        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = builderFactory.newDocumentBuilder();
-        Document xmlDocument = builder.parse(file);
-        xmlDocument.normalize();
-        processDocument(xmlDocument, true);
+        processFile(file, file.getName());
     }
 
     /**
-     * Given a file we will check if we have the right page num sequence for all pages
-     * and look for empty pages.
+     * Validate a file and report its findings under another name than the file name, like
+     * its path relative to the directory being checked.
      *
-     * @param args the first argument is the file to run.
+     * @param file      File to handle.
+     * @param name      Name to report the file as.
      */
-    public static void main(String[] args) {
+    public void processFile(File file, String name) throws Exception {
+        if (!singleCall) {
+            call(name, call -> {
+                call.processFile(file, name);
+                return null;
+            });
+            return;
+        }
+        startFile(name);
+        Object event = ValidationEvents.beginFile();
+        try {
+            if (options.getResultCache() != null) {
+                processFileWithCache(file);
+            } else {
+                validateFile(file);
+            }
+        } finally {
+            endFileEvent(event, file.length());
+        }
+    }
 
-        if(args.length != 1) {
+    /**
+     * Validate a file on the volume threads, with the scanner or with the parser, whichever
+     * is set and handles the file first.
+     *
+     * @param file      File to handle.
+     */
+    private void validateFile(File file) throws Exception {
+        if (session.getVolumeThreads() > 0 && processFileWithVolumes(file)) {
+            return;
+        }
+        if (options.isFastScan() && processFileWithScanner(file)) {
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            processStream(in, true);
+        } finally {
+            getFindingsWriter().flush();
+        }
+    }
+
+    /**
+     * Validate a document that has already been read into memory, like a file read ahead by
+     * BatchValidator. Handled like processFile without a result cache or volume threads, the
+     * scanner is used on the buffer when fast scan is set.
+     *
+     * @param name      Name to report the document as.
+     * @param content   The bytes of the document, from index 0 to the limit. Not changed.
+     */
+    void processBuffer(String name, ByteBuffer content) throws Exception {
+        if (!singleCall) {
+            call(name, call -> {
+                call.processBuffer(name, content);
+                return null;
+            });
+            return;
+        }
+        startFile(name);
+        Object event = ValidationEvents.beginFile();
+        try {
+            if (options.isFastScan() && processWithScanner(scanner -> scanner.process(content.duplicate()), content.limit())) {
+                return;
+            }
+            ByteBuffer stream = content.duplicate();
+            stream.position(0);
+            processStream(new ByteBufferInputStream(stream), true);
+        } finally {
+            getFindingsWriter().flush();
+            endFileEvent(event, content.limit());
+        }
+    }
+
+    private void endFileEvent(Object event, long bytes) {
+        ValidationEvents.endFile(event, currentFile, bytes, fileVolumes, fileSections, filePages, issueCount);
+    }
+
+    /**
+     * Validate the volumes of a file in parallel on the volume threads of the session.
+     *
+     * @param file      File to handle.
+     * @return          True if the file was handled, false if it should be parsed instead.
+     */
+    private boolean processFileWithVolumes(File file) throws Exception {
+        try {
+            return new VolumeSplitter(this, session, session.getVolumeExecutor()).process(file);
+        } finally {
+            getFindingsWriter().flush();
+        }
+    }
+
+    /**
+     * Report a finding recorded by another instance for the current file, the metrics have
+     * already been updated by the instance that found it.
+     */
+    void writeRecorded(Finding finding) {
+        getFindingsWriter().write(new Finding(
+                currentFile, finding.getVolume(), finding.getSection(), finding.getKind(),
+                finding.getPage(), finding.getPrintablePage(), finding.getPreviousPage(),
+                finding.getPrintablePreviousPage(), finding.isIndexPage(), finding.getMessage()
+        ));
+        issueCount++;
+    }
+
+    /**
+     * Validate a file with the memory mapped scanner. The findings are held back until the
+     * scan is done, if the scanner gives up nothing has been reported and the file can be
+     * parsed as usual.
+     *
+     * @param file      File to handle.
+     * @return          True if the file was handled, false if it should be parsed instead.
+     */
+    private boolean processFileWithScanner(File file) throws Exception {
+        return processWithScanner(scanner -> scanner.process(file), file.length());
+    }
+
+    /**
+     * A scan of a file or of a document in memory.
+     */
+    private interface Scan {
+        boolean run(MappedPEFScanner scanner) throws Exception;
+    }
+
+    /**
+     * Run a scan, see processFileWithScanner.
+     *
+     * @param scan      Scan of the document
+     * @param bytes     Size of the document
+     * @return          True if the document was handled, false if it should be parsed instead.
+     */
+    private boolean processWithScanner(Scan scan, long bytes) throws Exception {
+        FindingsWriter writer = getFindingsWriter();
+        RecordingFindingsWriter recorder = new RecordingFindingsWriter(null);
+        int issuesBefore = issueCount;
+        boolean scanned = false;
+        PEFStreamProcessor processor = new PEFStreamProcessor(this, true);
+        long start = System.nanoTime();
+        findingsWriter = recorder;
+        try {
+            scanned = scan.run(new MappedPEFScanner(processor));
+        } catch (Exception e) {
+            scanned = true;
+            throw e;
+        } finally {
+            findingsWriter = writer;
+            if (scanned) {
+                for (Finding finding : recorder.getFindings()) {
+                    writer.write(finding);
+                }
+                writer.flush();
+                recordStreamMetrics(processor, System.nanoTime() - start, bytes);
+            } else {
+                for (Finding finding : recorder.getFindings()) {
+                    metrics.discardFinding(finding.getKind());
+                }
+                issueCount = issuesBefore;
+                setLocation(0, 0);
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Replay the findings of an unchanged file from the cache, or validate the file and store
+     * the findings. Replayed findings are reported, counted and recorded as flight recorder
+     * events like new ones, but the file event has no structure as the file isn't read.
+     *
+     * Files that have been seen before but changed size or time are hashed first, as they are
+     * often only touched or copied. New files are hashed while they are parsed, unless they are
+     * validated on the volume threads or with the scanner, which read the file themselves and
+     * need it hashed first.
+     *
+     * @param file      File to handle.
+     */
+    private void processFileWithCache(File file) throws Exception {
+        ResultCache resultCache = options.getResultCache();
+        long size = file.length();
+        long modified = file.lastModified();
+        String cacheOptions = getCacheOptions();
+
+        String contentHash = resultCache.getKnownContentHash(file);
+        if (contentHash == null && resultCache.isIndexed(file)) {
+            contentHash = ResultCache.hashContent(file);
+            resultCache.updateIndex(file, size, modified, contentHash);
+        }
+        if (contentHash != null) {
+            List<Finding> cached = resultCache.get(contentHash, cacheOptions);
+            if (cached != null) {
+                for (Finding finding : cached) {
+                    Finding replayed = new Finding(
+                            currentFile, finding.getVolume(), finding.getSection(), finding.getKind(),
+                            finding.getPage(), finding.getPrintablePage(), finding.getPreviousPage(),
+                            finding.getPrintablePreviousPage(), finding.isIndexPage(), finding.getMessage()
+                    );
+                    getFindingsWriter().write(replayed);
+                    ValidationEvents.finding(replayed);
+                    metrics.finding(finding.getKind());
+                    issueCount++;
+                }
+                metrics.cacheHit();
+                getFindingsWriter().flush();
+                return;
+            }
+        }
+
+        FindingsWriter writer = getFindingsWriter();
+        RecordingFindingsWriter recorder = new RecordingFindingsWriter(writer);
+        findingsWriter = recorder;
+        try {
+            if (contentHash == null && session.getVolumeThreads() == 0 && !options.isFastScan()) {
+                contentHash = streamWithDigest(file);
+            } else {
+                if (contentHash == null) {
+                    contentHash = ResultCache.hashContent(file);
+                }
+                validateFile(file);
+            }
+        } finally {
+            findingsWriter = writer;
+            writer.flush();
+        }
+        resultCache.put(file, size, modified, contentHash, cacheOptions, recorder.getFindings());
+    }
+
+    /**
+     * Parse a file and hash its content in the same read.
+     *
+     * @param file      File to handle.
+     * @return          The content hash of the file.
+     */
+    private String streamWithDigest(File file) throws Exception {
+        MessageDigest digest = ResultCache.newDigest();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest)) {
+            // The parser closes its input at the end of the document, we still need to read the rest.
+            processStream(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            }, true);
+            // The parser may stop before the end of the file, the whole content is part of the hash.
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // Only read for the digest.
+            }
+        }
+        return ResultCache.toHex(digest.digest());
+    }
+
+    /**
+     * @return  Options that affect the findings of a file, part of the cache key.
+     */
+    String getCacheOptions() {
+        return options.getCacheKey();
+    }
+
+    /**
+     * Parse a file into a DOM and run it through the same validation as processFile. Kept for
+     * callers that want to inspect the document, processFile itself streams the file.
+     *
+     * @param file      File to handle.
+     */
+    public void processFileWithDocument(File file) throws Exception{
+        if (!singleCall) {
+            call(file.getName(), call -> {
+                call.processFileWithDocument(file);
+                return null;
+            });
+            return;
+        }
+        startFile(file.getName());
+        Object event = ValidationEvents.beginFile();
+        try {
+            long start = System.nanoTime();
+            Document xmlDocument;
+            try {
+                xmlDocument = session.parse(file);
+            } finally {
+                metrics.parsed(System.nanoTime() - start);
+                metrics.bytesRead(file.length());
+            }
+            processDocument(xmlDocument, true);
+        } finally {
+            getFindingsWriter().flush();
+            endFileEvent(event, file.length());
+        }
+    }
+
+    void startFile(String name) {
+        writerLock.lock();
+        try {
+            currentFile = name;
+            setLocation(0, 0);
+            fileBytes = 0;
+            fileVolumes = 0;
+            fileSections = 0;
+            filePages = 0;
+            metrics.fileProcessed();
+            getFindingsWriter().startFile(name);
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Report that a file could not be processed.
+     *
+     * @param file      Name of the file
+     * @param message   Description of the problem
+     */
+    void reportError(String file, String message) {
+        writerLock.lock();
+        try {
+            Finding finding = new Finding(
+                    file, currentVolume, currentSection, FindingKind.ERROR, -1, null, -1, null, false, message
+            );
+            getFindingsWriter().write(finding);
+            ValidationEvents.finding(finding);
+            metrics.finding(FindingKind.ERROR);
+            getFindingsWriter().flush();
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Set the volume and section of the findings that follow.
+     */
+    void setLocation(int volume, int section) {
+        currentVolume = volume;
+        currentSection = section;
+    }
+
+    String getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * Report findings under a file name without starting a new file, used for the volumes of a
+     * file checked by other instances.
+     */
+    void setCurrentFile(String name) {
+        currentFile = name;
+    }
+
+    int getCurrentVolume() {
+        return currentVolume;
+    }
+
+    int getCurrentSection() {
+        return currentSection;
+    }
+
+    /**
+     * Process a PEF document from a stream without building a DOM. Gives the same page
+     * sequence and empty page reports as processDocument while only keeping the state of
+     * the current volume, section and page in memory.
+     *
+     * @param in                    Stream with a document in PEF format
+     * @param validateEmptyPages    True if empty pages should be reported
+     * @throws Exception            Throws exceptions when the document is not well formatted.
+     */
+    public void processStream(InputStream in, boolean validateEmptyPages) throws Exception {
+        if (!singleCall) {
+            call(null, call -> {
+                call.processStream(in, validateEmptyPages);
+                return null;
+            });
+            return;
+        }
+        PEFStreamProcessor processor = new PEFStreamProcessor(this, validateEmptyPages);
+        CountingInputStream counter = new CountingInputStream(in);
+        long start = System.nanoTime();
+        try {
+            processor.process(counter);
+        } finally {
+            recordStreamMetrics(processor, System.nanoTime() - start, counter.count);
+            getFindingsWriter().flush();
+        }
+    }
+
+    /**
+     * Record the metrics of a streamed document. Validation calls are timed by the processor,
+     * the rest of the time was spent parsing.
+     */
+    void recordStreamMetrics(PEFStreamProcessor processor, long nanos, long bytes) {
+        long validateNanos = processor.getValidateNanos();
+        metrics.parsed(nanos - validateNanos);
+        metrics.validated(validateNanos);
+        metrics.bytesRead(bytes);
+        countStructure(bytes, processor.getVolumeCount(), processor.getSectionCount(), processor.getPageCount());
+    }
+
+    /**
+     * Count the size and structure of a document, or part of one, in the metrics and in the
+     * totals of the current file.
+     */
+    private void countStructure(long bytes, int volumes, int sections, int pages) {
+        metrics.structure(volumes, sections, pages);
+        addFileStructure(bytes, volumes, sections, pages);
+    }
+
+    /**
+     * Add to the totals of the current file reported in its flight recorder event, without
+     * counting in the metrics.
+     */
+    void addFileStructure(long bytes, int volumes, int sections, int pages) {
+        fileBytes += bytes;
+        fileVolumes += volumes;
+        fileSections += sections;
+        filePages += pages;
+    }
+
+    /**
+     * Counts the bytes read by the parser.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Process a PEF document from a stream and report the findings under a file name, used
+     * for documents that don't come from a file.
+     *
+     * @param name          Name to report the findings under
+     * @param in            Stream with a document in PEF format
+     * @throws Exception    Throws exceptions when the document is not well formatted.
+     */
+    public void processStream(String name, InputStream in) throws Exception {
+        if (!singleCall) {
+            call(name, call -> {
+                call.processStream(name, in);
+                return null;
+            });
+            return;
+        }
+        startFile(name);
+        Object event = ValidationEvents.beginFile();
+        try {
+            processStream(in, true);
+        } finally {
+            endFileEvent(event, fileBytes);
+        }
+    }
+
+    public int getNumTitleSections() {
+        return options.getNumTitleSections();
+    }
+
+    private FindingsWriter getFindingsWriter() {
+        return findingsWriter;
+    }
+
+    /**
+     * @return  Number of issues reported by this instance so far.
+     */
+    public int getIssueCount() {
+        return issueCount;
+    }
+
+    /**
+     * Validate the files listed in a manifest file, or on stdin if the name is -.
+     */
+    private static BatchSummary validateManifest(BatchValidator batchValidator, String name, File dir)
+            throws IOException, InterruptedException {
+        if (name.equals("-")) {
+            BufferedReader manifest = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
+            return batchValidator.validateManifest(manifest, dir, System.out);
+        }
+        try (BufferedReader manifest = Files.newBufferedReader(Paths.get(name), Charset.defaultCharset())) {
+            return batchValidator.validateManifest(manifest, dir, System.out);
+        }
+    }
+
+    /**
+     * Given a directory we will check if we have the right page num sequence for all pages
+     * in the xml files of the directory and look for empty pages.
+     *
+     * @param args options followed by the directory to run.
+     */
+    public static void main(String[] args) {
+        CommandLineOptions options;
+        try {
+            options = CommandLineOptions.parse(args);
+        } catch (IllegalArgumentException e) {
             System.out.println("PEFCheck " + PEFCheck.class.getPackage().getImplementationVersion());
             System.out.println();
             System.out.println("java -jar pefcheck.jar [options] input_directory");
+            System.out.println("java -jar pefcheck.jar [options] --manifest files.txt [base_directory]");
+            System.out.println();
+            System.out.println(CommandLineOptions.usage());
+            if (e.getMessage() != null) {
+                System.out.println();
+                System.out.println(e.getMessage());
+            }
 
             System.exit(1);
+            return;
         }
         try {
-            PEFCheck pefCheck = new PEFCheck();
-
-            File dir = new File(args[0]);
-            if(!dir.isDirectory()) {
+            File dir = options.getInputDirectory();
+            if(dir != null && !dir.isDirectory()) {
                 System.err.println("File is not a directory.");
                 System.exit(-1);
             }
 
-            for (File f : dir.listFiles()) {
-                if(f.getName().equals(".") || f.getName().equals("..")) continue;
-                if(!f.getName().endsWith(".xml")) continue;
-                pefCheck.processFile(f);
+            CheckOptions checkOptions = CheckOptions.defaults()
+                    .withRules(options.getRules())
+                    .withFastScan(options.isFastScan());
+            if (options.getCacheDirectory() != null) {
+                checkOptions = checkOptions.withResultCache(
+                        new ResultCache(options.getCacheDirectory(), options.getCacheSize())
+                );
+            }
+            BatchValidator.Builder builder = new BatchValidator.Builder(options.getThreads())
+                    .format(options.getFormat())
+                    .session(new ValidationSession(checkOptions, options.getVolumeThreads()))
+                    .summarizeFindings(options.isSummarize(), options.getMaxFindings())
+                    .fileResults(options.getManifest() != null);
+            if (options.getReadAhead() > 0) {
+                builder.readAhead(options.getReadAhead(), options.getReadAheadSize() * 1024L * 1024L);
+            }
+            if (options.getMemoryBudget() > 0) {
+                builder.memoryBudget(options.getMemoryBudget() * 1024L * 1024L);
+            }
+            // The journal is only kept for a batch, not for a server or a watched directory.
+            if (options.getJournal() != null && options.getServePort() == 0 && !options.isWatch()) {
+                builder.journal(new ProgressJournal(options.getJournal(), options.isResume()));
+            }
+            BatchValidator batchValidator = builder.build();
+            PrintStream summaryOut = options.getFormat() == FindingsFormat.TEXT ? System.out : System.err;
+            ValidationMetrics metrics = batchValidator.getSession().getMetrics();
+            try {
+                metrics.register("PEFCheck");
+            } catch (JMException e) {
+                System.err.println("Could not publish metrics over JMX: " + e.getMessage());
+            }
+
+            if (options.getServePort() > 0) {
+                ValidationServer server = new ValidationServer(
+                        dir, options.getServePort(), options.getMaxRequests(), batchValidator.getSession()
+                );
+                Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+                server.start();
+                System.out.println("Listening on http://localhost:" + server.getPort() + "/validate"
+                        + (server.isVirtualThreads() ? " using virtual threads" : ""));
+                return;
+            }
+
+            if (options.isWatch()) {
+                BatchSummary summary = new BatchSummary();
+                DirectoryWatcher watcher = new DirectoryWatcher(dir, batchValidator, options.getQuietPeriod());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    // Let the files being validated be reported before the summary.
+                    watcher.stop();
+                    try {
+                        watcher.awaitTermination(1, TimeUnit.MINUTES);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    summaryOut.println(summary);
+                    if (options.isMetrics()) {
+                        summaryOut.println(metrics.summary());
+                    }
+                }));
+                watcher.watch(System.out, summary);
+                return;
+            }
+
+            BatchSummary summary;
+            try {
+                if (options.getManifest() != null) {
+                    summary = validateManifest(batchValidator, options.getManifest(), dir);
+                } else {
+                    FileDiscovery discovery = new FileDiscovery();
+                    discovery.setMaxDepth(options.getMaxDepth());
+                    for (String include : options.getIncludes()) {
+                        discovery.addInclude(include);
+                    }
+                    for (String exclude : options.getExcludes()) {
+                        discovery.addExclude(exclude);
+                    }
+                    summary = batchValidator.validate(dir, discovery, System.out);
+                }
+            } finally {
+                if (batchValidator.getJournal() != null) {
+                    batchValidator.getJournal().close();
+                }
+            }
+            if (batchValidator.getResultCache() != null) {
+                batchValidator.getResultCache().evict();
+            }
+            // Keep the output of machine readable formats free from the summary.
+            summaryOut.println(summary);
+            if (options.isMetrics()) {
+                summaryOut.println(metrics.summary());
             }
+            System.exit(summary.getExitCode());
         } catch (Exception e) {
             e.printStackTrace();
+            System.exit(-1);
         }
     }
 }
@@ -0,0 +1,353 @@
+package se.mtm;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic PEF books of any size, used to drive load and scaling tests. The books
+ * follow the layout PEFCheck expects: each volume starts with a title section, may have an
+ * index section with roman page numbers and continues with content sections. Notes pages,
+ * print information at the end of the last volume, empty pages and gaps in the page sequence
+ * can be added. Rows can be written in ASCII braille or as Unicode braille cells. The same
+ * settings and seed always give the same book.
+ */
+public class PEFGenerator {
+    private int volumes = 1;
+    private int sectionsPerVolume = 2;
+    private int pagesPerSection = 20;
+    private int rowsPerPage = 25;
+
+    /**
+     * Number of index pages with roman numbers at the start of each volume, 0 for no index.
+     */
+    private int indexPagesPerVolume = 0;
+
+    /**
+     * A notes page is added after every n:th content page, 0 for no notes pages.
+     */
+    private int noteInterval = 0;
+
+    /**
+     * Add a print information section at the end of the last volume.
+     */
+    private boolean printSection = false;
+
+    /**
+     * Probability of a content or index page being empty.
+     */
+    private double emptyPageRate = 0;
+
+    /**
+     * Probability of pages missing before a content page.
+     */
+    private double gapRate = 0;
+
+    /**
+     * Write the rows as Unicode braille cells instead of ASCII braille.
+     */
+    private boolean unicodeBraille = false;
+
+    private long seed = 1;
+
+    /**
+     * Number of issues PEFCheck should report for the last generated book.
+     */
+    private int expectedIssues = 0;
+
+    /**
+     * Write a book to a file.
+     *
+     * @param file          File to write to
+     * @return              Number of issues PEFCheck should report for the book.
+     * @throws IOException  Throws exception if the file can't be written.
+     */
+    public int write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Write a book as UTF-8 to a stream. The stream is not closed.
+     *
+     * @param out           Stream to write to
+     * @return              Number of issues PEFCheck should report for the book.
+     * @throws IOException  Throws exception if the stream can't be written.
+     */
+    public int write(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        write(writer);
+        writer.flush();
+        return expectedIssues;
+    }
+
+    private void write(Writer w) throws IOException {
+        Random random = new Random(seed);
+        expectedIssues = 0;
+        int pefPage = 0;
+
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<pef xmlns=\"http://www.daisy.org/ns/2008/pef\" version=\"2008-1\">\n");
+        w.write("    <head>\n");
+        w.write("        <meta xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n");
+        w.write("            <dc:format>application/x-pef+xml</dc:format>\n");
+        w.write("            <dc:identifier>generated-" + seed + "</dc:identifier>\n");
+        w.write("            <dc:title>Generated book</dc:title>\n");
+        w.write("        </meta>\n");
+        w.write("    </head>\n");
+        w.write("    <body>\n");
+        for (int v = 0; v < volumes; v++) {
+            w.write("        <volume rowgap=\"0\" duplex=\"true\" rows=\"29\" cols=\"32\">\n");
+            writeTitleSection(w, v);
+            if (indexPagesPerVolume > 0) {
+                writeIndexSection(w, random);
+            }
+            for (int s = 0; s < sectionsPerVolume; s++) {
+                pefPage = writeContentSection(w, random, pefPage);
+            }
+            if (printSection && v == volumes - 1) {
+                writePrintSection(w);
+            }
+            w.write("        </volume>\n");
+        }
+        w.write("    </body>\n");
+        w.write("</pef>\n");
+    }
+
+    private void writeTitleSection(Writer w, int volume) throws IOException {
+        w.write("            <section>\n");
+        w.write("                <page>\n");
+        w.write("                    <row>" + braille("  pcccccccccccccccccccccccccc\u00f4") + "</row>\n");
+        w.write("                    <row>" + braille("  l     _generated book      |") + "</row>\n");
+        w.write("                    <row>" + braille("  l     _volume #" + alphaNumber(volume + 1) + "          |") + "</row>\n");
+        w.write("                </page>\n");
+        w.write("            </section>\n");
+    }
+
+    private void writeIndexSection(Writer w, Random random) throws IOException {
+        w.write("            <section rowgap=\"4\">\n");
+        for (int i = 1; i <= indexPagesPerVolume; i++) {
+            writePage(w, "                         " + romanNumber(i), isEmptyPage(random));
+        }
+        w.write("            </section>\n");
+    }
+
+    private int writeContentSection(Writer w, Random random, int pefPage) throws IOException {
+        w.write("            <section rowgap=\"4\">\n");
+        boolean leftPage = false;
+        for (int p = 0; p < pagesPerSection; p++) {
+            if (gapRate > 0 && random.nextDouble() < gapRate) {
+                pefPage += 1 + random.nextInt(3);
+                expectedIssues++;
+            }
+            pefPage++;
+
+            String pef = "#" + alphaNumber(pefPage);
+            int orgStart = pefPage / 2 + 1;
+            String org = "#" + alphaNumber(orgStart);
+            if (pefPage % 5 == 0) {
+                org += "--#" + alphaNumber(orgStart + 1);
+            }
+            String header = leftPage
+                    ? "    " + pef + "                  " + org
+                    : "    " + org + "                  " + pef;
+            writePage(w, header, isEmptyPage(random));
+            leftPage = !leftPage;
+
+            if (noteInterval > 0 && (p + 1) % noteInterval == 0) {
+                writePage(w, "                    _noter " + pef, false);
+            }
+        }
+        w.write("            </section>\n");
+        return pefPage;
+    }
+
+    private void writePrintSection(Writer w) throws IOException {
+        w.write("            <section>\n");
+        w.write("                <page>\n");
+        w.write("                    <row></row>\n");
+        w.write("                    <row>" + braille(" :: _tryckuppgifter :::::::::") + "</row>\n");
+        w.write("                    <row>" + braille("  _generated #" + alphaNumber((int) (seed % 1000) + 1)) + "</row>\n");
+        w.write("                </page>\n");
+        w.write("            </section>\n");
+    }
+
+    private void writePage(Writer w, String header, boolean empty) throws IOException {
+        w.write("                <page>\n");
+        w.write("                    <row rowgap=\"0\">");
+        w.write(braille(header));
+        w.write("</row>\n");
+        if (!empty) {
+            for (int r = 1; r < rowsPerPage; r++) {
+                w.write("                    <row>" + braille("  s{g hennes huvud utstr{ckt") + "</row>\n");
+            }
+        }
+        w.write("                </page>\n");
+    }
+
+    private boolean isEmptyPage(Random random) {
+        boolean empty = rowsPerPage < 2 || (emptyPageRate > 0 && random.nextDouble() < emptyPageRate);
+        if (empty) {
+            expectedIssues++;
+        }
+        return empty;
+    }
+
+    /**
+     * @return  The row as written to the book, in Unicode braille cells if chosen.
+     */
+    private String braille(String row) {
+        if (!unicodeBraille) {
+            return row;
+        }
+        StringBuilder sb = new StringBuilder(row.length());
+        for (int i = 0; i < row.length(); i++) {
+            sb.append(PageNumberDecoder.toCell(row.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Present a number as braille alpha letters, without the number sign.
+     */
+    static String alphaNumber(int num) {
+        final String pef = "jabcdefghi";
+        String decimal = Integer.toString(num);
+        StringBuilder sb = new StringBuilder(decimal.length());
+        for (int i = 0; i < decimal.length(); i++) {
+            sb.append(pef.charAt(decimal.charAt(i) - '0'));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Present a number as roman letters with the _ or __ prefix.
+     */
+    static String romanNumber(int num) {
+        final int[] decimal = {1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1};
+        final String[] roman = {"m", "cm", "d", "cd", "c", "xc", "l", "xl", "x", "ix", "v", "iv", "i"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < decimal.length; i++) {
+            while (num >= decimal[i]) {
+                sb.append(roman[i]);
+                num -= decimal[i];
+            }
+        }
+        return (sb.length() == 1 ? "_" : "__") + sb;
+    }
+
+    public void setVolumes(int volumes) {
+        this.volumes = volumes;
+    }
+
+    public void setSectionsPerVolume(int sectionsPerVolume) {
+        this.sectionsPerVolume = sectionsPerVolume;
+    }
+
+    public void setPagesPerSection(int pagesPerSection) {
+        this.pagesPerSection = pagesPerSection;
+    }
+
+    public void setRowsPerPage(int rowsPerPage) {
+        this.rowsPerPage = rowsPerPage;
+    }
+
+    public void setIndexPagesPerVolume(int indexPagesPerVolume) {
+        this.indexPagesPerVolume = indexPagesPerVolume;
+    }
+
+    public void setNoteInterval(int noteInterval) {
+        this.noteInterval = noteInterval;
+    }
+
+    public void setPrintSection(boolean printSection) {
+        this.printSection = printSection;
+    }
+
+    public void setEmptyPageRate(double emptyPageRate) {
+        this.emptyPageRate = emptyPageRate;
+    }
+
+    public void setGapRate(double gapRate) {
+        this.gapRate = gapRate;
+    }
+
+    public void setUnicodeBraille(boolean unicodeBraille) {
+        this.unicodeBraille = unicodeBraille;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generate books from the command line.
+     *
+     * @param args options followed by the output directory.
+     */
+    public static void main(String[] args) throws IOException {
+        PEFGenerator generator = new PEFGenerator();
+        int books = 1;
+        File outputDirectory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    outputDirectory = new File(arg);
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--books": books = Integer.parseInt(value); break;
+                    case "--volumes": generator.setVolumes(Integer.parseInt(value)); break;
+                    case "--sections": generator.setSectionsPerVolume(Integer.parseInt(value)); break;
+                    case "--pages": generator.setPagesPerSection(Integer.parseInt(value)); break;
+                    case "--rows": generator.setRowsPerPage(Integer.parseInt(value)); break;
+                    case "--index-pages": generator.setIndexPagesPerVolume(Integer.parseInt(value)); break;
+                    case "--note-interval": generator.setNoteInterval(Integer.parseInt(value)); break;
+                    case "--print-section": generator.setPrintSection(Boolean.parseBoolean(value)); break;
+                    case "--empty-rate": generator.setEmptyPageRate(Double.parseDouble(value)); break;
+                    case "--gap-rate": generator.setGapRate(Double.parseDouble(value)); break;
+                    case "--unicode-braille": generator.setUnicodeBraille(Boolean.parseBoolean(value)); break;
+                    case "--seed": generator.setSeed(Long.parseLong(value)); break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (outputDirectory == null) {
+                throw new IllegalArgumentException("No output directory given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println();
+            System.out.println("java -cp pefcheck.jar se.mtm.PEFGenerator [options] output_directory");
+            System.out.println();
+            System.out.println("Options: --books N --volumes N --sections N --pages N --rows N --index-pages N");
+            System.out.println("         --note-interval N --print-section true|false --empty-rate R --gap-rate R --seed N");
+            System.out.println("         --unicode-braille true|false");
+            System.exit(1);
+            return;
+        }
+
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            System.err.println("Could not create " + outputDirectory);
+            System.exit(-1);
+        }
+        long seed = generator.seed;
+        for (int i = 0; i < books; i++) {
+            generator.setSeed(seed + i);
+            File file = new File(outputDirectory, "generated-" + (seed + i) + ".xml");
+            int issues = generator.write(file);
+            System.out.println(file.getName() + " " + file.length() + " bytes, " + issues + " expected issue(s)");
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package se.mtm;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Streaming version of the PEFCheck document walk. Reads the document with StAX and only
+ * keeps the state of the current volume, section and page, so memory use doesn't grow with
+ * the size of the book.
+ *
+ * The document is walked the same way as by processDocument: the title sections of each
+ * volume are skipped, notes pages are ignored and print information sections are skipped in
+ * the last volume. The pages are handed to the enabled rules as they are read.
+ */
+class PEFStreamProcessor {
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private final PEFCheck pefCheck;
+    private final RuleEngine engine;
+    private final int numTitleSections;
+
+    /*
+     * Document state
+     */
+    private int depth = 0;
+    private int volumeDepth = -1;
+    private int volumeNumber = 0;
+
+    /**
+     * A section that looked like print information was skipped. This is only allowed in the
+     * last volume, if another volume shows up the document is incorrect.
+     */
+    private boolean pendingPrintSection = false;
+
+    /*
+     * Volume state
+     */
+    private int sectionDepth = -1;
+    private int sectionIndex = 0;
+
+    /*
+     * Section state
+     */
+    private boolean activeSection;
+    private boolean sectionDecided;
+    private boolean indexSection;
+    private boolean leftPage;
+    private int lastPage;
+    private int pageCount;
+
+    /*
+     * Page state
+     */
+    private int pageDepth = -1;
+    private boolean pageTag;
+    private int rowCount;
+    private int rowDepth = -1;
+    private final StringBuilder firstRow = new StringBuilder();
+    private final StringBuilder secondRow = new StringBuilder();
+    private final PageIdentifiers pageIdentifiers = new PageIdentifiers();
+
+    /*
+     * Metrics of the document, reported when the document is done.
+     */
+    private int volumeTotal = 0;
+    private int sectionTotal = 0;
+    private int pageTotal = 0;
+    private long validateNanos = 0;
+
+    /**
+     * Documents can come from other services, DTDs and external entities are not read so a
+     * document can't pull in local files or make the validator fetch URLs.
+     */
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    PEFStreamProcessor(PEFCheck pefCheck, boolean validateEmptyPages) {
+        this.pefCheck = pefCheck;
+        this.engine = pefCheck.newRuleEngine(validateEmptyPages);
+        this.numTitleSections = pefCheck.getNumTitleSections();
+    }
+
+    /**
+     * Walk the document and report issues through the PEFCheck instance.
+     *
+     * @param in            Stream with a document in PEF format
+     * @throws Exception    Throws exceptions when the document is not well formatted.
+     */
+    void process(InputStream in) throws Exception {
+        XMLStreamReader reader;
+        synchronized (INPUT_FACTORY) {
+            reader = INPUT_FACTORY.createXMLStreamReader(in);
+        }
+        try {
+            engine.startDocument();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (wantsText()) {
+                            characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            engine.endDocument();
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void startElement(String name) throws InvalidFormatException {
+        startElement(name.equals("volume"), name.equalsIgnoreCase("page"));
+    }
+
+    /**
+     * Handle the start of an element.
+     *
+     * @param volume    True if the element is named volume
+     * @param page      True if the element is named page, ignoring case
+     */
+    void startElement(boolean volume, boolean page) throws InvalidFormatException {
+        depth++;
+        if (volumeDepth == -1) {
+            if (volume) {
+                startVolume();
+            }
+        } else if (depth == volumeDepth + 1) {
+            startSection();
+        } else if (depth == sectionDepth + 1 && activeSection) {
+            pageDepth = depth;
+            pageTag = page;
+            rowCount = 0;
+            firstRow.setLength(0);
+            secondRow.setLength(0);
+        } else if (depth == pageDepth + 1) {
+            rowCount++;
+            if (rowCount <= 2) {
+                rowDepth = depth;
+            }
+        }
+    }
+
+    /**
+     * Handle the end of the current element.
+     */
+    void endElement() throws InvalidFormatException {
+        if (depth == rowDepth) {
+            rowDepth = -1;
+            if (!sectionDecided && rowCount == 1 && firstRow.length() > 0) {
+                decideSection();
+            }
+        } else if (depth == pageDepth) {
+            pageDepth = -1;
+            endPage();
+        } else if (depth == sectionDepth) {
+            sectionDepth = -1;
+            endSection();
+        } else if (depth == volumeDepth) {
+            volumeDepth = -1;
+            engine.endVolume();
+        }
+        depth--;
+    }
+
+    /**
+     * @return  True if the text at the current position is needed, only the first row of each
+     *          page and the second row of the first page in a section are read.
+     */
+    boolean wantsText() {
+        return rowDepth != -1 && (rowCount == 1 || !sectionDecided);
+    }
+
+    /**
+     * @return  True if the current position is inside a volume.
+     */
+    boolean inVolume() {
+        return volumeDepth != -1;
+    }
+
+    /**
+     * Handle text of the current element.
+     */
+    void characters(char[] text, int start, int length) {
+        if (rowDepth == -1) {
+            return;
+        }
+        if (rowCount == 1) {
+            firstRow.append(text, start, length);
+        } else if (!sectionDecided) {
+            secondRow.append(text, start, length);
+        }
+    }
+
+    private void startVolume() throws InvalidFormatException {
+        checkNoPrintSection();
+        volumeDepth = depth;
+        volumeNumber++;
+        volumeTotal++;
+        sectionIndex = 0;
+        pefCheck.setLocation(volumeNumber, 0);
+        engine.startVolume();
+    }
+
+    private void startSection() throws InvalidFormatException {
+        checkNoPrintSection();
+        sectionDepth = depth;
+        activeSection = sectionIndex >= numTitleSections;
+        sectionIndex++;
+        pefCheck.setLocation(volumeNumber, sectionIndex);
+        sectionDecided = false;
+        indexSection = false;
+        leftPage = false;
+        lastPage = 0;
+        pageCount = 0;
+    }
+
+    /**
+     * A skipped print information section must be the last section of the document, as
+     * processDocument only skips it in the last volume. Fail before the next section is
+     * checked, its findings would be reported for a document that is incorrect.
+     */
+    private void checkNoPrintSection() throws InvalidFormatException {
+        if (pendingPrintSection) {
+            throw new InvalidFormatException(
+                    "No data in first row, lastPage " + pefCheck.getPrintablePageNumber(0, false)
+            );
+        }
+    }
+
+    /**
+     * Decide how the section should be handled from the first page. Sections where the first
+     * row is empty and the second row contains print information are skipped, this is only
+     * correct in the last volume which we don't know yet so we remember it.
+     */
+    private void decideSection() throws InvalidFormatException {
+        sectionDecided = true;
+        if (firstRow.length() == 0 && rowCount > 1 && PageNumberDecoder.contains(secondRow, "::::")) {
+            activeSection = false;
+            pendingPrintSection = true;
+            return;
+        }
+        indexSection = PageNumberDecoder.firstNonBlank(firstRow) == '_';
+        engine.startSection(indexSection);
+    }
+
+    private void endPage() throws InvalidFormatException {
+        if (!sectionDecided) {
+            decideSection();
+            if (!activeSection) {
+                return;
+            }
+        }
+        pageCount++;
+
+        if (rowCount == 0) {
+            throw new InvalidFormatException("Could not find child");
+        }
+        if (PageNumberDecoder.contains(firstRow, "_noter")) {
+            return;
+        }
+        pageTotal++;
+        if (!pageTag) {
+            throw new InvalidFormatException(
+                    "page tag incorrect, lastPage " + pefCheck.getPrintablePageNumber(lastPage, indexSection)
+            );
+        }
+        if (firstRow.length() == 0) {
+            throw new InvalidFormatException(
+                    "No data in first row, lastPage " + pefCheck.getPrintablePageNumber(lastPage, indexSection)
+            );
+        }
+
+        long start = System.nanoTime();
+        PageIdentifiers pi = pageIdentifiers;
+        pefCheck.readPageIdentifiers(firstRow, leftPage, indexSection, pi);
+        if (pi.getPefPage() == -1) {
+            throw new InvalidFormatException("Can't find the page number");
+        }
+        pi.setEmpty(rowCount < 2);
+        pi.setIndexPage(indexSection);
+        lastPage = pi.getPefPage();
+        leftPage = !leftPage;
+
+        engine.page(pi);
+        validateNanos += System.nanoTime() - start;
+    }
+
+    private void endSection() throws InvalidFormatException {
+        if (!activeSection) {
+            return;
+        }
+        if (pageCount == 0) {
+            throw new InvalidFormatException("No pages present");
+        }
+        sectionTotal++;
+        long start = System.nanoTime();
+        engine.endSection();
+        validateNanos += System.nanoTime() - start;
+        activeSection = false;
+    }
+
+    /**
+     * Process a single volume of a larger document. Findings are reported as in the given
+     * volume and the first content page is not checked, see getDeferredPage.
+     *
+     * @param volumesBefore Number of volumes before this one in the document
+     */
+    void startAtVolume(int volumesBefore) {
+        volumeNumber = volumesBefore;
+        PageSequenceRule sequence = engine.getRule(PageSequenceRule.class);
+        if (sequence != null) {
+            sequence.deferFirstPage();
+        }
+    }
+
+    /**
+     * @return  The first content page when processing a single volume, -1 if the volume has
+     *          no content pages or the page sequence isn't checked.
+     */
+    int getDeferredPage() {
+        PageSequenceRule sequence = engine.getRule(PageSequenceRule.class);
+        return sequence != null ? sequence.getDeferredPage() : -1;
+    }
+
+    /**
+     * @return  The section of the first content page.
+     */
+    int getDeferredSection() {
+        return engine.getRule(PageSequenceRule.class).getDeferredSection();
+    }
+
+    /**
+     * @return  Number of issues reported before the first content page was found, where a
+     *          missing page issue for it belongs.
+     */
+    int getDeferredIssueCount() {
+        return engine.getRule(PageSequenceRule.class).getDeferredIssueCount();
+    }
+
+    /**
+     * @return  The last content page, -1 if no content page has been seen or the page
+     *          sequence isn't checked.
+     */
+    int getLastContentPage() {
+        PageSequenceRule sequence = engine.getRule(PageSequenceRule.class);
+        return sequence != null ? sequence.getLastContentPage() : -1;
+    }
+
+    /**
+     * @return  True if a print information section was skipped, which is only allowed in the
+     *          last volume.
+     */
+    boolean isPrintSectionPending() {
+        return pendingPrintSection;
+    }
+
+    int getVolumeCount() {
+        return volumeTotal;
+    }
+
+    /**
+     * @return  Number of sections checked, title and print information sections are not counted.
+     */
+    int getSectionCount() {
+        return sectionTotal;
+    }
+
+    int getPageCount() {
+        return pageTotal;
+    }
+
+    /**
+     * @return  Time spent reading page numbers and reporting issues, the rest of the time
+     *          was spent parsing.
+     */
+    long getValidateNanos() {
+        return validateNanos;
+    }
+
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Nothing more to read, the stream itself is closed by the caller.
+        }
+    }
+}
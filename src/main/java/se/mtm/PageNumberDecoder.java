@@ -0,0 +1,227 @@
+package se.mtm;
+
+/**
+ * Decodes the page numbers found at the top of PEF pages. Reads directly from a range of a
+ * character sequence using lookup tables, so no strings or patterns are created per page.
+ *
+ * Supported forms are braille alpha numbers #[a-j]+ and roman numbers _[mdclxvi] for single
+ * letters or __[mdclxvi]+ for more than one letter. Rows may be written in ASCII braille or as
+ * Unicode braille cells (U+2800 to U+28FF), cells are read as the ASCII braille character with
+ * the same dots through a table, so both are decoded in the same pass.
+ */
+public final class PageNumberDecoder {
+    public static final int INVALID = -1;
+
+    /**
+     * Digit of each braille alpha letter, -1 if the character isn't a digit.
+     */
+    private static final int[] ALPHA_DIGIT = new int[128];
+
+    /**
+     * Value of each roman letter, 0 if the character isn't a roman letter.
+     */
+    private static final int[] ROMAN_VALUE = new int[128];
+
+    /**
+     * The ASCII braille character of each Unicode braille cell, indexed by the dots of the cell.
+     * The blank cell is a space, cells using dot 7 or 8 have no ASCII form and are kept as is.
+     */
+    private static final char[] CELL_ASCII = new char[256];
+
+    /**
+     * The Unicode braille cell of each ASCII braille character, 0 if the character has no cell.
+     */
+    private static final char[] ASCII_CELL = new char[128];
+
+    /*
+     * Roman tokens in the order they are matched, a token is one or two letters.
+     */
+    private static final char[] TOKEN_FIRST =  {'m', 'c', 'd', 'c', 'c', 'x', 'l', 'x', 'x', 'i', 'v', 'i', 'i'};
+    private static final char[] TOKEN_SECOND = {0,   'm', 0,   'd', 0,   'c', 0,   'l', 0,   'x', 0,   'v', 0};
+    private static final int[] TOKEN_VALUE = {1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1};
+
+    static {
+        final String alphaNumbers = "jabcdefghi";
+        for (int i = 0; i < ALPHA_DIGIT.length; i++) {
+            ALPHA_DIGIT[i] = alphaNumbers.indexOf(i);
+        }
+        final String romanNumbers = "mdclxvi";
+        final int[] romanToDecimal = {1000, 500, 100, 50, 10, 5, 1};
+        for (int i = 0; i < romanNumbers.length(); i++) {
+            ROMAN_VALUE[romanNumbers.charAt(i)] = romanToDecimal[i];
+        }
+        // North American Braille ASCII in the order of the dots, letters in lower case as in PEF.
+        final String brailleAscii = " a1b'k2l@cif/msp\"e3h9o6r^djg>ntq,*5<-u8v.%[$+x!&;:4\\0z7(_?w]#y)=";
+        for (int i = 0; i < CELL_ASCII.length; i++) {
+            CELL_ASCII[i] = i < brailleAscii.length() ? brailleAscii.charAt(i) : (char) (0x2800 + i);
+        }
+        for (int i = 0; i < brailleAscii.length(); i++) {
+            char c = brailleAscii.charAt(i);
+            ASCII_CELL[c] = (char) (0x2800 + i);
+            ASCII_CELL[Character.toUpperCase(c)] = (char) (0x2800 + i);
+        }
+    }
+
+    private PageNumberDecoder() {}
+
+    /**
+     * Given a range representing a page number return the current number. Whitespace around
+     * the number is ignored.
+     *
+     * @param num   Characters containing the number #[a-j]+ or __[ivl]+
+     * @param start Start of the range, inclusive
+     * @param end   End of the range, exclusive
+     * @return      A number equal to the number representation. Returns -1 if incorrect.
+     */
+    public static int decode(CharSequence num, int start, int end) {
+        while (start < end && toAscii(num.charAt(start)) <= ' ') start++;
+        while (end > start && toAscii(num.charAt(end - 1)) <= ' ') end--;
+
+        if (end - start < 2) {
+            return INVALID;
+        }
+        char first = toAscii(num.charAt(start));
+        if (first == '#') {
+            return decodeAlpha(num, start + 1, end);
+        }
+        if (first != '_') {
+            return INVALID;
+        }
+        if (toAscii(num.charAt(start + 1)) == '_') {
+            return decodeRoman(num, start + 2, end);
+        }
+        // A single control character is only allowed for single letters.
+        if (end - start != 2) {
+            return INVALID;
+        }
+        return romanValue(toAscii(num.charAt(start + 1)));
+    }
+
+    /**
+     * Read a Unicode braille cell as ASCII braille, other characters are returned as they are.
+     *
+     * @param c Character from a row
+     * @return  The ASCII braille character with the same dots, or the character itself.
+     */
+    public static char toAscii(char c) {
+        return (c & 0xff00) == 0x2800 ? CELL_ASCII[c & 0xff] : c;
+    }
+
+    /**
+     * Write an ASCII braille character as a Unicode braille cell, used to generate books.
+     *
+     * @return  The cell with the same dots, or the character itself if it has no cell.
+     */
+    static char toCell(char c) {
+        return c < ASCII_CELL.length && ASCII_CELL[c] != 0 ? ASCII_CELL[c] : c;
+    }
+
+    /**
+     * Find a text in a row, braille cells in the row match the ASCII braille of the text.
+     *
+     * @param text  ASCII braille to find
+     * @return      True if the row contains the text.
+     */
+    public static boolean contains(CharSequence cs, String text) {
+        int last = cs.length() - text.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < text.length() && toAscii(cs.charAt(i + j)) == text.charAt(j)) {
+                j++;
+            }
+            if (j == text.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return  The first character of a row that isn't whitespace or a blank cell, as ASCII
+     *          braille, 0 if there is none.
+     */
+    public static char firstNonBlank(CharSequence cs) {
+        for (int i = 0; i < cs.length(); i++) {
+            char c = toAscii(cs.charAt(i));
+            if (c > ' ') {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Find the first position of a character in a range, a braille cell matches its ASCII form.
+     *
+     * @return  Position of the character or -1 if not found.
+     */
+    public static int indexOf(CharSequence cs, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (toAscii(cs.charAt(i)) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first position of a double dash, the separator of page ranges, in a range.
+     *
+     * @return  Position of the separator or -1 if not found.
+     */
+    public static int indexOfRange(CharSequence cs, int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            if (toAscii(cs.charAt(i)) == '-' && toAscii(cs.charAt(i + 1)) == '-') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int decodeAlpha(CharSequence num, int start, int end) {
+        int sum = 0;
+        for (int i = start; i < end; i++) {
+            char c = toAscii(num.charAt(i));
+            int digit = c < ALPHA_DIGIT.length ? ALPHA_DIGIT[c] : -1;
+            if (digit == -1) {
+                return INVALID;
+            }
+            sum = sum * 10 + digit;
+        }
+        return sum;
+    }
+
+    private static int decodeRoman(CharSequence num, int start, int end) {
+        // We don't allow single numbers when 2 control characters are used.
+        if (end - start < 2) {
+            return INVALID;
+        }
+        for (int i = start; i < end; i++) {
+            if (romanValue(toAscii(num.charAt(i))) == INVALID) {
+                return INVALID;
+            }
+        }
+
+        int result = 0;
+        int pos = start;
+        for (int i = 0; i < TOKEN_VALUE.length; i++) {
+            while (matchesToken(num, pos, end, i)) {
+                result += TOKEN_VALUE[i];
+                pos += TOKEN_SECOND[i] == 0 ? 1 : 2;
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesToken(CharSequence num, int pos, int end, int token) {
+        if (pos >= end || toAscii(num.charAt(pos)) != TOKEN_FIRST[token]) {
+            return false;
+        }
+        return TOKEN_SECOND[token] == 0 || (pos + 1 < end && toAscii(num.charAt(pos + 1)) == TOKEN_SECOND[token]);
+    }
+
+    private static int romanValue(char c) {
+        int value = c < ROMAN_VALUE.length ? ROMAN_VALUE[c] : 0;
+        return value == 0 ? INVALID : value;
+    }
+}
@@ -0,0 +1,84 @@
+package se.mtm;
+
+/**
+ * Reports pages missing from the page sequence. Content pages are numbered through the whole
+ * book, index pages are numbered from the start of each volume.
+ */
+public class PageSequenceRule implements Rule {
+    private int startPage = 0;
+    private int indexStartPage = 0;
+
+    /*
+     * Used when a single volume is checked on its own, see VolumeSplitter. The first content
+     * page can't be checked against the page before it, which is in the previous volume, so it
+     * is remembered instead.
+     */
+    private boolean deferFirstPage = false;
+    private int deferredPage = -1;
+    private int deferredSection;
+    private int deferredIssueCount;
+    private boolean contentPageSeen = false;
+
+    @Override
+    public void startVolume(RuleContext context) {
+        indexStartPage = 0;
+    }
+
+    @Override
+    public void page(RuleContext context, PageIdentifiers page) {
+        int pefPage = page.getPefPage();
+        if (page.isIndexPage()) {
+            if (pefPage != indexStartPage + 1) {
+                context.reportMissingPages(pefPage, indexStartPage, true);
+            }
+            indexStartPage = pefPage;
+            return;
+        }
+        if (deferFirstPage) {
+            deferFirstPage = false;
+            deferredPage = pefPage;
+            deferredSection = context.getSection();
+            deferredIssueCount = context.getIssueCount();
+        } else if (pefPage != startPage + 1) {
+            context.reportMissingPages(pefPage, startPage, false);
+        }
+        startPage = pefPage;
+        contentPageSeen = true;
+    }
+
+    /**
+     * Don't check the first content page, it is checked when the volumes are put together.
+     */
+    void deferFirstPage() {
+        deferFirstPage = true;
+    }
+
+    /**
+     * @return  The first content page when the first page is deferred, -1 if there was none.
+     */
+    int getDeferredPage() {
+        return deferredPage;
+    }
+
+    /**
+     * @return  The section of the first content page.
+     */
+    int getDeferredSection() {
+        return deferredSection;
+    }
+
+    /**
+     * @return  Number of issues reported before the first content page was found, where a
+     *          missing page issue for it belongs.
+     */
+    int getDeferredIssueCount() {
+        return deferredIssueCount;
+    }
+
+    /**
+     * @return  The last content page, -1 if no content page has been seen.
+     */
+    int getLastContentPage() {
+        return contentPageSeen ? startPage : -1;
+    }
+}
@@ -0,0 +1,119 @@
+package se.mtm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Page identifiers of a section stored in primitive arrays instead of one object per page.
+ * get returns a PageIdentifiers copy of a page, so the table can be used where a list of
+ * page identifiers is expected.
+ *
+ * A table can be cleared and filled again, so one table is enough for a whole document.
+ */
+public class PageTable extends AbstractList<PageIdentifiers> {
+    private static final byte EMPTY = 1;
+    private static final byte INDEX_PAGE = 2;
+
+    private int[] pefPages;
+    private int[] orgStartPages;
+    private int[] orgEndPages;
+    private byte[] flags;
+    private int size = 0;
+
+    public PageTable() {
+        this(16);
+    }
+
+    /**
+     * @param capacity  Number of pages to make room for, the table grows when needed.
+     */
+    public PageTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        pefPages = new int[capacity];
+        orgStartPages = new int[capacity];
+        orgEndPages = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Add a page to the end of the table.
+     */
+    public void add(int pefPage, int orgStartPage, int orgEndPage, boolean empty, boolean indexPage) {
+        if (size == pefPages.length) {
+            int capacity = size * 2;
+            pefPages = Arrays.copyOf(pefPages, capacity);
+            orgStartPages = Arrays.copyOf(orgStartPages, capacity);
+            orgEndPages = Arrays.copyOf(orgEndPages, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        pefPages[size] = pefPage;
+        orgStartPages[size] = orgStartPage;
+        orgEndPages[size] = orgEndPage;
+        flags[size] = (byte) ((empty ? EMPTY : 0) | (indexPage ? INDEX_PAGE : 0));
+        size++;
+    }
+
+    /**
+     * Add a copy of the page identifiers to the end of the table.
+     */
+    @Override
+    public boolean add(PageIdentifiers pi) {
+        add(pi.getPefPage(), pi.getOrgStartPage(), pi.getOrgEndPage(), pi.isEmpty(), pi.isIndexPage());
+        return true;
+    }
+
+    /**
+     * @return  A copy of the page at the index, changing it doesn't change the table.
+     */
+    @Override
+    public PageIdentifiers get(int index) {
+        checkIndex(index);
+        return new PageIdentifiers(
+                pefPages[index], orgStartPages[index], orgEndPages[index], isEmpty(index), isIndexPage(index)
+        );
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all pages, the arrays are kept for the next section.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    public int getPefPage(int index) {
+        checkIndex(index);
+        return pefPages[index];
+    }
+
+    public int getOrgStartPage(int index) {
+        checkIndex(index);
+        return orgStartPages[index];
+    }
+
+    public int getOrgEndPage(int index) {
+        checkIndex(index);
+        return orgEndPages[index];
+    }
+
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return (flags[index] & EMPTY) != 0;
+    }
+
+    public boolean isIndexPage(int index) {
+        checkIndex(index);
+        return (flags[index] & INDEX_PAGE) != 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
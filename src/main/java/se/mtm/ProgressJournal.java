@@ -0,0 +1,260 @@
+package se.mtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the files a batch run has completed, so a run that is stopped can be
+ * resumed without validating the completed files again.
+ *
+ * Each record holds the name, size and modification time of a file, the options it was
+ * checked with and its findings, framed by its length and a CRC32. Records are written as
+ * soon as a file is done but only forced to disk every SYNC_FILES files or SYNC_MILLIS, so
+ * the journal doesn't cost a disk flush per file. A killed process loses nothing that was
+ * written, a crashed node at most the records since the last flush. A record cut short by
+ * the crash is found by its length or checksum when the journal is opened and cut off.
+ */
+public class ProgressJournal implements Closeable {
+    private static final int MAGIC = 0x50454a4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Files and milliseconds between flushes to disk.
+     */
+    static final int SYNC_FILES = 64;
+    static final long SYNC_MILLIS = 2000;
+
+    private final FileChannel channel;
+    private final Map<String, Entry> completed;
+
+    private int unsynced = 0;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * A file completed by an earlier run.
+     */
+    public static class Entry {
+        private final long size;
+        private final long modified;
+        private final String options;
+        private final boolean failed;
+        private final int issues;
+        private final List<Finding> findings;
+
+        Entry(long size, long modified, String options, boolean failed, int issues, List<Finding> findings) {
+            this.size = size;
+            this.modified = modified;
+            this.options = options;
+            this.failed = failed;
+            this.issues = issues;
+            this.findings = findings;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public int getIssues() {
+            return issues;
+        }
+
+        /**
+         * @return  Findings of the file, without file names.
+         */
+        public List<Finding> getFindings() {
+            return findings;
+        }
+    }
+
+    /**
+     * Open a journal.
+     *
+     * @param file          The journal file, created if missing
+     * @param resume        True to keep the files completed by an earlier run, false to start
+     *                      a new journal
+     * @throws IOException  Throws exception if the journal can't be read or written, or was not
+     *                      written by PEFCheck.
+     */
+    public ProgressJournal(File file, boolean resume) throws IOException {
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (resume && channel.size() > 0) {
+                completed = load();
+            } else {
+                completed = new HashMap<>();
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(header);
+                channel.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the records of an earlier run and cut off a record that was only partly written.
+     */
+    private Map<String, Entry> load() throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.remaining() > 0 || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a PEFCheck journal or written by another version");
+        }
+
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        while (position + frame.capacity() <= size) {
+            frame.clear();
+            readFully(frame, position);
+            int length = frame.getInt(0);
+            if (length < 0 || position + frame.capacity() + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + frame.capacity());
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != frame.getInt(4)) {
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+                String name = in.readUTF();
+                long fileSize = in.readLong();
+                long modified = in.readLong();
+                String options = in.readUTF();
+                boolean failed = in.readBoolean();
+                int issues = in.readInt();
+                List<Finding> findings = ResultCache.readFindings(in);
+                entries.put(name, new Entry(fileSize, modified, options, failed, issues, findings));
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            position += frame.capacity() + length;
+        }
+        channel.truncate(position);
+        channel.position(position);
+        return entries;
+    }
+
+    /**
+     * Look up a file completed by an earlier run.
+     *
+     * @param name      Name the file is reported as
+     * @param file      The file, or the archive it was read from
+     * @param options   Options the file is checked with, see PEFCheck.getCacheOptions
+     * @return          The completed file, or null if the file wasn't completed or has changed
+     *                  or the options are not the same.
+     */
+    public synchronized Entry get(String name, File file, String options) {
+        Entry entry = completed.get(name);
+        if (entry == null || entry.size != file.length() || entry.modified != file.lastModified()
+                || !entry.options.equals(options)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return  Number of files completed by earlier runs.
+     */
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Record a completed file. Size and modification time should be taken before the file was
+     * read, so a file changed while it was validated is validated again on resume.
+     *
+     * @param name          Name the file is reported as
+     * @param size          Size of the file or archive
+     * @param modified      Modification time of the file or archive
+     * @param options       Options the file was checked with
+     * @param failed        True if the file could not be processed
+     * @param issues        Number of issues reported
+     * @param findings      Findings of the file
+     * @throws IOException  Throws exception if the record can't be written.
+     */
+    public void record(String name, long size, long modified, String options, boolean failed, int issues,
+                       List<Finding> findings) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeUTF(name);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeUTF(options);
+            out.writeBoolean(failed);
+            out.writeInt(issues);
+            ResultCache.writeFindings(out, findings);
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+        record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+
+        synchronized (this) {
+            writeFully(record);
+            completed.put(name, new Entry(size, modified, options, failed, issues,
+                    Collections.unmodifiableList(findings)));
+            if (++unsynced >= SYNC_FILES || System.nanoTime() - lastSync >= SYNC_MILLIS * 1000000L) {
+                sync();
+            }
+        }
+    }
+
+    /**
+     * Force the written records to disk.
+     *
+     * @throws IOException  Throws exception if the records can't be flushed.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+        lastSync = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package se.mtm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads files ahead of the workers on a thread of its own, so the disk is read while the
+ * files before are validated. Files are read in the order they are submitted into direct
+ * buffers that are reused for later files.
+ *
+ * At most depth files are read and waiting for a worker at the same time, and the buffers
+ * together hold at most the byte budget. A file larger than the budget, or one that can't be
+ * read, is handed on without content and read by the worker as usual.
+ */
+class ReadAhead implements Closeable {
+    /**
+     * Buffers are allocated in steps, so they can be reused for files of about the same size.
+     */
+    private static final int BUFFER_STEP = 1 << 16;
+
+    private final int depth;
+    private final long byteBudget;
+    private final ArrayDeque<Request> requests = new ArrayDeque<>();
+    private final List<ByteBuffer> free = new ArrayList<>();
+    private final Thread reader;
+
+    private long allocated = 0;
+    private int waiting = 0;
+    private boolean closed = false;
+
+    /**
+     * Receives the content of a file when it has been read.
+     */
+    interface Consumer {
+        /**
+         * @param content   Content of the file, or null if the file wasn't read ahead.
+         */
+        void ready(Content content);
+    }
+
+    /**
+     * The content of a file read ahead. The buffer must be released when the file is done.
+     */
+    class Content {
+        private ByteBuffer buffer;
+        private boolean taken = false;
+
+        private Content(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Take the content when the file is validated, the next file can then be read ahead.
+         *
+         * @return  The bytes of the file from index 0 to the limit.
+         */
+        ByteBuffer take() {
+            synchronized (ReadAhead.this) {
+                if (!taken) {
+                    taken = true;
+                    waiting--;
+                    ReadAhead.this.notifyAll();
+                }
+            }
+            return buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * Give the buffer back to be reused.
+         */
+        void release() {
+            synchronized (ReadAhead.this) {
+                if (buffer == null) {
+                    return;
+                }
+                if (!taken) {
+                    taken = true;
+                    waiting--;
+                }
+                buffer.clear();
+                free.add(buffer);
+                buffer = null;
+                ReadAhead.this.notifyAll();
+            }
+        }
+    }
+
+    private static class Request {
+        final File file;
+        final Consumer consumer;
+
+        Request(File file, Consumer consumer) {
+            this.file = file;
+            this.consumer = consumer;
+        }
+    }
+
+    /**
+     * @param depth         Number of files read ahead that can wait for a worker
+     * @param byteBudget    Bytes the buffers may hold together
+     */
+    ReadAhead(int depth, long byteBudget) {
+        if (depth < 1 || byteBudget < 1) {
+            throw new IllegalArgumentException("At least one file and one byte must be read ahead");
+        }
+        this.depth = depth;
+        this.byteBudget = byteBudget;
+        reader = new Thread(this::readFiles, "pefcheck-read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Queue a file to be read, blocks while depth files are already queued.
+     *
+     * @param file      File to read
+     * @param consumer  Called on the reader thread when the file has been read
+     */
+    synchronized void read(File file, Consumer consumer) {
+        boolean interrupted = false;
+        while (requests.size() >= depth && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (closed) {
+            throw new IllegalStateException("Read ahead has been closed");
+        }
+        requests.add(new Request(file, consumer));
+        notifyAll();
+    }
+
+    /**
+     * Read the files already queued and stop the reader.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (reader.isAlive()) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return  Bytes held by the buffers, in use or free.
+     */
+    synchronized long getAllocated() {
+        return allocated;
+    }
+
+    private void readFiles() {
+        Request request;
+        while ((request = nextRequest()) != null) {
+            Content content = null;
+            try {
+                content = readFile(request.file);
+            } catch (IOException e) {
+                // The worker reads the file itself and reports the problem.
+                content = null;
+            }
+            request.consumer.ready(content);
+        }
+    }
+
+    private synchronized Request nextRequest() {
+        boolean interrupted = false;
+        while (requests.isEmpty() && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Request request = requests.poll();
+        notifyAll();
+        return request;
+    }
+
+    private Content readFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > byteBudget || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            Content content = new Content(acquire((int) size));
+            ByteBuffer buffer = content.buffer;
+            try {
+                while (buffer.position() < size) {
+                    if (channel.read(buffer) == -1) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                content.release();
+                throw e;
+            }
+            buffer.flip();
+            return content;
+        }
+    }
+
+    /**
+     * Take a free buffer that can hold the size or allocate one, waits while depth files are
+     * waiting for a worker or the budget is used by buffers in use.
+     */
+    private synchronized ByteBuffer acquire(int size) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                if (waiting < depth) {
+                    ByteBuffer buffer = takeFree(size);
+                    if (buffer == null) {
+                        buffer = allocate(size);
+                    }
+                    if (buffer != null) {
+                        buffer.limit(size);
+                        waiting++;
+                        return buffer;
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return  The smallest free buffer that can hold the size, or null.
+     */
+    private ByteBuffer takeFree(int size) {
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            int capacity = free.get(i).capacity();
+            if (capacity >= size && (best == -1 || capacity < free.get(best).capacity())) {
+                best = i;
+            }
+        }
+        return best == -1 ? null : free.remove(best);
+    }
+
+    /**
+     * Allocate a new buffer, dropping free buffers that are too small to make room.
+     *
+     * @return  The buffer or null if the budget is used by buffers in use.
+     */
+    private ByteBuffer allocate(int size) {
+        long capacity = ((long) size + BUFFER_STEP - 1) / BUFFER_STEP * BUFFER_STEP;
+        capacity = Math.max(Math.min(capacity, Math.min(byteBudget, Integer.MAX_VALUE)), size);
+        while (allocated + capacity > byteBudget && !free.isEmpty()) {
+            allocated -= free.remove(free.size() - 1).capacity();
+        }
+        if (allocated + capacity > byteBudget) {
+            return null;
+        }
+        allocated += capacity;
+        return ByteBuffer.allocateDirect((int) capacity);
+    }
+}
@@ -0,0 +1,57 @@
+package se.mtm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes findings on to another writer and keeps a copy, used to store the findings of a
+ * file in the result cache. Without a writer to pass to the findings are only kept.
+ */
+class RecordingFindingsWriter implements FindingsWriter {
+    private final FindingsWriter delegate;
+    private final List<Finding> findings = new ArrayList<>();
+
+    RecordingFindingsWriter(FindingsWriter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void writeHeader() {
+        if (delegate != null) {
+            delegate.writeHeader();
+        }
+    }
+
+    @Override
+    public void startFile(String file) {
+        if (delegate != null) {
+            delegate.startFile(file);
+        }
+    }
+
+    @Override
+    public void write(Finding finding) {
+        findings.add(finding);
+        if (delegate != null) {
+            delegate.write(finding);
+        }
+    }
+
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        if (delegate != null) {
+            delegate.endFile(file, issues, failed);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (delegate != null) {
+            delegate.flush();
+        }
+    }
+
+    List<Finding> getFindings() {
+        return findings;
+    }
+}
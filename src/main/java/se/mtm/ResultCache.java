@@ -0,0 +1,390 @@
+package se.mtm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * On disk cache of validation results, so files that haven't changed since the last run are
+ * not parsed again.
+ *
+ * Results are stored by the SHA-256 of the file content together with the validator version,
+ * the version of the rules, see Rules.VERSION, and the options used. To avoid hashing unchanged
+ * files on every run an index maps each path to the size, modification time and content hash
+ * seen last time. If size and time still match the stored hash is used directly.
+ *
+ * Entries are written to a temporary file and moved in place, so several processes can share
+ * the cache. Reading an entry updates its modification time, which is used to evict the least
+ * recently used entries when the cache grows over its limit.
+ */
+public class ResultCache {
+    private static final int ENTRY_MAGIC = 0x50454643;
+    private static final int ENTRY_VERSION = 1;
+    private static final int TIMINGS_MAGIC = 0x50454654;
+
+    /**
+     * Number of stores between checks of the cache size.
+     */
+    private static final int EVICTION_INTERVAL = 64;
+
+    private final Path indexDirectory;
+    private final Path resultDirectory;
+    private final Path lockFile;
+    private final Path timingsFile;
+    private final int maxEntries;
+    private final String validatorVersion;
+
+    private int storesSinceEviction = 0;
+
+    /**
+     * @param directory     Directory of the cache, created if missing.
+     * @param maxEntries    Maximum number of results to keep.
+     * @throws IOException  Throws exception if the directory can't be created.
+     */
+    public ResultCache(File directory, int maxEntries) throws IOException {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one entry");
+        }
+        this.indexDirectory = directory.toPath().resolve("index");
+        this.resultDirectory = directory.toPath().resolve("results");
+        this.lockFile = directory.toPath().resolve("cache.lock");
+        this.timingsFile = directory.toPath().resolve("timings");
+        this.maxEntries = maxEntries;
+        String version = PEFCheck.class.getPackage().getImplementationVersion();
+        this.validatorVersion = (version == null ? "dev" : version) + "/" + ENTRY_VERSION + "/" + Rules.VERSION;
+        Files.createDirectories(indexDirectory);
+        Files.createDirectories(resultDirectory);
+    }
+
+    /**
+     * Look up the content hash of a file from the index, only valid if size and modification
+     * time haven't changed since it was stored.
+     *
+     * @param file  File to look up
+     * @return      The content hash or null if unknown or changed.
+     */
+    public String getKnownContentHash(File file) {
+        Path entry = indexDirectory.resolve(sha256(file.getAbsolutePath()));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            long size = in.readLong();
+            long modified = in.readLong();
+            String contentHash = in.readUTF();
+            if (size != file.length() || modified != file.lastModified()) {
+                return null;
+            }
+            touch(entry);
+            return contentHash;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param file  File to check
+     * @return      True if the index has seen the path before, even if it has changed since.
+     */
+    public boolean isIndexed(File file) {
+        return Files.exists(indexDirectory.resolve(sha256(file.getAbsolutePath())));
+    }
+
+    /**
+     * Hash the content of a file.
+     *
+     * @param file          File to hash
+     * @return              Hex encoded SHA-256 of the content.
+     * @throws IOException  Throws exception if the file can't be read.
+     */
+    public static String hashContent(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Get stored findings for a content hash.
+     *
+     * @param contentHash   Content hash of the file
+     * @param options       Options that affect the findings, like the number of title sections.
+     * @return              Findings without file names or null if not cached.
+     */
+    public List<Finding> get(String contentHash, String options) {
+        Path entry = resultDirectory.resolve(resultKey(contentHash, options));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != ENTRY_MAGIC || in.readInt() != ENTRY_VERSION) {
+                return null;
+            }
+            List<Finding> findings = readFindings(in);
+            touch(entry);
+            return findings;
+        } catch (IOException | RuntimeException e) {
+            // Missing, half written by an old version or removed by another process.
+            return null;
+        }
+    }
+
+    /**
+     * Store the findings of a file.
+     *
+     * @param file          The file, used to update the index
+     * @param size          Size of the file when it was read
+     * @param modified      Modification time of the file when it was read
+     * @param contentHash   Content hash of the file
+     * @param options       Options that affect the findings
+     * @param findings      Findings of the file
+     */
+    public void put(File file, long size, long modified, String contentHash, String options, List<Finding> findings) {
+        try {
+            writeAtomically(resultDirectory.resolve(resultKey(contentHash, options)), out -> {
+                out.writeInt(ENTRY_MAGIC);
+                out.writeInt(ENTRY_VERSION);
+                writeFindings(out, findings);
+            });
+            updateIndex(file, size, modified, contentHash);
+        } catch (IOException e) {
+            // The cache is only an optimization, a failed store means the file is validated next time.
+            return;
+        }
+
+        boolean evict;
+        synchronized (this) {
+            evict = ++storesSinceEviction >= EVICTION_INTERVAL;
+            if (evict) {
+                storesSinceEviction = 0;
+            }
+        }
+        if (evict) {
+            evict();
+        }
+    }
+
+    /**
+     * Remember the content hash of a file without storing findings.
+     */
+    public void updateIndex(File file, long size, long modified, String contentHash) {
+        try {
+            writeAtomically(indexDirectory.resolve(sha256(file.getAbsolutePath())), out -> {
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeUTF(contentHash);
+            });
+        } catch (IOException e) {
+            // Next run will hash the file again.
+        }
+    }
+
+    /**
+     * Add the time files took in earlier runs, see FileTimings.
+     */
+    void loadTimings(FileTimings timings) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(timingsFile)))) {
+            if (in.readInt() != TIMINGS_MAGIC) {
+                return;
+            }
+            timings.read(in);
+        } catch (IOException e) {
+            // No earlier run, files are scheduled by size.
+        }
+    }
+
+    /**
+     * Store the time files took for later runs. With several processes sharing the cache the
+     * last one to finish wins, the timings are only estimates.
+     */
+    void storeTimings(FileTimings timings) {
+        try {
+            writeAtomically(timingsFile, out -> {
+                out.writeInt(TIMINGS_MAGIC);
+                timings.write(out);
+            });
+        } catch (IOException e) {
+            // The next run schedules the files by size.
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache is within its limit. Only one
+     * process at a time evicts, others skip eviction while the lock is held.
+     */
+    public synchronized void evict() {
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+            evict(resultDirectory);
+            evict(indexDirectory);
+        } catch (IOException | OverlappingFileLockException e) {
+            // Try again on the next eviction.
+        }
+    }
+
+    private void evict(Path directory) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<FileTime> times = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        for (Path entry : entries) {
+            try {
+                times.add(Files.getLastModifiedTime(entry));
+            } catch (NoSuchFileException e) {
+                times.add(FileTime.fromMillis(0));
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> times.get(a).compareTo(times.get(b)));
+
+        // Leave some room so we don't evict on every store.
+        int remove = entries.size() - maxEntries + maxEntries / 10;
+        for (int i = 0; i < remove && i < order.size(); i++) {
+            try {
+                Files.deleteIfExists(entries.get(order.get(i)));
+            } catch (IOException e) {
+                // Possibly in use by another process, it will be removed later.
+            }
+        }
+    }
+
+    private String resultKey(String contentHash, String options) {
+        return sha256(contentHash + "|" + validatorVersion + "|" + options);
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void writeAtomically(Path target, EntryWriter writer) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".entry", ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                writer.write(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects the eviction order.
+        }
+    }
+
+    /**
+     * Write findings without their file names, also used by the progress journal.
+     */
+    static void writeFindings(DataOutputStream out, List<Finding> findings) throws IOException {
+        out.writeInt(findings.size());
+        for (Finding finding : findings) {
+            out.writeByte(finding.getKind().ordinal());
+            out.writeInt(finding.getVolume());
+            out.writeInt(finding.getSection());
+            out.writeInt(finding.getPage());
+            writeNullable(out, finding.getPrintablePage());
+            out.writeInt(finding.getPreviousPage());
+            writeNullable(out, finding.getPrintablePreviousPage());
+            out.writeBoolean(finding.isIndexPage());
+            writeNullable(out, finding.getMessage());
+        }
+    }
+
+    /**
+     * Read findings written by writeFindings, the file names are null.
+     */
+    static List<Finding> readFindings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Finding> findings = new ArrayList<>(count);
+        FindingKind[] kinds = FindingKind.values();
+        for (int i = 0; i < count; i++) {
+            FindingKind kind = kinds[in.readByte()];
+            int volume = in.readInt();
+            int section = in.readInt();
+            int page = in.readInt();
+            String printablePage = readNullable(in);
+            int previousPage = in.readInt();
+            String printablePreviousPage = readNullable(in);
+            boolean indexPage = in.readBoolean();
+            String message = readNullable(in);
+            findings.add(new Finding(null, volume, section, kind, page, printablePage,
+                    previousPage, printablePreviousPage, indexPage, message));
+        }
+        return findings;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by the Java platform", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        final char[] hex = "0123456789abcdef".toCharArray();
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = hex[(bytes[i] >> 4) & 0xf];
+            result[i * 2 + 1] = hex[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    private static String sha256(String value) {
+        return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
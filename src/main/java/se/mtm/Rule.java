@@ -0,0 +1,46 @@
+package se.mtm;
+
+/**
+ * A check of a PEF document. Rules are visitors over the volumes, sections and pages of a
+ * document and all enabled rules are run together in one pass, by the DOM walk as well as the
+ * streaming engine. Findings are reported through the context.
+ *
+ * Only the sections and pages that are checked are visited: title sections, print information
+ * sections at the end of the book and notes pages are skipped by the walk. A new instance is
+ * created for each document, see Rules.register, so rules can keep state in fields.
+ */
+public interface Rule {
+
+    default void startDocument(RuleContext context) throws InvalidFormatException {}
+
+    default void startVolume(RuleContext context) throws InvalidFormatException {}
+
+    /**
+     * @param context       Context of the document
+     * @param indexSection  True if the pages of the section use roman numbers
+     */
+    default void startSection(RuleContext context, boolean indexSection) throws InvalidFormatException {}
+
+    /**
+     * Called for every page of the section.
+     *
+     * @param context   Context of the document
+     * @param page      The page, the object is reused for the next page and must be copied to
+     *                  be kept.
+     */
+    default void page(RuleContext context, PageIdentifiers page) throws InvalidFormatException {}
+
+    default void endSection(RuleContext context) throws InvalidFormatException {}
+
+    default void endVolume(RuleContext context) throws InvalidFormatException {}
+
+    default void endDocument(RuleContext context) throws InvalidFormatException {}
+
+    /**
+     * @return  True if the rule only looks at one volume at a time, so the volumes of a file
+     *          can be checked in parallel, see VolumeSplitter.
+     */
+    default boolean isVolumeIndependent() {
+        return false;
+    }
+}
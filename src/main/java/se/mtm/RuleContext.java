@@ -0,0 +1,75 @@
+package se.mtm;
+
+/**
+ * What a rule can see of the document being checked and how it reports findings. Findings are
+ * reported at the current volume and section.
+ */
+public final class RuleContext {
+    private final PEFCheck pefCheck;
+
+    RuleContext(PEFCheck pefCheck) {
+        this.pefCheck = pefCheck;
+    }
+
+    /**
+     * @return  Number of the current volume, starting at 1.
+     */
+    public int getVolume() {
+        return pefCheck.getCurrentVolume();
+    }
+
+    /**
+     * @return  Number of the current section in the volume, starting at 1.
+     */
+    public int getSection() {
+        return pefCheck.getCurrentSection();
+    }
+
+    /**
+     * @return  Number of issues reported for the document so far.
+     */
+    public int getIssueCount() {
+        return pefCheck.getIssueCount();
+    }
+
+    /**
+     * Report pages missing between two pages.
+     *
+     * @param pefPage       The page after the missing pages
+     * @param previousPage  The page before the missing pages
+     * @param indexPage     True if the pages are index pages
+     */
+    public void reportMissingPages(int pefPage, int previousPage, boolean indexPage) {
+        pefCheck.reportMissingPages(pefPage, previousPage, indexPage);
+    }
+
+    /**
+     * Report a page without content.
+     *
+     * @param pefPage       The empty page
+     * @param indexPage     True if the page is an index page
+     */
+    public void reportEmptyPage(int pefPage, boolean indexPage) {
+        pefCheck.reportEmptyPage(pefPage, indexPage);
+    }
+
+    /**
+     * Report a finding of any kind.
+     *
+     * @param kind          Kind of finding
+     * @param page          Page of the finding, -1 if none
+     * @param previousPage  Page before the finding, -1 if none
+     * @param indexPage     True if the pages are written with roman numbers
+     * @param message       Description, may be null
+     */
+    public void report(FindingKind kind, int page, int previousPage, boolean indexPage, String message) {
+        pefCheck.report(kind, page, previousPage, indexPage, message);
+    }
+
+    /**
+     * @return  The page number the way it is written in the book, like #ad or __iv.
+     */
+    public String getPefPageNumber(int page, boolean indexPage) {
+        return pefCheck.getPefPageNumber(page, indexPage);
+    }
+}
@@ -0,0 +1,111 @@
+package se.mtm;
+
+import java.util.List;
+
+/**
+ * Runs the enabled rules of one document. The walk calls the engine for each event and the
+ * engine passes it on to every rule in order.
+ */
+class RuleEngine {
+    private final Rule[] rules;
+    private final PEFCheck pefCheck;
+    private final RuleContext context;
+
+    /**
+     * Flight recorder events of the current volume and section, null when not recorded.
+     */
+    private Object volumeEvent;
+    private Object sectionEvent;
+    private int volumeSections;
+    private int volumePages;
+    private int sectionPages;
+    private boolean indexSection;
+
+    RuleEngine(PEFCheck pefCheck, List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.pefCheck = pefCheck;
+        this.context = new RuleContext(pefCheck);
+    }
+
+    void startDocument() throws InvalidFormatException {
+        for (Rule rule : rules) {
+            rule.startDocument(context);
+        }
+    }
+
+    void startVolume() throws InvalidFormatException {
+        volumeEvent = ValidationEvents.beginVolume();
+        volumeSections = 0;
+        volumePages = 0;
+        for (Rule rule : rules) {
+            rule.startVolume(context);
+        }
+    }
+
+    void startSection(boolean indexSection) throws InvalidFormatException {
+        sectionEvent = ValidationEvents.beginSection();
+        sectionPages = 0;
+        this.indexSection = indexSection;
+        for (Rule rule : rules) {
+            rule.startSection(context, indexSection);
+        }
+    }
+
+    void page(PageIdentifiers page) throws InvalidFormatException {
+        sectionPages++;
+        for (Rule rule : rules) {
+            rule.page(context, page);
+        }
+    }
+
+    void endSection() throws InvalidFormatException {
+        for (Rule rule : rules) {
+            rule.endSection(context);
+        }
+        ValidationEvents.endSection(sectionEvent, pefCheck.getCurrentFile(), pefCheck.getCurrentVolume(),
+                pefCheck.getCurrentSection(), sectionPages, indexSection);
+        sectionEvent = null;
+        volumeSections++;
+        volumePages += sectionPages;
+    }
+
+    void endVolume() throws InvalidFormatException {
+        for (Rule rule : rules) {
+            rule.endVolume(context);
+        }
+        ValidationEvents.endVolume(volumeEvent, pefCheck.getCurrentFile(), pefCheck.getCurrentVolume(),
+                volumeSections, volumePages);
+        volumeEvent = null;
+    }
+
+    void endDocument() throws InvalidFormatException {
+        for (Rule rule : rules) {
+            rule.endDocument(context);
+        }
+    }
+
+    /**
+     * @return  The first enabled rule of the type or null.
+     */
+    <T extends Rule> T getRule(Class<T> type) {
+        for (Rule rule : rules) {
+            if (type.isInstance(rule)) {
+                return type.cast(rule);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return  True if the volumes of a document can be checked in parallel with these rules,
+     *          the page sequence is put together by VolumeSplitter.
+     */
+    boolean isVolumeIndependent() {
+        for (Rule rule : rules) {
+            if (!(rule instanceof PageSequenceRule) && !rule.isVolumeIndependent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package se.mtm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The rules that can be enabled by name. The built in rules are registered from the start,
+ * other rules can be added with register before they are enabled.
+ */
+public final class Rules {
+    public static final String PAGE_SEQUENCE = "page-sequence";
+    public static final String EMPTY_PAGES = "empty-pages";
+    public static final String ORIGINAL_PAGES = "original-pages";
+
+    /**
+     * Version of the findings of the built in rules and of the page number decoding, part of
+     * the key of cached results. Raise it when a change makes the same file report other
+     * findings, so results stored by earlier versions are not used.
+     */
+    static final int VERSION = 1;
+
+    private static final Map<String, Supplier<Rule>> RULES = new LinkedHashMap<>();
+
+    static {
+        register(PAGE_SEQUENCE, PageSequenceRule::new);
+        register(EMPTY_PAGES, EmptyPagesRule::new);
+        register(ORIGINAL_PAGES, OriginalPageRule::new);
+    }
+
+    private Rules() {}
+
+    /**
+     * Make a rule available by name.
+     *
+     * @param name      Name to enable the rule with
+     * @param factory   Creates a new instance of the rule for each document
+     */
+    public static synchronized void register(String name, Supplier<Rule> factory) {
+        if (name.isEmpty() || name.indexOf(',') != -1) {
+            throw new IllegalArgumentException("Incorrect rule name " + name);
+        }
+        RULES.put(name, factory);
+    }
+
+    /**
+     * @return  Names of all registered rules.
+     */
+    public static synchronized List<String> getNames() {
+        return new ArrayList<>(RULES.keySet());
+    }
+
+    /**
+     * @return  Names of the rules enabled when nothing else is chosen.
+     */
+    public static List<String> getDefaults() {
+        return Collections.unmodifiableList(Arrays.asList(PAGE_SEQUENCE, EMPTY_PAGES));
+    }
+
+    /**
+     * Parse a comma separated list of rule names.
+     *
+     * @param names                     The names
+     * @return                          The names in the order given
+     * @throws IllegalArgumentException Throws exception if a rule is unknown.
+     */
+    public static List<String> parse(String names) {
+        List<String> result = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            check(name);
+            if (!result.contains(name)) {
+                result.add(name);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No rules given");
+        }
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException Throws exception if no rule is registered by the name.
+     */
+    static synchronized void check(String name) {
+        if (!RULES.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown rule " + name + ", available rules: " + String.join(", ", RULES.keySet()));
+        }
+    }
+
+    /**
+     * @return  A new instance of the rule.
+     */
+    static Rule create(String name) {
+        Supplier<Rule> factory;
+        synchronized (Rules.class) {
+            factory = RULES.get(name);
+        }
+        if (factory == null) {
+            check(name);
+        }
+        return factory.get();
+    }
+}
@@ -0,0 +1,77 @@
+package se.mtm;
+
+import java.io.Writer;
+
+/**
+ * Writes findings as human readable text, the format PEFCheck has always used.
+ */
+public class TextFindingsWriter extends AbstractFindingsWriter {
+
+    public TextFindingsWriter(Writer out) {
+        super(out);
+    }
+
+    /**
+     * @param out       Where the findings are written.
+     * @param autoFlush True if every line should be flushed directly.
+     */
+    public TextFindingsWriter(Writer out, boolean autoFlush) {
+        super(out, autoFlush);
+    }
+
+    @Override
+    public void startFile(String file) {
+        writeLine(fileLine(file));
+    }
+
+    @Override
+    public void write(Finding finding) {
+        writeLine(format(finding));
+    }
+
+    @Override
+    public void endFile(String file, int issues, boolean failed) {
+        writeLine("Done " + file + ": " + (failed ? "failed" : issues == 0 ? "ok" : issues + " issue(s)"));
+    }
+
+    @Override
+    protected String lineSeparator() {
+        return System.lineSeparator();
+    }
+
+    static String fileLine(String file) {
+        return "Checking file " + file;
+    }
+
+    /**
+     * Present a finding as a line of text.
+     *
+     * @param finding   Finding to present.
+     * @return          Text presenting the finding.
+     */
+    static String format(Finding finding) {
+        switch (finding.getKind()) {
+            case MISSING_PAGES:
+                return "--- Missing page(s) between " +
+                        finding.getPrintablePreviousPage() + " (" + finding.getPreviousPage() + ")" +
+                        " and " + finding.getPrintablePage() + " (" + finding.getPage() + ")" +
+                        (finding.getCount() > 1 ? ", " + finding.getCount() + " gaps" : "");
+            case EMPTY_PAGE:
+                if (finding.getFirstPage() != -1) {
+                    return "--- Empty pages " +
+                            finding.getPrintableFirstPage() + " (" + finding.getFirstPage() + ")" +
+                            " to " + finding.getPrintablePage() + " (" + finding.getPage() + ")";
+                }
+                return "--- Empty page " + finding.getPrintablePage() + " (" + finding.getPage() + ")";
+            case ORIGINAL_PAGES:
+                return "--- Original page(s) " + finding.getMessage() + " between " +
+                        finding.getPrintablePreviousPage() + " (" + finding.getPreviousPage() + ")" +
+                        " and " + finding.getPrintablePage() + " (" + finding.getPage() + ")" +
+                        (finding.getCount() > 1 ? ", " + finding.getCount() + " times" : "");
+            case SUPPRESSED:
+                return "--- " + finding.getCount() + " more finding(s) suppressed: " + finding.getMessage();
+            default:
+                return "--- Could not process file: " + finding.getMessage();
+        }
+    }
+}
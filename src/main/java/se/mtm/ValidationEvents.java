@@ -0,0 +1,71 @@
+package se.mtm;
+
+/**
+ * Java Flight Recorder events for the phases of a validation: one event per file, volume and
+ * section with its duration and size, and one event per finding. Slow books can then be seen
+ * next to the GC and I/O of the same recording.
+ *
+ * The events are defined in JfrEvents, which looks up jdk.jfr through reflection, so PEFCheck
+ * still builds for and runs on Java 8 without the flight recorder. When no recording is running
+ * the calls return early without recording anything.
+ */
+final class ValidationEvents {
+    private static final JfrEvents RECORDER = JfrEvents.create();
+
+    private ValidationEvents() {}
+
+    /**
+     * @return  True if the flight recorder is available in this JVM.
+     */
+    static boolean isAvailable() {
+        return RECORDER != null;
+    }
+
+    /**
+     * @return  A started file event, or null if file events are not recorded.
+     */
+    static Object beginFile() {
+        return RECORDER != null ? RECORDER.beginFile() : null;
+    }
+
+    static void endFile(Object event, String file, long bytes, int volumes, int sections, int pages, int findings) {
+        if (event != null) {
+            RECORDER.endFile(event, file, bytes, volumes, sections, pages, findings);
+        }
+    }
+
+    /**
+     * @return  A started volume event, or null if volume events are not recorded.
+     */
+    static Object beginVolume() {
+        return RECORDER != null ? RECORDER.beginVolume() : null;
+    }
+
+    static void endVolume(Object event, String file, int volume, int sections, int pages) {
+        if (event != null) {
+            RECORDER.endVolume(event, file, volume, sections, pages);
+        }
+    }
+
+    /**
+     * @return  A started section event, or null if section events are not recorded.
+     */
+    static Object beginSection() {
+        return RECORDER != null ? RECORDER.beginSection() : null;
+    }
+
+    static void endSection(Object event, String file, int volume, int section, int pages, boolean indexSection) {
+        if (event != null) {
+            RECORDER.endSection(event, file, volume, section, pages, indexSection);
+        }
+    }
+
+    /**
+     * Record a finding as it is reported.
+     */
+    static void finding(Finding finding) {
+        if (RECORDER != null) {
+            RECORDER.finding(finding);
+        }
+    }
+}
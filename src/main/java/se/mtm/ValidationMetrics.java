@@ -0,0 +1,251 @@
+package se.mtm;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of a validation run. All counters are LongAdders, so workers can update
+ * them without contending, and the values are only summed when read.
+ *
+ * Time is kept per phase. Parsing is the time spent reading the document and validating is
+ * the time spent checking page numbers and empty pages. When a file is streamed the two are
+ * interleaved, the validation calls are timed and the rest of the file is counted as parsing.
+ */
+public class ValidationMetrics implements ValidationMetricsMBean {
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder volumes = new LongAdder();
+    private final LongAdder sections = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder[] findings = new LongAdder[FindingKind.values().length];
+    private final Timer parse = new Timer();
+    private final Timer validate = new Timer();
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Number of calls and total and longest time of a phase.
+     */
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+
+    public ValidationMetrics() {
+        for (int i = 0; i < findings.length; i++) {
+            findings[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Publish the metrics in the platform MBean server.
+     *
+     * @param name          Name of the metrics, used in the object name se.mtm:type=ValidationMetrics,name=...
+     * @return              The object name the metrics were registered with.
+     * @throws JMException  Throws exception if the name is taken or invalid.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("se.mtm:type=ValidationMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    void fileProcessed() {
+        filesProcessed.increment();
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void structure(int volumeCount, int sectionCount, int pageCount) {
+        volumes.add(volumeCount);
+        sections.add(sectionCount);
+        pages.add(pageCount);
+    }
+
+    void finding(FindingKind kind) {
+        findings[kind.ordinal()].increment();
+    }
+
+    /**
+     * Take back a finding that was counted but never reported.
+     */
+    void discardFinding(FindingKind kind) {
+        findings[kind.ordinal()].decrement();
+    }
+
+    void parsed(long nanos) {
+        parse.record(nanos);
+    }
+
+    void validated(long nanos) {
+        validate.record(nanos);
+    }
+
+    @Override
+    public long getFilesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getVolumes() {
+        return volumes.sum();
+    }
+
+    @Override
+    public long getSections() {
+        return sections.sum();
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getMissingPageFindings() {
+        return findings[FindingKind.MISSING_PAGES.ordinal()].sum();
+    }
+
+    @Override
+    public long getEmptyPageFindings() {
+        return findings[FindingKind.EMPTY_PAGE.ordinal()].sum();
+    }
+
+    @Override
+    public long getErrorFindings() {
+        return findings[FindingKind.ERROR.ordinal()].sum();
+    }
+
+    @Override
+    public long getOriginalPageFindings() {
+        return findings[FindingKind.ORIGINAL_PAGES.ordinal()].sum();
+    }
+
+    @Override
+    public long getParseCount() {
+        return parse.count.sum();
+    }
+
+    @Override
+    public double getParseTimeMillis() {
+        return toMillis(parse.totalNanos.sum());
+    }
+
+    @Override
+    public double getMaxParseTimeMillis() {
+        return toMillis(parse.maxNanos.get());
+    }
+
+    @Override
+    public long getValidateCount() {
+        return validate.count.sum();
+    }
+
+    @Override
+    public double getValidateTimeMillis() {
+        return toMillis(validate.totalNanos.sum());
+    }
+
+    @Override
+    public double getMaxValidateTimeMillis() {
+        return toMillis(validate.maxNanos.get());
+    }
+
+    /**
+     * @return  Pages per second of wall clock time since the metrics were created or reset.
+     */
+    @Override
+    public double getPagesPerSecond() {
+        return getPages() / elapsedSeconds();
+    }
+
+    /**
+     * @return  Megabytes read per second of wall clock time since the metrics were created or reset.
+     */
+    @Override
+    public double getMegabytesPerSecond() {
+        return getBytesRead() / (1024.0 * 1024.0) / elapsedSeconds();
+    }
+
+    @Override
+    public void reset() {
+        filesProcessed.reset();
+        cacheHits.reset();
+        bytesRead.reset();
+        volumes.reset();
+        sections.reset();
+        pages.reset();
+        for (LongAdder finding : findings) {
+            finding.reset();
+        }
+        parse.reset();
+        validate.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return  Summary of the metrics for the end of a run.
+     */
+    public String summary() {
+        return String.format(Locale.ROOT,
+                "Processed %d file(s) (%d from cache), %.1f MB, %d volume(s), %d section(s), %d page(s)%n" +
+                "Findings: %d missing page(s), %d empty page(s), %d original page gap(s), %d error(s)%n" +
+                "Parse: %d in %.1f ms (max %.1f ms), validate: %d in %.1f ms (max %.1f ms)%n" +
+                "Throughput: %.0f pages/s, %.1f MB/s",
+                getFilesProcessed(), getCacheHits(), getBytesRead() / (1024.0 * 1024.0),
+                getVolumes(), getSections(), getPages(),
+                getMissingPageFindings(), getEmptyPageFindings(), getOriginalPageFindings(), getErrorFindings(),
+                getParseCount(), getParseTimeMillis(), getMaxParseTimeMillis(),
+                getValidateCount(), getValidateTimeMillis(), getMaxValidateTimeMillis(),
+                getPagesPerSecond(), getMegabytesPerSecond());
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(System.nanoTime() - startNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,47 @@
+package se.mtm;
+
+/**
+ * Management interface of ValidationMetrics, published over JMX.
+ */
+public interface ValidationMetricsMBean {
+    long getFilesProcessed();
+
+    long getCacheHits();
+
+    long getBytesRead();
+
+    long getVolumes();
+
+    long getSections();
+
+    long getPages();
+
+    long getMissingPageFindings();
+
+    long getEmptyPageFindings();
+
+    long getErrorFindings();
+
+    long getOriginalPageFindings();
+
+    long getParseCount();
+
+    double getParseTimeMillis();
+
+    double getMaxParseTimeMillis();
+
+    long getValidateCount();
+
+    double getValidateTimeMillis();
+
+    double getMaxValidateTimeMillis();
+
+    double getPagesPerSecond();
+
+    double getMegabytesPerSecond();
+
+    /**
+     * Start counting from zero again.
+     */
+    void reset();
+}
@@ -0,0 +1,330 @@
+package se.mtm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validation over HTTP, so other services can check a book without starting a new JVM.
+ *
+ * POST /validate with a PEF document as body, or with ?path= pointing to a file below the root
+ * directory, returns the findings of the document. The format is chosen with ?format= and is
+ * JSON Lines by default, the number of issues is also given in the X-PEFCheck-Issues header.
+ * Documents that can't be processed give 422 with the error as a finding.
+ *
+ * Each request runs on a virtual thread when the JDK has them and on a fixed pool otherwise.
+ * At most maxConcurrent requests are validated at the same time, requests over the limit are
+ * answered with 503 straight away instead of being queued.
+ */
+public class ValidationServer {
+    private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<>();
+
+    /**
+     * Rejected exchanges waiting for the reject thread, more are answered on the dispatcher thread.
+     */
+    private static final int REJECT_QUEUE = 64;
+
+    private final File root;
+    private final int maxConcurrent;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService rejectExecutor;
+    private final boolean virtualThreads;
+
+    private final ValidationSession session;
+
+    /**
+     * @param root          Directory that files given by path must be in
+     * @param port          Port to listen to on the loopback interface, 0 for any free port
+     * @param maxConcurrent Number of requests to validate at the same time
+     * @throws IOException  Throws exception if the port can't be opened.
+     */
+    public ValidationServer(File root, int port, int maxConcurrent) throws IOException {
+        this(root, port, maxConcurrent, new ValidationSession());
+    }
+
+    /**
+     * @param root          Directory that files given by path must be in
+     * @param port          Port to listen to on the loopback interface, 0 for any free port
+     * @param maxConcurrent Number of requests to validate at the same time
+     * @param session       Session with the parser resources and options used for all requests
+     * @throws IOException  Throws exception if the port can't be opened.
+     */
+    public ValidationServer(File root, int port, int maxConcurrent, ValidationSession session) throws IOException {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed");
+        }
+        this.root = root.getCanonicalFile();
+        this.maxConcurrent = maxConcurrent;
+        this.session = session;
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.requestExecutor = virtual != null
+                ? virtual
+                : Executors.newFixedThreadPool(maxConcurrent, daemonThreads("pefcheck-request"));
+        // Rejected requests still need their headers read and an answer, they get their own thread.
+        this.rejectExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REJECT_QUEUE), daemonThreads("pefcheck-reject"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/validate", this::handleValidate);
+        server.createContext("/health", this::handleHealth);
+        server.setExecutor(new LimitingExecutor());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and wait a short while for the requests in progress.
+     */
+    public void stop() {
+        server.stop(1);
+        requestExecutor.shutdown();
+        rejectExecutor.shutdown();
+        try {
+            requestExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return  The port the server listens to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return  True if requests run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            if (Boolean.TRUE.equals(OVERLOADED.get())) {
+                sendOverloaded(exchange);
+                return;
+            }
+            send(exchange, 200, "text/plain; charset=utf-8", "ok\n".getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleValidate(HttpExchange exchange) throws IOException {
+        try {
+            if (Boolean.TRUE.equals(OVERLOADED.get())) {
+                sendOverloaded(exchange);
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (!method.equals("POST") && !method.equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendText(exchange, 405, "Use POST with a PEF document or a path");
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            FindingsFormat format;
+            try {
+                format = query.containsKey("format") ? FindingsFormat.fromName(query.get("format")) : FindingsFormat.JSONL;
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+
+            String path = query.get("path");
+            File file = null;
+            if (path != null) {
+                file = resolve(path);
+                if (file == null) {
+                    sendText(exchange, 403, "Path is outside of " + root);
+                    return;
+                }
+                if (!file.isFile()) {
+                    sendText(exchange, 404, "No such file " + path);
+                    return;
+                }
+            } else if (method.equals("GET")) {
+                sendText(exchange, 400, "Send a PEF document with POST or give a path");
+                return;
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            FindingsWriter findingsWriter = format.newWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+            findingsWriter.writeHeader();
+            PEFCheck pefCheck = session.newCheck(findingsWriter);
+            String name = file != null ? file.getName() : query.getOrDefault("name", "request.xml");
+            int status = 200;
+            try {
+                if (file != null) {
+                    pefCheck.processFile(file);
+                } else {
+                    pefCheck.processStream(name, exchange.getRequestBody());
+                }
+            } catch (Exception e) {
+                pefCheck.reportError(name, e.toString().replaceAll("\\s*\\R\\s*", " "));
+                status = 422;
+            }
+            findingsWriter.flush();
+
+            exchange.getResponseHeaders().set("X-PEFCheck-Issues", Integer.toString(pefCheck.getIssueCount()));
+            send(exchange, status, contentType(format), buffer.toByteArray());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Resolve a path from a request, relative paths are relative to the root.
+     *
+     * @return  The file or null if it isn't below the root directory.
+     */
+    private File resolve(String path) throws IOException {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(root, path);
+        }
+        file = file.getCanonicalFile();
+        if (!file.getPath().startsWith(root.getPath() + File.separator)) {
+            return null;
+        }
+        return file;
+    }
+
+    private static void sendOverloaded(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, 503, "Too many requests in progress");
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static String contentType(FindingsFormat format) {
+        switch (format) {
+            case JSONL:
+                return "application/x-ndjson; charset=utf-8";
+            case CSV:
+                return "text/csv; charset=utf-8";
+            default:
+                return "text/plain; charset=utf-8";
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> result = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq == -1 ? pair : pair.substring(0, eq);
+            String value = eq == -1 ? "" : pair.substring(eq + 1);
+            result.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return result;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor is looked up at runtime so the server still
+     * runs on Java 8.
+     *
+     * @return  An executor starting a virtual thread per task or null if not available.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Takes a permit for each exchange before it is handed to a request thread. Exchanges
+     * without a permit are answered with 503 on the reject thread, or on the dispatcher thread
+     * when the short queue of the reject thread is full, so a full server never starts more
+     * threads or builds up a long queue.
+     */
+    private class LimitingExecutor implements Executor {
+        private final Semaphore permits = new Semaphore(maxConcurrent);
+
+        @Override
+        public void execute(Runnable exchange) {
+            if (permits.tryAcquire()) {
+                try {
+                    requestExecutor.execute(() -> {
+                        try {
+                            exchange.run();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                return;
+            }
+            rejectExecutor.execute(() -> {
+                OVERLOADED.set(Boolean.TRUE);
+                try {
+                    exchange.run();
+                } finally {
+                    OVERLOADED.remove();
+                }
+            });
+        }
+    }
+}
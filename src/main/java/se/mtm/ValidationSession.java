@@ -0,0 +1,265 @@
+package se.mtm;
+
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.File;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parser resources and options shared by all files of a run. Factories are created once,
+ * document builders and compiled XPath expressions are kept in pools and borrowed for one file
+ * at a time, so a session can be used from any number of threads without paying the setup cost
+ * for every file.
+ *
+ * The options are chosen when the session is created and can't be changed, a run with other
+ * options uses a session of its own.
+ *
+ * Pooled resources are borrowed rather than kept per thread, so they are also reused when each
+ * file runs on a new thread, like the virtual threads of the validation service.
+ */
+public class ValidationSession {
+    private static final ValidationSession DEFAULT = new ValidationSession();
+
+    /**
+     * Number of idle resources of each kind kept for later files.
+     */
+    private static final int MAX_IDLE = 64;
+
+    private final DocumentBuilderFactory builderFactory;
+    private final XPathFactory xPathFactory;
+    private final Pool<DocumentBuilder> builders = new Pool<>();
+    private final Pool<Expressions> expressions = new Pool<>();
+    private final ValidationMetrics metrics = new ValidationMetrics();
+    private final FileTimings timings = new FileTimings();
+
+    private final CheckOptions options;
+    private final int volumeThreads;
+    private ExecutorService volumeExecutor;
+
+    /**
+     * Compiled expressions used by processDocument. XPathExpression is not thread safe, each
+     * instance is only used by one file at a time.
+     */
+    static class Expressions {
+        final XPathExpression volumes;
+        final XPathExpression sections;
+        final XPathExpression rows;
+
+        private Expressions(XPath xPath) throws XPathExpressionException {
+            volumes = xPath.compile("//volume");
+            sections = xPath.compile("./section");
+            rows = xPath.compile("./row");
+        }
+    }
+
+    public ValidationSession() {
+        this(CheckOptions.defaults(), 0);
+    }
+
+    /**
+     * Create a session with options of its own. With volume threads the volumes of each file
+     * are validated in parallel, see VolumeSplitter, files that can't be split are validated
+     * as usual.
+     *
+     * @param options       Options of the checkers created by the session.
+     * @param volumeThreads Number of threads to validate volumes on, 0 to validate each file
+     *                      on one thread.
+     */
+    public ValidationSession(CheckOptions options, int volumeThreads) {
+        if (volumeThreads < 0) {
+            throw new IllegalArgumentException("Number of volume threads can't be negative");
+        }
+        this.options = options;
+        this.volumeThreads = volumeThreads;
+        builderFactory = DocumentBuilderFactory.newInstance();
+        xPathFactory = XPathFactory.newInstance();
+        if (options.getResultCache() != null) {
+            options.getResultCache().loadTimings(timings);
+        }
+    }
+
+    /**
+     * @return  Session used by PEFCheck instances created without one.
+     */
+    public static ValidationSession getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Create a checker that uses the resources and options of this session.
+     *
+     * @param findingsWriter    Writer to report findings to.
+     * @return                  A new checker, see PEFCheck for sharing it between threads.
+     */
+    public PEFCheck newCheck(FindingsWriter findingsWriter) {
+        return new PEFCheck(findingsWriter, this);
+    }
+
+    /**
+     * Create a checker that uses the resources of this session with other options.
+     *
+     * @param findingsWriter    Writer to report findings to.
+     * @param options           Options to validate with.
+     * @return                  A new checker, see PEFCheck for sharing it between threads.
+     */
+    public PEFCheck newCheck(FindingsWriter findingsWriter, CheckOptions options) {
+        return new PEFCheck(findingsWriter, this, options);
+    }
+
+    /**
+     * @return  The options used by checkers created with newCheck.
+     */
+    public CheckOptions getCheckOptions() {
+        return options;
+    }
+
+    /**
+     * Validate a file the same way as PEFCheck.processFile.
+     *
+     * @param file              File to validate
+     * @param findingsWriter    Writer to report findings to
+     * @return                  Number of issues found in the file
+     * @throws Exception        Throws exceptions when the document is not well formatted.
+     */
+    public int processFile(File file, FindingsWriter findingsWriter) throws Exception {
+        PEFCheck pefCheck = newCheck(findingsWriter);
+        pefCheck.processFile(file);
+        return pefCheck.getIssueCount();
+    }
+
+    /**
+     * Validate a file the same way as PEFCheck.processFileWithDocument.
+     *
+     * @param file              File to validate
+     * @param findingsWriter    Writer to report findings to
+     * @return                  Number of issues found in the file
+     * @throws Exception        Throws exceptions when the document is not well formatted.
+     */
+    public int processFileWithDocument(File file, FindingsWriter findingsWriter) throws Exception {
+        PEFCheck pefCheck = newCheck(findingsWriter);
+        pefCheck.processFileWithDocument(file);
+        return pefCheck.getIssueCount();
+    }
+
+    /**
+     * Parse a file into a normalized document with a pooled builder.
+     */
+    Document parse(File file) throws Exception {
+        DocumentBuilder builder = builders.borrow();
+        if (builder == null) {
+            builder = newDocumentBuilder();
+        }
+        try {
+            Document document = builder.parse(file);
+            document.normalize();
+            return document;
+        } finally {
+            builder.reset();
+            builders.release(builder);
+        }
+    }
+
+    /**
+     * Borrow compiled expressions, they must be given back with releaseExpressions.
+     */
+    Expressions borrowExpressions() throws XPathExpressionException {
+        Expressions borrowed = expressions.borrow();
+        if (borrowed != null) {
+            return borrowed;
+        }
+        XPath xPath;
+        synchronized (xPathFactory) {
+            xPath = xPathFactory.newXPath();
+        }
+        return new Expressions(xPath);
+    }
+
+    void releaseExpressions(Expressions released) {
+        expressions.release(released);
+    }
+
+    private DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        synchronized (builderFactory) {
+            return builderFactory.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * @return  Metrics of all files validated with this session.
+     */
+    public ValidationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getVolumeThreads() {
+        return volumeThreads;
+    }
+
+    /**
+     * @return  Time taken by the files validated so far, used to schedule the next ones.
+     */
+    FileTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Keep the timings in the result cache for later runs, if the session has a cache.
+     */
+    void storeTimings() {
+        if (options.getResultCache() != null) {
+            options.getResultCache().storeTimings(timings);
+        }
+    }
+
+    /**
+     * @return  Executor for the volumes of all files of the session, created when first used.
+     */
+    synchronized ExecutorService getVolumeExecutor() {
+        if (volumeExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            volumeExecutor = Executors.newFixedThreadPool(Math.max(volumeThreads, 1), runnable -> {
+                Thread thread = new Thread(runnable, "pefcheck-volume-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return volumeExecutor;
+    }
+
+    /**
+     * Idle resources that any thread can borrow.
+     */
+    private static class Pool<T> {
+        private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        /**
+         * @return  An idle resource or null if a new one must be created.
+         */
+        T borrow() {
+            T resource = idle.poll();
+            if (resource != null) {
+                idleCount.decrementAndGet();
+            }
+            return resource;
+        }
+
+        void release(T resource) {
+            if (idleCount.incrementAndGet() <= MAX_IDLE) {
+                idle.offer(resource);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+}
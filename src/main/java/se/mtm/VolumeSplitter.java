@@ -0,0 +1,367 @@
+package se.mtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Validates the volumes of one large file in parallel. The volume boundaries are found by
+ * scanning the raw bytes, each volume is then parsed on its own worker and the results are
+ * put back together in order.
+ *
+ * Everything except the first content page of a volume can be checked without knowing the
+ * volumes before it, index pages are numbered per volume. The first content page is checked
+ * when the volumes are put together, against the last content page of the volumes before. A
+ * print information section that isn't in the last volume is reported at the same place as
+ * by the sequential walk, so the findings are the same.
+ *
+ * Only plain UTF-8 documents are split. Comments, CDATA sections, prefixed volumes, other
+ * encodings or rules that look across volumes make the caller validate the file sequentially.
+ */
+class VolumeSplitter {
+    private final PEFCheck pefCheck;
+    private final ValidationSession session;
+    private final ExecutorService executor;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Result of one volume.
+     */
+    private static class VolumeResult {
+        List<Finding> findings;
+        PEFStreamProcessor processor;
+        int lastVolume;
+        int lastSection;
+        Exception error;
+    }
+
+    VolumeSplitter(PEFCheck pefCheck, ValidationSession session, ExecutorService executor) {
+        this.pefCheck = pefCheck;
+        this.session = session;
+        this.executor = executor;
+    }
+
+    /**
+     * Validate the volumes of a file in parallel and report the findings through the PEFCheck
+     * instance.
+     *
+     * @param file          File to validate
+     * @return              False if the file can't be split, nothing has been reported then.
+     * @throws Exception    Throws the same exceptions as the sequential walk.
+     */
+    boolean process(File file) throws Exception {
+        if (!pefCheck.newRuleEngine(true).isVolumeIndependent()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return false;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            return false;
+        }
+
+        List<int[]> volumes = new ArrayList<>();
+        List<byte[][]> wrappers = new ArrayList<>();
+        if (!findVolumes(volumes, wrappers) || volumes.size() < 2) {
+            return false;
+        }
+
+        List<Future<VolumeResult>> futures = new ArrayList<>(volumes.size());
+        for (int i = 0; i < volumes.size(); i++) {
+            int volume = i;
+            int[] range = volumes.get(i);
+            byte[][] wrapper = wrappers.get(i);
+            futures.add(executor.submit(() -> processVolume(volume, range, wrapper)));
+        }
+        try {
+            stitch(futures);
+        } finally {
+            for (Future<VolumeResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return true;
+    }
+
+    private VolumeResult processVolume(int volume, int[] range, byte[][] wrapper) {
+        RecordingFindingsWriter recorder = new RecordingFindingsWriter(null);
+        PEFCheck worker = session.newCheck(recorder, pefCheck.getOptions());
+        worker.setCurrentFile(pefCheck.getCurrentFile());
+        PEFStreamProcessor processor = new PEFStreamProcessor(worker, true);
+        processor.startAtVolume(volume);
+
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(range[1]).position(range[0]);
+        InputStream in = new SequenceInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(wrapper[0]), new ByteBufferInputStream(slice)),
+                new ByteArrayInputStream(wrapper[1])
+        );
+
+        VolumeResult result = new VolumeResult();
+        long start = System.nanoTime();
+        try {
+            processor.process(in);
+        } catch (Exception e) {
+            result.error = e;
+        }
+        worker.recordStreamMetrics(processor, System.nanoTime() - start, range[1] - range[0]);
+        result.findings = recorder.getFindings();
+        result.processor = processor;
+        result.lastVolume = worker.getCurrentVolume();
+        result.lastSection = worker.getCurrentSection();
+        return result;
+    }
+
+    /**
+     * Report the findings of the volumes in order and check the first content page of each
+     * volume against the last content page before it.
+     */
+    private void stitch(List<Future<VolumeResult>> futures) throws Exception {
+        int startPage = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            VolumeResult result;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            PEFStreamProcessor processor = result.processor;
+            pefCheck.addFileStructure(0, processor.getVolumeCount(), processor.getSectionCount(), processor.getPageCount());
+            int deferredPage = processor.getDeferredPage();
+            int deferredIndex = deferredPage == -1 ? -1 : processor.getDeferredIssueCount();
+
+            for (int k = 0; k <= result.findings.size(); k++) {
+                if (k == deferredIndex) {
+                    pefCheck.setLocation(i + 1, processor.getDeferredSection());
+                    startPage = pefCheck.validatePageNumber(deferredPage, false, startPage);
+                }
+                if (k < result.findings.size()) {
+                    pefCheck.writeRecorded(result.findings.get(k));
+                }
+            }
+            if (processor.getLastContentPage() != -1) {
+                startPage = processor.getLastContentPage();
+            }
+            pefCheck.setLocation(result.lastVolume, result.lastSection);
+
+            if (result.error != null) {
+                throw result.error;
+            }
+            if (processor.isPrintSectionPending() && i < futures.size() - 1) {
+                throw new InvalidFormatException(
+                        "No data in first row, lastPage " + pefCheck.getPrintablePageNumber(0, false)
+                );
+            }
+        }
+    }
+
+    /**
+     * Find the byte ranges of the volumes, together with the start and end tags of the
+     * elements around each volume so it can be parsed as a document of its own.
+     *
+     * @return  False if the document contains something that isn't handled.
+     */
+    private boolean findVolumes(List<int[]> volumes, List<byte[][]> wrappers) {
+        int end = buffer.limit();
+        int pos = 0;
+        if (end >= 3 && (buffer.get(0) & 0xff) == 0xef && (buffer.get(1) & 0xff) == 0xbb && (buffer.get(2) & 0xff) == 0xbf) {
+            pos = 3;
+        } else if (end >= 2 && (buffer.get(0) == 0 || buffer.get(1) == 0 || (buffer.get(0) & 0xff) >= 0xfe)) {
+            return false;
+        }
+
+        // Open elements outside of volumes, as start and end of the start tag and end of the name.
+        int[] tagStart = new int[16];
+        int[] tagEnd = new int[16];
+        int[] nameEnd = new int[16];
+        int depth = 0;
+        int volumeStart = -1;
+
+        while (pos < end) {
+            int lt = indexOf((byte) '<', pos, end);
+            if (lt == -1 || lt + 1 >= end) {
+                break;
+            }
+            byte next = buffer.get(lt + 1);
+            if (next == '?') {
+                int close = lt + 2;
+                while (close < end - 1 && !(buffer.get(close) == '?' && buffer.get(close + 1) == '>')) close++;
+                if (close >= end - 1 || (isXmlDeclaration(lt) && !isUtf8Declaration(lt, close))) {
+                    return false;
+                }
+                pos = close + 2;
+                continue;
+            }
+            if (next == '!') {
+                // Comments and CDATA could hide tags from this scan.
+                return false;
+            }
+            int gt = tagEnd(lt + 1, end);
+            if (gt == -1) {
+                return false;
+            }
+            boolean endTag = next == '/';
+            int start = endTag ? lt + 2 : lt + 1;
+            int nameStop = nameEnd(start, gt);
+            boolean volume = isVolume(start, nameStop);
+            if (!volume && localNameIsVolume(start, nameStop)) {
+                return false;
+            }
+
+            if (volumeStart != -1) {
+                if (volume && endTag) {
+                    volumes.add(new int[]{volumeStart, gt + 1});
+                    volumeStart = -1;
+                } else if (volume) {
+                    // Volumes inside volumes are left to the parser.
+                    return false;
+                }
+            } else if (volume && !endTag) {
+                wrappers.add(wrapper(tagStart, tagEnd, nameEnd, depth));
+                if (buffer.get(gt - 1) == '/') {
+                    volumes.add(new int[]{lt, gt + 1});
+                } else {
+                    volumeStart = lt;
+                }
+            } else if (endTag) {
+                if (depth == 0) {
+                    return false;
+                }
+                depth--;
+            } else if (buffer.get(gt - 1) != '/') {
+                if (depth == tagStart.length) {
+                    tagStart = Arrays.copyOf(tagStart, depth * 2);
+                    tagEnd = Arrays.copyOf(tagEnd, depth * 2);
+                    nameEnd = Arrays.copyOf(nameEnd, depth * 2);
+                }
+                tagStart[depth] = lt;
+                tagEnd[depth] = gt + 1;
+                nameEnd[depth] = nameStop;
+                depth++;
+            }
+            pos = gt + 1;
+        }
+        return volumeStart == -1 && depth == 0;
+    }
+
+    /**
+     * Copy the start tags of the open elements and create the matching end tags, so namespace
+     * declarations of the elements around a volume are kept.
+     */
+    private byte[][] wrapper(int[] tagStart, int[] tagEnd, int[] nameEnd, int depth) {
+        StringBuilder after = new StringBuilder();
+        byte[] prefix = new byte[0];
+        for (int i = 0; i < depth; i++) {
+            int length = tagEnd[i] - tagStart[i];
+            int offset = prefix.length;
+            prefix = Arrays.copyOf(prefix, offset + length);
+            for (int j = 0; j < length; j++) {
+                prefix[offset + j] = buffer.get(tagStart[i] + j);
+            }
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            after.append("</");
+            for (int j = tagStart[i] + 1; j < nameEnd[i]; j++) {
+                after.append((char) buffer.get(j));
+            }
+            after.append('>');
+        }
+        return new byte[][]{prefix, after.toString().getBytes(StandardCharsets.UTF_8)};
+    }
+
+    private boolean isVolume(int start, int end) {
+        return end - start == 6 && buffer.get(start) == 'v' && buffer.get(start + 1) == 'o' && buffer.get(start + 2) == 'l'
+                && buffer.get(start + 3) == 'u' && buffer.get(start + 4) == 'm' && buffer.get(start + 5) == 'e';
+    }
+
+    private boolean localNameIsVolume(int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == ':') {
+                return isVolume(i + 1, end);
+            }
+        }
+        return false;
+    }
+
+    private boolean isXmlDeclaration(int lt) {
+        return lt + 5 < buffer.limit() && buffer.get(lt + 2) == 'x' && buffer.get(lt + 3) == 'm' && buffer.get(lt + 4) == 'l'
+                && (buffer.get(lt + 5) == ' ' || buffer.get(lt + 5) == '?');
+    }
+
+    /**
+     * Check the encoding of the xml declaration, no encoding means UTF-8.
+     */
+    private boolean isUtf8Declaration(int lt, int close) {
+        StringBuilder declaration = new StringBuilder();
+        for (int i = lt; i < close; i++) {
+            declaration.append((char) buffer.get(i));
+        }
+        String text = declaration.toString().toLowerCase(Locale.ROOT);
+        int encoding = text.indexOf("encoding");
+        if (encoding == -1) {
+            return true;
+        }
+        String value = text.substring(encoding + "encoding".length()).replaceAll("[\\s=]+", "");
+        return value.startsWith("\"utf-8\"") || value.startsWith("'utf-8'")
+                || value.startsWith("\"us-ascii\"") || value.startsWith("'us-ascii'");
+    }
+
+    private int nameEnd(int pos, int end) {
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                return pos;
+            }
+            pos++;
+        }
+        return end;
+    }
+
+    /**
+     * Find the end of a tag, a > in an attribute value doesn't end the tag.
+     */
+    private int tagEnd(int pos, int end) {
+        byte quote = 0;
+        while (pos < end) {
+            byte b = buffer.get(pos);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private int indexOf(byte b, int pos, int end) {
+        while (pos < end) {
+            if (buffer.get(pos) == b) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+}
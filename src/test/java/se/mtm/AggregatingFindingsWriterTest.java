@@ -0,0 +1,158 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregatingFindingsWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Finding empty(int section, int page) {
+        return new Finding("a.xml", 1, section, FindingKind.EMPTY_PAGE, page, "#" + page, -1, null, false, null);
+    }
+
+    private static Finding missing(int section, int previous, int page) {
+        return new Finding("a.xml", 1, section, FindingKind.MISSING_PAGES, page, "#" + page,
+                previous, "#" + previous, false, null);
+    }
+
+    private static String[] lines(StringWriter out) {
+        return out.toString().split(System.lineSeparator());
+    }
+
+    @DisplayName("Test that findings following each other are merged into ranges.")
+    @Test
+    public void testRanges() {
+        StringWriter out = new StringWriter();
+        AggregatingFindingsWriter writer = new AggregatingFindingsWriter(new TextFindingsWriter(out), 0);
+        writer.startFile("a.xml");
+        for (int page = 3; page <= 6; page++) {
+            writer.write(empty(2, page));
+            // Flushing in the middle of a run shouldn't split it.
+            writer.flush();
+        }
+        writer.write(empty(2, 8));
+        writer.write(missing(3, 1, 3));
+        writer.write(missing(3, 3, 5));
+        writer.write(missing(3, 5, 9));
+        writer.write(missing(4, 9, 11));
+        writer.finishFile();
+        writer.flush();
+
+        assertArrayEquals(new String[]{
+                "Checking file a.xml",
+                "--- Empty pages #3 (3) to #6 (6)",
+                "--- Empty page #8 (8)",
+                "--- Missing page(s) between #1 (1) and #9 (9), 3 gaps",
+                "--- Missing page(s) between #9 (9) and #11 (11)"
+        }, lines(out), "Runs within a section should be merged");
+    }
+
+    @DisplayName("Test that findings over the limit are counted per kind and errors are always written.")
+    @Test
+    public void testLimit() {
+        StringWriter out = new StringWriter();
+        FindingsWriter writer = new AggregatingFindingsWriter(new TextFindingsWriter(out), 2);
+        writer.startFile("a.xml");
+        for (int page = 2; page < 20; page += 2) {
+            writer.write(empty(1, page));
+        }
+        writer.write(missing(2, 1, 3));
+        writer.write(new Finding("a.xml", 1, 2, FindingKind.ERROR, -1, null, -1, null, false, "Unexpected end"));
+        writer.endFile("a.xml", 11, true);
+        writer.startFile("b.xml");
+        writer.write(empty(1, 2));
+        writer.endFile("b.xml", 1, false);
+        writer.flush();
+
+        assertArrayEquals(new String[]{
+                "Checking file a.xml",
+                "--- Empty page #2 (2)",
+                "--- Empty page #4 (4)",
+                "--- Could not process file: Unexpected end",
+                "--- 8 more finding(s) suppressed: 1 missing page gap(s), 7 empty page(s)",
+                "Done a.xml: failed",
+                "Checking file b.xml",
+                "--- Empty page #2 (2)",
+                "Done b.xml: 1 issue(s)"
+        }, lines(out), "The limit should apply to each file");
+    }
+
+    @DisplayName("Test that merged and suppressed findings carry their count in JSON and CSV.")
+    @Test
+    public void testCounts() {
+        StringWriter json = new StringWriter();
+        AggregatingFindingsWriter writer = new AggregatingFindingsWriter(new JsonLinesFindingsWriter(json), 1);
+        writer.startFile("a.xml");
+        writer.write(empty(1, 3));
+        writer.write(empty(1, 4));
+        writer.write(missing(2, 1, 3));
+        writer.flush();
+        assertFalse(json.toString().contains("SUPPRESSED"), "Suppressed findings should be counted when the file is done");
+        writer.finishFile();
+        writer.flush();
+        assertEquals(
+                "{\"file\":\"a.xml\",\"volume\":1,\"section\":1,\"kind\":\"EMPTY_PAGE\",\"firstPage\":3," +
+                "\"printableFirstPage\":\"#3\",\"page\":4,\"printablePage\":\"#4\",\"indexPage\":false,\"count\":2}\n" +
+                "{\"file\":\"a.xml\",\"volume\":0,\"section\":0,\"kind\":\"SUPPRESSED\",\"count\":1," +
+                "\"message\":\"1 missing page gap(s)\"}\n",
+                json.toString(),
+                "The range and the suppressed findings should be counted"
+        );
+
+        StringWriter csv = new StringWriter();
+        writer = new AggregatingFindingsWriter(new CsvFindingsWriter(csv), 0);
+        writer.startFile("a.xml");
+        writer.write(empty(1, 3));
+        writer.write(empty(1, 4));
+        writer.finishFile();
+        writer.flush();
+        assertEquals("a.xml,1,1,EMPTY_PAGE,4,#4,,,false,,2,3,#3\n", csv.toString(), "The range should be one row");
+    }
+
+    @DisplayName("Test that a summarized batch still stores every finding in the journal.")
+    @Test
+    public void testBatch() throws Exception {
+        PEFGenerator generator = new PEFGenerator();
+        generator.setPagesPerSection(200);
+        generator.setGapRate(0.5);
+        File file = tempDir.resolve("book.xml").toFile();
+        generator.write(file);
+
+        BatchValidator full = new BatchValidator(1);
+        ByteArrayOutputStream fullOut = new ByteArrayOutputStream();
+        BatchSummary fullSummary = full.validate(Collections.singletonList(file), new PrintStream(fullOut, true, "UTF-8"));
+
+        File journalFile = tempDir.resolve("run.journal").toFile();
+        ProgressJournal journal = new ProgressJournal(journalFile, false);
+        BatchValidator summarized = new BatchValidator.Builder(1)
+                .summarizeFindings(true, 10)
+                .journal(journal)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchSummary summary = summarized.validate(Collections.singletonList(file), new PrintStream(out, true, "UTF-8"));
+        journal.close();
+
+        assertEquals(fullSummary.toString(), summary.toString(), "Summarizing shouldn't change the issue count");
+        String report = out.toString("UTF-8");
+        assertTrue(report.split("\\R").length <= 12, "At most ten findings should be written:\n" + report);
+        assertTrue(report.contains("more finding(s) suppressed"), "The rest should be counted");
+
+        try (ProgressJournal resumed = new ProgressJournal(journalFile, true)) {
+            ProgressJournal.Entry entry = resumed.get(file.getName(), file, new PEFCheck().getCacheOptions());
+            assertNotNull(entry, "The file should be in the journal");
+            assertEquals(fullSummary.getIssues(), entry.getFindings().size(), "Every finding should be journaled");
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @DisplayName("Test that files validated in parallel are reported one block per file.")
+    @Test
+    public void testParallelValidation() throws Exception {
+        List<File> files = TestBooks.copyBooks(tempDir, 20);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BatchSummary summary = new BatchValidator(4).validate(files, new PrintStream(baos));
+
+        assertEquals(21, summary.getFiles(), "All files should be checked");
+        assertEquals(20, summary.getFilesWithIssues(), "All books have issues");
+        assertEquals(1, summary.getFailedFiles(), "The broken file should fail");
+        assertEquals(40, summary.getIssues(), "Each book has two issues");
+        assertEquals(BatchSummary.EXIT_ISSUES, summary.getExitCode(), "Issues should give an error exit code");
+
+        String[] lines = baos.toString().split("\\r?\\n");
+        assertEquals(20 * 3 + 2, lines.length, "Three lines for each book and two for the broken file");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].equals("Checking file broken.xml")) {
+                assertTrue(lines[i + 1].startsWith("--- Could not process file"), "Error follows the file name");
+                i++;
+                continue;
+            }
+            assertTrue(lines[i].startsWith("Checking file book-"), "Each block starts with the file name");
+            assertEquals("--- Empty page __iii (3)", lines[i + 1], "First issue follows the file name");
+            assertEquals("--- Missing page(s) between #a (1) and #d (4)", lines[i + 2], "Second issue follows");
+            i += 2;
+        }
+    }
+
+    @DisplayName("Test that files found below a directory are reported in walk order with their relative path.")
+    @Test
+    public void testDirectoryOrder() throws Exception {
+        File bookFile = TestBooks.simpleBook();
+        List<String> expected = new ArrayList<>();
+        for (int year = 2018; year <= 2020; year++) {
+            for (int i = 0; i < 10; i++) {
+                Path copy = tempDir.resolve("publisher/" + year + "/book-" + i + ".xml");
+                Files.createDirectories(copy.getParent());
+                Files.copy(bookFile.toPath(), copy);
+                expected.add("Checking file publisher/" + year + "/book-" + i + ".xml");
+            }
+        }
+        FileDiscovery discovery = new FileDiscovery();
+        discovery.setMaxDepth(FileDiscovery.UNLIMITED);
+
+        String first = null;
+        for (int run = 0; run < 3; run++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            BatchSummary summary = new BatchValidator(4).validate(tempDir.toFile(), discovery, new PrintStream(baos));
+            assertEquals(30, summary.getFiles(), "All nested files should be checked");
+
+            String output = baos.toString();
+            List<String> checked = new ArrayList<>();
+            for (String line : output.split("\\r?\\n")) {
+                if (line.startsWith("Checking file")) {
+                    checked.add(line);
+                }
+            }
+            assertEquals(expected, checked, "Files should be reported in walk order");
+            if (first == null) {
+                first = output;
+            }
+            assertEquals(first, output, "The output should be the same for every run");
+        }
+    }
+
+    @DisplayName("Test that the files of a manifest are validated with their options and given a result each.")
+    @Test
+    public void testManifest() throws Exception {
+        List<File> books = TestBooks.copyBooks(tempDir, 3);
+        File dir = books.get(0).getParentFile();
+        String manifest =
+                "# books to check\n" +
+                "book-0.xml\n" +
+                "\n" +
+                books.get(1).getAbsolutePath() + "\n" +
+                "book-2.xml\ttitle-sections=2\n" +
+                "book-0.xml\tunknown=1\n" +
+                "missing.xml\n";
+
+        BatchValidator batchValidator = new BatchValidator.Builder(2)
+                .format(FindingsFormat.JSONL)
+                .fileResults(true)
+                .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BatchSummary summary = batchValidator.validateManifest(
+                new BufferedReader(new StringReader(manifest)), dir, new PrintStream(baos)
+        );
+
+        assertEquals(5, summary.getFiles(), "Each listed file should be checked once");
+        assertEquals(2, summary.getFailedFiles(), "The unknown option and the missing file should fail");
+        assertEquals(3, summary.getFilesWithIssues(), "All books have issues");
+        assertEquals(5, summary.getIssues(), "Two issues for each book, one when the index section is skipped");
+
+        String output = baos.toString();
+        assertTrue(output.contains("{\"file\":\"book-0.xml\",\"result\":\"ISSUES\",\"issues\":2}"),
+                "A result should be written for the book");
+        assertTrue(output.contains("{\"file\":\"book-2.xml\",\"result\":\"ISSUES\",\"issues\":1}"),
+                "The options of the line should be used");
+        assertTrue(output.contains("{\"file\":\"missing.xml\",\"result\":\"FAILED\",\"issues\":0}"),
+                "A missing file should have a failed result");
+        assertTrue(output.contains("Unknown file option unknown"), "An unknown option should be reported");
+    }
+
+    @DisplayName("Test that entries of zip and gzip archives are validated without extracting them.")
+    @Test
+    public void testArchives() throws Exception {
+        byte[] book = Files.readAllBytes(TestBooks.simpleBook().toPath());
+
+        File zip = tempDir.resolve("bundle.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (int i = 0; i < 5; i++) {
+                out.putNextEntry(new ZipEntry("books/book-" + i + ".xml"));
+                out.write(book);
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("books/broken.xml"));
+            out.write(TestBooks.BROKEN.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("readme.txt"));
+            out.write("not a book".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        File gzip = tempDir.resolve("single.xml.gz").toFile();
+        try (GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            out.write(book);
+        }
+        File notZip = tempDir.resolve("corrupt.zip").toFile();
+        Files.write(notZip.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+
+        List<File> files = new ArrayList<>();
+        files.add(zip);
+        files.add(gzip);
+        files.add(notZip);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BatchSummary summary = new BatchValidator(3).validate(files, new PrintStream(baos));
+
+        assertEquals(8, summary.getFiles(), "Each xml entry, the gzipped file and the corrupt archive should be checked");
+        assertEquals(6, summary.getFilesWithIssues(), "All books have issues");
+        assertEquals(2, summary.getFailedFiles(), "The broken entry and the corrupt archive should fail");
+        assertEquals(12, summary.getIssues(), "Each book has two issues");
+
+        String output = baos.toString();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(output.contains("Checking file bundle.zip!/books/book-" + i + ".xml"),
+                    "Findings should be reported per entry");
+        }
+        assertTrue(output.contains("Checking file single.xml.gz"), "Gzipped files should be validated");
+        assertFalse(output.contains("readme.txt"), "Entries that aren't xml should be skipped");
+        assertTrue(output.contains("Checking file corrupt.zip" + System.lineSeparator() + "--- Could not process file"),
+                "A corrupt archive should be reported as failed");
+
+        assertTrue(BatchValidator.isSupportedFile("book.xml.gz"), "Gzipped xml is supported");
+        assertFalse(BatchValidator.isSupportedFile("book.txt.gz"), "Other gzipped files are not supported");
+    }
+}
@@ -0,0 +1,104 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @DisplayName("Test that files are validated when they arrive in the watched directory.")
+    @Test
+    public void testWatch() throws Exception {
+        File bookFile = TestBooks.simpleBook();
+        Files.copy(bookFile.toPath(), tempDir.resolve("existing.xml"));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(baos);
+        BatchSummary summary = new BatchSummary();
+        DirectoryWatcher watcher = new DirectoryWatcher(tempDir.toFile(), new BatchValidator(2), 100);
+
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.watch(out, summary);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            waitForFiles(summary, 1);
+            Files.copy(bookFile.toPath(), tempDir.resolve("arrived.xml"));
+            Files.write(tempDir.resolve("ignored.txt"), "not a book".getBytes("UTF-8"));
+            waitForFiles(summary, 2);
+        } finally {
+            watcher.stop();
+            thread.join(10000);
+        }
+
+        String output;
+        synchronized (out) {
+            output = baos.toString();
+        }
+        assertTrue(output.contains("Checking file existing.xml"), "Existing files are validated");
+        assertTrue(output.contains("Checking file arrived.xml"), "New files are validated");
+        assertEquals(2, summary.getFiles(), "Only xml files are validated, once each");
+        assertEquals(4, summary.getIssues(), "Each book has two issues");
+    }
+
+    @DisplayName("Test that a file removed and put back unchanged is validated again.")
+    @Test
+    public void testDeletedFile() throws Exception {
+        File bookFile = TestBooks.simpleBook();
+        Path dir = Files.createDirectory(tempDir.resolve("watched"));
+        Path staging = Files.createDirectory(tempDir.resolve("staging"));
+        Path book = dir.resolve("book.xml");
+        Files.copy(bookFile.toPath(), book);
+        long modified = book.toFile().lastModified();
+
+        BatchSummary summary = new BatchSummary();
+        DirectoryWatcher watcher = new DirectoryWatcher(dir.toFile(), new BatchValidator(1), 100);
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.watch(new PrintStream(new ByteArrayOutputStream()), summary);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        try {
+            waitForFiles(summary, 1);
+            Files.delete(book);
+            // Give the watcher time to see the file go before it is back with the same size and time.
+            Thread.sleep(500);
+            Path copy = staging.resolve("book.xml");
+            Files.copy(bookFile.toPath(), copy);
+            copy.toFile().setLastModified(modified);
+            Files.move(copy, book);
+            waitForFiles(summary, 2);
+        } finally {
+            watcher.stop();
+            assertTrue(watcher.awaitTermination(10, TimeUnit.SECONDS), "The watcher should stop");
+            thread.join(10000);
+        }
+    }
+
+    private void waitForFiles(BatchSummary summary, int files) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (summary.getFiles() < files && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(files, summary.getFiles(), "Files should be validated within the time limit");
+    }
+}
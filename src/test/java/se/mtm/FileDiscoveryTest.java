@@ -0,0 +1,143 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileDiscoveryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private void create(String... names) throws IOException {
+        for (String name : names) {
+            Path file = tempDir.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[0]);
+        }
+    }
+
+    private List<String> walk(FileDiscovery discovery) throws Exception {
+        List<String> names = new ArrayList<>();
+        discovery.walk(tempDir.toFile(), new FileDiscovery.Visitor() {
+            @Override
+            public void file(File file, String name) {
+                assertTrue(file.isFile(), "Only files should be visited");
+                names.add(name);
+            }
+
+            @Override
+            public void error(String name, IOException e) {
+                fail("No directory should fail: " + name);
+            }
+        });
+        return names;
+    }
+
+    private void createArchive() throws IOException {
+        create(
+                "top.xml", "notes.txt",
+                "publisher-b/2019/book-2.xml", "publisher-b/2019/book-1.xml.gz",
+                "publisher-a/2020/book-3.xml", "publisher-a/2020/old/book-4.xml",
+                "publisher-a/2018/bundle.zip", "publisher-a/cover.xml"
+        );
+    }
+
+    @DisplayName("Test that only the directory itself is walked by default.")
+    @Test
+    public void testTopLevel() throws Exception {
+        createArchive();
+
+        assertEquals(Arrays.asList("top.xml"), walk(new FileDiscovery()),
+                "Only supported files of the directory should be found");
+    }
+
+    @DisplayName("Test that a recursive walk gives all supported files in sorted order.")
+    @Test
+    public void testRecursiveOrder() throws Exception {
+        createArchive();
+        FileDiscovery discovery = new FileDiscovery();
+        discovery.setMaxDepth(FileDiscovery.UNLIMITED);
+        discovery.setThreads(3);
+
+        List<String> expected = Arrays.asList(
+                "publisher-a/2018/bundle.zip",
+                "publisher-a/2020/book-3.xml",
+                "publisher-a/2020/old/book-4.xml",
+                "publisher-a/cover.xml",
+                "publisher-b/2019/book-1.xml.gz",
+                "publisher-b/2019/book-2.xml",
+                "top.xml"
+        );
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected, walk(discovery), "Files should be found in the same order every time");
+        }
+    }
+
+    @DisplayName("Test that the order is the same however far the listings run ahead of the walk.")
+    @Test
+    public void testLookAhead() throws Exception {
+        createArchive();
+        FileDiscovery discovery = new FileDiscovery();
+        discovery.setMaxDepth(FileDiscovery.UNLIMITED);
+        List<String> expected = walk(discovery);
+
+        for (int lookAhead = 0; lookAhead <= 3; lookAhead++) {
+            discovery.setLookAhead(lookAhead);
+            assertEquals(expected, walk(discovery), "The walk should not depend on a look ahead of " + lookAhead);
+        }
+        assertThrows(IllegalArgumentException.class, () -> discovery.setLookAhead(-1),
+                "The look ahead can't be negative");
+    }
+
+    @DisplayName("Test that the depth limit and the include and exclude patterns are applied.")
+    @Test
+    public void testFilters() throws Exception {
+        createArchive();
+
+        FileDiscovery depth = new FileDiscovery();
+        depth.setMaxDepth(2);
+        assertEquals(Arrays.asList("publisher-a/cover.xml", "top.xml"), walk(depth),
+                "Files deeper than the limit should not be found");
+
+        FileDiscovery filtered = new FileDiscovery();
+        filtered.setMaxDepth(FileDiscovery.UNLIMITED);
+        filtered.addInclude("publisher-a/**");
+        filtered.addExclude("old");
+        filtered.addExclude("*.zip");
+        assertEquals(Arrays.asList("publisher-a/2020/book-3.xml", "publisher-a/cover.xml"), walk(filtered),
+                "Included files that aren't excluded should be found");
+
+        FileDiscovery byName = new FileDiscovery();
+        byName.setMaxDepth(FileDiscovery.UNLIMITED);
+        byName.addInclude("book-*");
+        assertEquals(4, walk(byName).size(), "Patterns without a directory should match names at any depth");
+    }
+
+    @DisplayName("Test that a missing directory is reported.")
+    @Test
+    public void testMissingDirectory() {
+        FileDiscovery discovery = new FileDiscovery();
+        File missing = tempDir.resolve("missing").toFile();
+
+        assertThrows(IOException.class, () -> discovery.walk(missing, new FileDiscovery.Visitor() {
+            @Override
+            public void file(File file, String name) {
+            }
+
+            @Override
+            public void error(String name, IOException e) {
+            }
+        }), "A directory that can't be listed should throw IOException");
+    }
+}
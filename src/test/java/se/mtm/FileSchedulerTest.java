@@ -0,0 +1,109 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSchedulerTest {
+
+    @DisplayName("Test that the files expected to take longest are started first.")
+    @Test
+    public void testLongestFirst() throws Exception {
+        FileScheduler scheduler = new FileScheduler(1, 100, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> order = Collections.synchronizedList(new ArrayList<>());
+
+        // Hold the worker so the files queue up behind it.
+        scheduler.execute(() -> awaitQuietly(release), 0, 0);
+        for (long expected : new long[]{5, 50, 20, 50, 1}) {
+            scheduler.execute(() -> order.add(expected), 10, expected);
+        }
+        release.countDown();
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS), "All files should be run");
+
+        assertEquals(Arrays.asList(50L, 50L, 20L, 5L, 1L), order, "Longest files should start first");
+    }
+
+    @DisplayName("Test that running files stay within the memory budget while small files fill the workers.")
+    @Test
+    public void testMemoryBudget() throws Exception {
+        FileScheduler scheduler = new FileScheduler(4, 100, 64);
+        AtomicLong inUse = new AtomicLong();
+        AtomicLong maxInUse = new AtomicLong();
+        AtomicLong bigRunning = new AtomicLong();
+        AtomicLong smallDuringBig = new AtomicLong();
+        CountDownLatch bigStarted = new CountDownLatch(1);
+
+        scheduler.execute(() -> {
+            bigRunning.set(1);
+            bigStarted.countDown();
+            run(inUse, maxInUse, 70, 200);
+            bigRunning.set(0);
+        }, 70, 1000);
+        assertTrue(bigStarted.await(10, TimeUnit.SECONDS), "The big file should start");
+        // Doesn't fit next to the big file, the small files are run meanwhile.
+        scheduler.execute(() -> run(inUse, maxInUse, 60, 20), 60, 500);
+        for (int i = 0; i < 10; i++) {
+            scheduler.execute(() -> {
+                run(inUse, maxInUse, 10, 10);
+                smallDuringBig.addAndGet(bigRunning.get());
+            }, 10, 10);
+        }
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS), "All files should be run");
+
+        assertTrue(maxInUse.get() <= 100, "Running files should stay within the budget, used " + maxInUse.get());
+        assertTrue(smallDuringBig.get() > 0, "Small files should run next to the big file");
+        assertTrue(smallDuringBig.get() <= FileScheduler.MAX_PASSES, "The waiting file should only be passed a few times");
+        assertEquals(0, scheduler.getMemoryInUse(), "All memory should be returned");
+    }
+
+    @DisplayName("Test that a file over the whole budget runs when nothing else is running.")
+    @Test
+    public void testOverBudget() throws Exception {
+        FileScheduler scheduler = new FileScheduler(2, 100, 16);
+        AtomicLong inUse = new AtomicLong();
+        AtomicLong maxInUse = new AtomicLong();
+
+        scheduler.execute(() -> run(inUse, maxInUse, 10, 20), 10, 10);
+        scheduler.execute(() -> run(inUse, maxInUse, 500, 20), 500, 1);
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS), "The large file should still be run");
+
+        assertEquals(500, maxInUse.get(), "The large file should run alone");
+    }
+
+    /**
+     * Account for the memory of a running file for a while.
+     */
+    private static void run(AtomicLong inUse, AtomicLong maxInUse, long memory, long millis) {
+        long now = inUse.addAndGet(memory);
+        maxInUse.accumulateAndGet(now, Math::max);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inUse.addAndGet(-memory);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FindingsWriterTest {
+
+    private File simpleBook() {
+        ClassLoader classLoader = FindingsWriterTest.class.getClassLoader();
+        return new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+    }
+
+    @DisplayName("Test that findings can be written as JSON lines.")
+    @Test
+    public void testJsonLines() throws Exception {
+        StringWriter out = new StringWriter();
+        new PEFCheck(new JsonLinesFindingsWriter(out)).processFile(simpleBook());
+
+        assertEquals(
+                "{\"file\":\"simple-book.xml\",\"volume\":1,\"section\":2,\"kind\":\"EMPTY_PAGE\"," +
+                        "\"page\":3,\"printablePage\":\"__iii\",\"indexPage\":true}\n" +
+                "{\"file\":\"simple-book.xml\",\"volume\":1,\"section\":3,\"kind\":\"MISSING_PAGES\"," +
+                        "\"page\":4,\"printablePage\":\"#d\",\"previousPage\":1,\"printablePreviousPage\":\"#a\"," +
+                        "\"indexPage\":false}\n",
+                out.toString(),
+                "Check that each finding is one JSON object"
+        );
+    }
+
+    @DisplayName("Test that findings can be written as CSV.")
+    @Test
+    public void testCsv() throws Exception {
+        StringWriter out = new StringWriter();
+        CsvFindingsWriter writer = new CsvFindingsWriter(out);
+        writer.writeHeader();
+        PEFCheck pefCheck = new PEFCheck(writer);
+        pefCheck.processFile(simpleBook());
+        pefCheck.reportError("broken, \"really\".xml", "Unexpected end");
+
+        assertEquals(
+                "file,volume,section,kind,page,printable_page,previous_page,printable_previous_page,index_page,message,count,first_page,printable_first_page\n" +
+                "simple-book.xml,1,2,EMPTY_PAGE,3,__iii,,,true,,1,,\n" +
+                "simple-book.xml,1,3,MISSING_PAGES,4,#d,1,#a,false,,1,,\n" +
+                "\"broken, \"\"really\"\".xml\",1,3,ERROR,,,,,,Unexpected end,1,,\n",
+                out.toString(),
+                "Check that each finding is one row"
+        );
+    }
+
+    @DisplayName("Test that text findings are buffered until flushed.")
+    @Test
+    public void testBufferedText() {
+        StringWriter out = new StringWriter();
+        TextFindingsWriter writer = new TextFindingsWriter(out);
+        writer.write(new Finding("a.xml", 1, 2, FindingKind.EMPTY_PAGE, 10, "#aj", -1, null, false, null));
+
+        assertEquals("", out.toString(), "Nothing should be written before flush");
+        writer.flush();
+        assertEquals("--- Empty page #aj (10)", out.toString().trim(), "The finding is written as text");
+    }
+
+    @DisplayName("Test that result records are written in each format.")
+    @Test
+    public void testResults() {
+        StringWriter json = new StringWriter();
+        FindingsWriter jsonWriter = new JsonLinesFindingsWriter(json);
+        jsonWriter.endFile("a.xml", 2, false);
+        jsonWriter.endFile("b.xml", 0, true);
+        jsonWriter.flush();
+        assertEquals(
+                "{\"file\":\"a.xml\",\"result\":\"ISSUES\",\"issues\":2}\n" +
+                "{\"file\":\"b.xml\",\"result\":\"FAILED\",\"issues\":0}\n",
+                json.toString(),
+                "Each result is one JSON object"
+        );
+
+        StringWriter csv = new StringWriter();
+        FindingsWriter csvWriter = new CsvFindingsWriter(csv);
+        csvWriter.endFile("a.xml", 0, false);
+        csvWriter.flush();
+        assertEquals("a.xml,,,RESULT,,,,,,ok,,,\n", csv.toString(), "The result is a row of its own");
+
+        StringWriter text = new StringWriter();
+        FindingsWriter textWriter = new TextFindingsWriter(text);
+        textWriter.endFile("a.xml", 2, false);
+        textWriter.flush();
+        assertEquals("Done a.xml: 2 issue(s)", text.toString().trim(), "The result is written as text");
+    }
+}
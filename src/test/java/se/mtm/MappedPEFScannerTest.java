@@ -0,0 +1,194 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedPEFScannerTest {
+
+    private static final String BOOK =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+            "<pef xmlns=\"http://www.daisy.org/ns/2008/pef\" version=\"2008-1\"><body>\r\n" +
+            "<volume cols=\"32\">\r\n" +
+            "  <section><page><row>title</row></page></section>\r\n" +
+            "  <section rowgap=\"4\">\r\n" +
+            "    <page><row rowgap=\"0\">    _i</row><row>text</row></page>\r\n" +
+            "    <page><row>    __ii</row></page>\r\n" +
+            "  </section>\r\n" +
+            "  <section>\r\n" +
+            "    <page><row>    #e--#g                  #a</row><row>text</row></page>\r\n" +
+            "    <page><row>    #b                      #g</row><row>text</row></page>\r\n" +
+            "    <page><row>                    _noter #c</row><row/></page>\r\n" +
+            "    <page><row>    #h                      #e</row><row>⠁⠃</row></page>\r\n" +
+            "  </section>\r\n" +
+            "</volume>\r\n" +
+            "</body></pef>\r\n";
+
+    @TempDir
+    Path tempDir;
+
+    private File write(String name, String xml) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    private String processFile(File file, boolean fastScan) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        TextFindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        PEFCheck pefCheck = new PEFCheck(writer, ValidationSession.getDefault(),
+                CheckOptions.defaults().withFastScan(fastScan));
+        pefCheck.processFile(file);
+        return buffer.toString("UTF-8");
+    }
+
+    private boolean scan(File file) throws Exception {
+        PEFCheck pefCheck = new PEFCheck(new TextFindingsWriter(new OutputStreamWriter(new ByteArrayOutputStream())));
+        return new MappedPEFScanner(new PEFStreamProcessor(pefCheck, true)).process(file);
+    }
+
+    @DisplayName("Test that the scanner reports the same issues as the parser for the test book.")
+    @Test
+    public void testSameResultForSimpleBook() throws Exception {
+        ClassLoader classLoader = MappedPEFScannerTest.class.getClassLoader();
+        File bookFile = new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+
+        assertTrue(scan(bookFile), "The test book should be handled by the scanner");
+        assertEquals(processFile(bookFile, false), processFile(bookFile, true),
+                "The scanner should report the same issues as the parser");
+    }
+
+    @DisplayName("Test that the scanner reports the same issues as the parser for generated books.")
+    @Test
+    public void testSameResultForGeneratedBooks() throws Exception {
+        for (int seed = 1; seed <= 5; seed++) {
+            PEFGenerator generator = new PEFGenerator();
+            generator.setSeed(seed);
+            generator.setVolumes(2);
+            generator.setIndexPagesPerVolume(3);
+            generator.setNoteInterval(7);
+            generator.setPrintSection(true);
+            generator.setEmptyPageRate(0.05);
+            generator.setGapRate(0.05);
+            File file = tempDir.resolve("generated-" + seed + ".xml").toFile();
+            generator.write(file);
+
+            assertTrue(scan(file), "Generated books should be handled by the scanner");
+            assertEquals(processFile(file, false), processFile(file, true),
+                    "The scanner should report the same issues as the parser for seed " + seed);
+        }
+    }
+
+    @DisplayName("Test that the scanner handles attributes, empty elements, line endings and braille.")
+    @Test
+    public void testSameResultForCrlfBook() throws Exception {
+        File file = write("crlf.xml", BOOK);
+
+        assertTrue(scan(file), "The book should be handled by the scanner");
+        String expected = processFile(file, false);
+        assertTrue(expected.contains("Missing page(s)"), "Check that the book has issues to compare");
+        assertEquals(expected, processFile(file, true), "The scanner should report the same issues as the parser");
+    }
+
+    @DisplayName("Test that the scanner gives up on content it doesn't handle and the parser is used.")
+    @Test
+    public void testFallback() throws Exception {
+        String[] books = {
+                BOOK.replace("<body>", "<body><!-- comment -->"),
+                BOOK.replace("    #b   ", "&#32;&#32;&#32;&#32;#b   "),
+                BOOK.replace("<row>title</row>", "<row><![CDATA[title]]></row>"),
+                BOOK.replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\""),
+                BOOK.replace("<volume cols=\"32\">", "<pef:volume xmlns:pef=\"http://www.daisy.org/ns/2008/pef\">")
+                        .replace("</volume>", "</pef:volume>"),
+        };
+        for (int i = 0; i < books.length; i++) {
+            File file = write("fallback-" + i + ".xml", books[i]);
+
+            assertFalse(scan(file), "The scanner should give up on book " + i);
+            assertEquals(processFile(file, false), processFile(file, true),
+                    "Falling back should report the same issues as the parser for book " + i);
+        }
+    }
+
+    /**
+     * @return  The report, or the exception if the file could not be processed.
+     */
+    private String verdict(File file, boolean fastScan) {
+        try {
+            return processFile(file, fastScan);
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+
+    @DisplayName("Test that malformed tags are left to the parser and both engines give the same verdict.")
+    @Test
+    public void testMalformedTags() throws Exception {
+        String[] books = {
+                BOOK.replace("<row>text</row></page>\r\n    <page><row>    #b", "<row a=1>text</row></page>\r\n    <page><row>    #b"),
+                BOOK.replace("<row rowgap=\"0\">", "<row rowgap>"),
+                BOOK.replace("<row rowgap=\"0\">", "<row rowgap=\"0\"cols=\"2\">"),
+                BOOK.replace("<row rowgap=\"0\">", "<row rowgap=\"0\" rowgap=\"1\">"),
+                BOOK.replace("<row rowgap=\"0\">", "<row rowgap=\"<\">"),
+                BOOK.replace("<row rowgap=\"0\">", "<row 1a=\"0\">"),
+                BOOK.replace("<volume cols=\"32\">", "<volume cols=\"32\" / >"),
+                BOOK.replace("<row>title</row>", "<row>title</row x>"),
+        };
+        for (int i = 0; i < books.length; i++) {
+            File file = write("malformed-" + i + ".xml", books[i]);
+
+            assertFalse(scan(file), "The scanner should give up on book " + i);
+            String expected = verdict(file, false);
+            assertFalse(expected.contains("Checking file"), "The parser should reject book " + i + ": " + expected);
+            assertEquals(expected, verdict(file, true), "Both engines should reject book " + i);
+        }
+    }
+
+    @DisplayName("Test that entities and stray text the processor doesn't read are left to the parser.")
+    @Test
+    public void testUnreadText() throws Exception {
+        String[] books = {
+                BOOK.replace("<row>    #b                      #g</row><row>text</row>",
+                        "<row>    #b                      #g</row><row>text</row><row>a &bogus; entity</row>"),
+                BOOK.replace("<row>    #h                      #e</row><row>⠁⠃</row>",
+                        "<row>    #h                      #e</row><row>⠁⠃</row><row>a & b</row>"),
+                BOOK.replace("  </section>\r\n</volume>", "  </section>\r\n & </volume>"),
+                BOOK.replace("</body></pef>\r\n", "</body></pef>\r\ntext after the root\r\n"),
+        };
+        for (int i = 0; i < books.length; i++) {
+            File file = write("unread-" + i + ".xml", books[i]);
+
+            assertFalse(scan(file), "The scanner should give up on book " + i);
+            String expected = verdict(file, false);
+            assertFalse(expected.contains("Checking file"), "The parser should reject book " + i + ": " + expected);
+            assertEquals(expected, verdict(file, true), "Both engines should reject book " + i);
+        }
+
+        File entity = write("entity.xml", BOOK.replace("<row>text</row></page>\r\n    <page><row>    #b",
+                "<row>text</row><row>a &amp; b</row></page>\r\n    <page><row>    #b"));
+        assertFalse(scan(entity), "The scanner should give up on a known entity in a later row");
+        assertEquals(processFile(entity, false), processFile(entity, true),
+                "Falling back should report the same issues as the parser");
+    }
+
+    @DisplayName("Test that the scanner reports incorrect documents.")
+    @Test
+    public void testIncorrectPage() throws Exception {
+        File file = write("incorrect.xml", BOOK.replace("#h                      #e", "not a page number"));
+
+        assertThrows(InvalidFormatException.class, () -> scan(file),
+                "A page without page number should throw InvalidFormatException");
+        assertFalse(scan(write("unclosed.xml", BOOK.replace("</body></pef>", ""))),
+                "An unclosed document should be left to the parser");
+    }
+}
@@ -0,0 +1,300 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PEFCheckConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_FIXTURE = 25;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Collects what is written between flushes as one block. Not thread safe on purpose,
+     * writes from two threads at the same time are noticed.
+     */
+    private static class BlockWriter implements FindingsWriter {
+        final List<String> blocks = new ArrayList<>();
+        final AtomicBoolean busy = new AtomicBoolean();
+        volatile boolean overlapped = false;
+        private StringBuilder block = new StringBuilder();
+
+        private void enter() {
+            if (!busy.compareAndSet(false, true)) {
+                overlapped = true;
+            }
+        }
+
+        @Override
+        public void startFile(String file) {
+            enter();
+            block.append(TextFindingsWriter.fileLine(file)).append('\n');
+            busy.set(false);
+        }
+
+        @Override
+        public void write(Finding finding) {
+            enter();
+            block.append(TextFindingsWriter.format(finding)).append('\n');
+            busy.set(false);
+        }
+
+        @Override
+        public void flush() {
+            enter();
+            if (block.length() > 0) {
+                blocks.add(block.toString());
+                block = new StringBuilder();
+            }
+            busy.set(false);
+        }
+    }
+
+    private static List<byte[]> fixtures() throws Exception {
+        List<byte[]> fixtures = new ArrayList<>();
+        ClassLoader classLoader = PEFCheckConcurrencyTest.class.getClassLoader();
+        fixtures.add(Files.readAllBytes(new File(classLoader.getResource("testfiles/simple-book.xml").getFile()).toPath()));
+        for (int i = 0; i < 7; i++) {
+            PEFGenerator generator = new PEFGenerator();
+            generator.setVolumes(1 + i % 3);
+            generator.setSectionsPerVolume(2 + i % 2);
+            generator.setPagesPerSection(30 + 10 * i);
+            generator.setRowsPerPage(3);
+            generator.setIndexPagesPerVolume(i % 2 == 0 ? 6 : 0);
+            generator.setNoteInterval(i % 3 == 0 ? 9 : 0);
+            generator.setGapRate(0.02 * i);
+            generator.setEmptyPageRate(0.03 * (7 - i));
+            generator.setUnicodeBraille(i == 5);
+            generator.setSeed(100 + i);
+            ByteArrayOutputStream book = new ByteArrayOutputStream();
+            generator.write(book);
+            fixtures.add(book.toByteArray());
+        }
+        return fixtures;
+    }
+
+    private static Document parse(DocumentBuilder builder, byte[] book) throws Exception {
+        Document document = builder.parse(new ByteArrayInputStream(book));
+        document.normalize();
+        return document;
+    }
+
+    /**
+     * Run the tasks on a pool of threads, started together to make them overlap.
+     */
+    private static void runConcurrently(List<Task> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Task task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "All calls should be done");
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    @DisplayName("Test that concurrent processDocument calls on one checker report the same as sequential calls.")
+    @Test
+    public void testProcessDocument() throws Exception {
+        List<byte[]> fixtures = fixtures();
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+
+        List<String> expected = new ArrayList<>();
+        int expectedIssues = 0;
+        for (byte[] fixture : fixtures) {
+            BlockWriter writer = new BlockWriter();
+            PEFCheck pefCheck = new PEFCheck(writer);
+            pefCheck.processDocument(parse(builder, fixture), true);
+            writer.flush();
+            assertTrue(writer.blocks.size() <= 1, "A call should be written as one block");
+            for (int i = 0; i < CALLS_PER_FIXTURE; i++) {
+                expected.addAll(writer.blocks);
+                expectedIssues += pefCheck.getIssueCount();
+            }
+        }
+        assertTrue(expectedIssues > 0, "The fixtures should have findings");
+
+        // Documents aren't safe to read from several threads, each call gets its own.
+        List<Task> tasks = new ArrayList<>();
+        BlockWriter writer = new BlockWriter();
+        PEFCheck shared = new PEFCheck(writer);
+        for (int i = 0; i < CALLS_PER_FIXTURE; i++) {
+            for (byte[] fixture : fixtures) {
+                Document document = parse(builder, fixture);
+                tasks.add(() -> shared.processDocument(document, true));
+            }
+        }
+        runConcurrently(tasks);
+
+        assertFalse(writer.overlapped, "Findings should never be written by two calls at the same time");
+        assertEquals(expectedIssues, shared.getIssueCount(), "The issues of all calls should be counted");
+        Collections.sort(expected);
+        List<String> actual = new ArrayList<>(writer.blocks);
+        Collections.sort(actual);
+        assertEquals(expected, actual, "Each call should report the same block as when run alone");
+    }
+
+    @DisplayName("Test that concurrent file calls on one checker report each file like a sequential run.")
+    @Test
+    public void testProcessFile() throws Exception {
+        List<byte[]> fixtures = fixtures();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < fixtures.size(); i++) {
+            Path file = tempDir.resolve("book-" + i + ".xml");
+            Files.write(file, fixtures.get(i));
+            files.add(file.toFile());
+        }
+
+        for (boolean fastScan : new boolean[]{false, true}) {
+            CheckOptions options = CheckOptions.defaults().withFastScan(fastScan);
+            Map<String, String> expected = new HashMap<>();
+            for (File file : files) {
+                BlockWriter writer = new BlockWriter();
+                new PEFCheck(writer, ValidationSession.getDefault(), options).processFile(file);
+                expected.put(file.getName(), String.join("", writer.blocks));
+            }
+
+            BlockWriter writer = new BlockWriter();
+            PEFCheck shared = new PEFCheck(writer, new ValidationSession(), options);
+            List<Task> tasks = new ArrayList<>();
+            for (int i = 0; i < CALLS_PER_FIXTURE; i++) {
+                for (File file : files) {
+                    switch (i % 3) {
+                        case 0:
+                            tasks.add(() -> shared.processFile(file));
+                            break;
+                        case 1:
+                            tasks.add(() -> shared.processFileWithDocument(file));
+                            break;
+                        default:
+                            tasks.add(() -> {
+                                try (InputStream in = new FileInputStream(file)) {
+                                    shared.processStream(file.getName(), in);
+                                }
+                            });
+                    }
+                }
+            }
+            runConcurrently(tasks);
+
+            assertFalse(writer.overlapped, "Findings should never be written by two calls at the same time");
+            assertEquals(tasks.size(), writer.blocks.size(), "Every call should be written as one block");
+            for (String block : writer.blocks) {
+                String name = block.substring(TextFindingsWriter.fileLine("").length(), block.indexOf('\n'));
+                assertEquals(expected.get(name), block, "The findings of " + name + " should match the sequential run");
+            }
+        }
+    }
+
+    /**
+     * Lines written by a JSON lines writer of one checker.
+     */
+    private static List<String> jsonLines(Task task, StringWriter out) throws Exception {
+        task.run();
+        List<String> lines = new ArrayList<>();
+        for (String line : out.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @DisplayName("Test that concurrent calls on one checker report every JSON finding under the file of its call.")
+    @Test
+    public void testJsonLinesFile() throws Exception {
+        List<byte[]> fixtures = fixtures();
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < fixtures.size(); i++) {
+            Path file = tempDir.resolve("book-" + i + ".xml");
+            Files.write(file, fixtures.get(i));
+            files.add(file.toFile());
+        }
+
+        List<String> expected = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        PEFCheck shared = new PEFCheck(new JsonLinesFindingsWriter(out));
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < CALLS_PER_FIXTURE; i++) {
+            for (int j = 0; j < files.size(); j++) {
+                File file = files.get(j);
+                StringWriter alone = new StringWriter();
+                PEFCheck pefCheck = new PEFCheck(new JsonLinesFindingsWriter(alone));
+                if (i % 2 == 0) {
+                    expected.addAll(jsonLines(() -> pefCheck.processFile(file), alone));
+                    tasks.add(() -> shared.processFile(file));
+                } else {
+                    // Documents have no file, their findings must not take the file of another call.
+                    Document aloneDocument = parse(builder, fixtures.get(j));
+                    Document document = parse(builder, fixtures.get(j));
+                    expected.addAll(jsonLines(() -> pefCheck.processDocument(aloneDocument, true), alone));
+                    tasks.add(() -> shared.processDocument(document, true));
+                }
+            }
+        }
+        assertFalse(expected.isEmpty(), "The fixtures should have findings");
+        runConcurrently(tasks);
+
+        List<String> actual = jsonLines(() -> { }, out);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual, "Every finding should carry the file of the call that found it");
+    }
+
+    @DisplayName("Test that options can't be changed after they are given to a checker.")
+    @Test
+    public void testImmutableOptions() {
+        CheckOptions defaults = CheckOptions.defaults();
+        CheckOptions options = defaults.withNumTitleSections(2).withRules(Arrays.asList(Rules.PAGE_SEQUENCE));
+
+        assertEquals(1, defaults.getNumTitleSections(), "The defaults should be unchanged");
+        assertEquals(Rules.getDefaults(), defaults.getRules(), "The defaults should be unchanged");
+        assertEquals(2, options.getNumTitleSections(), "The copy should have the new value");
+        assertThrows(UnsupportedOperationException.class, () -> options.getRules().add(Rules.EMPTY_PAGES),
+                "The rules can't be changed");
+
+        PEFCheck pefCheck = new PEFCheck(new BlockWriter(), ValidationSession.getDefault(), options);
+        assertSame(options, pefCheck.getOptions(), "The checker should keep the options it was given");
+    }
+}
@@ -61,6 +61,34 @@ public class PEFCheckTest {
         assertEquals(2019, pefCheck.getPageNumber("__mmxix"), "Can handle this year");
     }
 
+    @DisplayName("Test that we can read page numbers from a part of a row")
+    @Test
+    public void testPageNumberInRange() {
+        StringBuilder row = new StringBuilder("xx  #accg  __mcccxxxvii #q");
+        assertEquals(1337, PageNumberDecoder.decode(row, 2, 10), "Can read alpha numbers in a range");
+        assertEquals(1337, PageNumberDecoder.decode(row, 10, 24), "Can read roman numbers in a range");
+        assertEquals(-1, PageNumberDecoder.decode(row, 24, row.length()), "Handle incorrect number in a range");
+        assertEquals(-1, PageNumberDecoder.decode(row, 4, 4), "Handle an empty range");
+    }
+
+    @DisplayName("Test that we can read page identifiers into an existing object")
+    @Test
+    public void testReadingPageIdentifiers() {
+        PEFCheck pefCheck = new PEFCheck();
+        PageIdentifiers pageIdentifiers = new PageIdentifiers(7, 7, 7, true, true);
+
+        pefCheck.readPageIdentifiers(new StringBuilder("    #daj            #bjh--#baj"), true, false, pageIdentifiers);
+        assertEquals(410, pageIdentifiers.getPefPage(), "Handle the PEF page");
+        assertEquals(208, pageIdentifiers.getOrgStartPage(), "Handle the original start page");
+        assertEquals(210, pageIdentifiers.getOrgEndPage(), "Handle the original end page");
+        assertFalse(pageIdentifiers.isEmpty(), "Old values are replaced");
+
+        pefCheck.readPageIdentifiers(new StringBuilder("    #bc--                   #a"), false, false, pageIdentifiers);
+        assertEquals(1, pageIdentifiers.getPefPage(), "Handle a range without end, PEF page");
+        assertEquals(23, pageIdentifiers.getOrgStartPage(), "Handle a range without end, original start page");
+        assertEquals(-1, pageIdentifiers.getOrgEndPage(), "Handle a range without end, original end page");
+    }
+
     @DisplayName("Test that we can extract index pages")
     @Test
     public void testExtractingIndexPages() {
@@ -113,6 +141,28 @@ public class PEFCheckTest {
         assertEquals(210, pageIdentifiers.getOrgEndPage(), "Handle the 410th normal page, original end page");
     }
 
+    @DisplayName("Test that page numbers written as Unicode braille cells are read")
+    @Test
+    public void testUnicodeBraille() {
+        PEFCheck pefCheck = new PEFCheck();
+        assertEquals(12, pefCheck.getPageNumber("\u283c\u2801\u2803"), "Can handle alpha numbers");
+        assertEquals(4, pefCheck.getPageNumber("\u2838\u2838\u280a\u2827"), "Can handle roman numerals");
+        assertEquals(5, pefCheck.getPageNumber("\u2800\u2838\u2827\u2800"), "Blank cells are whitespace");
+        assertEquals(-1, pefCheck.getPageNumber("\u283c\u2801\u2841"), "Cells with dot 7 are not digits");
+        assertEquals(-1, pefCheck.getPageNumber("\u283c\u2815"), "Handle incorrect number");
+
+        PageIdentifiers pageIdentifiers = pefCheck.getPageIdentifiers(
+                "\u2800\u2800\u283c\u2803\u2800\u2800\u283c\u2803\u2809\u2824\u2824\u283c\u2803\u2819", true, false
+        );
+        assertEquals(2, pageIdentifiers.getPefPage(), "Handle the PEF page");
+        assertEquals(23, pageIdentifiers.getOrgStartPage(), "Handle the original start page");
+        assertEquals(24, pageIdentifiers.getOrgEndPage(), "Handle the original end page");
+
+        pageIdentifiers = pefCheck.getPageIdentifiers("    \u283c\u2803\u2809   #a", false, false);
+        assertEquals(1, pageIdentifiers.getPefPage(), "Cells and ASCII braille can be mixed");
+        assertEquals(23, pageIdentifiers.getOrgStartPage(), "Cells and ASCII braille can be mixed");
+    }
+
     private Document newDocument() throws Exception {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         DocumentBuilder db = dbf.newDocumentBuilder();
@@ -0,0 +1,134 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PEFGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private PEFGenerator fullFeaturedGenerator() {
+        PEFGenerator generator = new PEFGenerator();
+        generator.setVolumes(3);
+        generator.setSectionsPerVolume(3);
+        generator.setPagesPerSection(40);
+        generator.setRowsPerPage(4);
+        generator.setIndexPagesPerVolume(12);
+        generator.setNoteInterval(7);
+        generator.setPrintSection(true);
+        return generator;
+    }
+
+    private String processStream(byte[] book, PEFCheck pefCheck) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream outOrig = System.out;
+        System.setOut(new PrintStream(baos));
+        try {
+            pefCheck.processStream(new ByteArrayInputStream(book), true);
+        } finally {
+            System.setOut(outOrig);
+        }
+        return baos.toString().trim();
+    }
+
+    @DisplayName("Test that a generated book without injected issues is valid.")
+    @Test
+    public void testValidBook() throws Exception {
+        ByteArrayOutputStream book = new ByteArrayOutputStream();
+        assertEquals(0, fullFeaturedGenerator().write(book), "No issues should be expected");
+
+        assertEquals("", processStream(book.toByteArray(), new PEFCheck()), "No issues should be reported");
+    }
+
+    @DisplayName("Test that injected gaps and empty pages are reported.")
+    @Test
+    public void testInjectedIssues() throws Exception {
+        PEFGenerator generator = fullFeaturedGenerator();
+        generator.setGapRate(0.05);
+        generator.setEmptyPageRate(0.05);
+        generator.setSeed(42);
+
+        ByteArrayOutputStream book = new ByteArrayOutputStream();
+        int expectedIssues = generator.write(book);
+        assertTrue(expectedIssues > 0, "Issues should be injected");
+
+        PEFCheck pefCheck = new PEFCheck();
+        String streamed = processStream(book.toByteArray(), pefCheck);
+        assertEquals(expectedIssues, pefCheck.getIssueCount(), "All injected issues should be reported");
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(book.toByteArray())
+        );
+        doc.normalize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new PEFCheck(new PrintStream(baos)).processDocument(doc, true);
+        assertEquals(baos.toString().trim(), streamed, "Streaming and document walk should report the same issues");
+
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        generator.write(again);
+        assertArrayEquals(book.toByteArray(), again.toByteArray(), "The same seed should give the same book");
+    }
+
+    @DisplayName("Test that a book written in Unicode braille is reported like the same book in ASCII braille.")
+    @Test
+    public void testUnicodeBraille() throws Exception {
+        PEFGenerator generator = fullFeaturedGenerator();
+        generator.setGapRate(0.05);
+        generator.setEmptyPageRate(0.05);
+        generator.setSeed(42);
+        ByteArrayOutputStream ascii = new ByteArrayOutputStream();
+        int expectedIssues = generator.write(ascii);
+
+        generator.setUnicodeBraille(true);
+        ByteArrayOutputStream unicode = new ByteArrayOutputStream();
+        generator.write(unicode);
+        assertTrue(unicode.toString("UTF-8").contains("\u283c"), "The rows should be written as cells");
+
+        PEFCheck pefCheck = new PEFCheck();
+        String streamed = processStream(unicode.toByteArray(), pefCheck);
+        assertEquals(expectedIssues, pefCheck.getIssueCount(), "All injected issues should be reported");
+        assertEquals(processStream(ascii.toByteArray(), new PEFCheck()), streamed,
+                "Both encodings should give the same findings");
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(unicode.toByteArray())
+        );
+        doc.normalize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new PEFCheck(new PrintStream(baos)).processDocument(doc, true);
+        assertEquals(streamed, baos.toString().trim(), "The document walk should read the cells as well");
+    }
+
+    @DisplayName("Test that a large generated book can be streamed from disk.")
+    @Test
+    public void testLargeBook() throws Exception {
+        PEFGenerator generator = new PEFGenerator();
+        generator.setVolumes(40);
+        generator.setSectionsPerVolume(5);
+        generator.setPagesPerSection(100);
+        generator.setRowsPerPage(3);
+        generator.setIndexPagesPerVolume(4);
+        generator.setPrintSection(true);
+        generator.setGapRate(0.001);
+        generator.setSeed(7);
+
+        File file = tempDir.resolve("generated.xml").toFile();
+        int expectedIssues = generator.write(file);
+
+        PEFCheck pefCheck = new PEFCheck(new PrintStream(new ByteArrayOutputStream()));
+        pefCheck.processFile(file);
+        assertEquals(expectedIssues, pefCheck.getIssueCount(), "All injected issues should be reported");
+    }
+}
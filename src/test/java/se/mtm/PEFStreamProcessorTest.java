@@ -0,0 +1,165 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PEFStreamProcessorTest {
+
+    private static final String TWO_VOLUMES =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<pef xmlns=\"http://www.daisy.org/ns/2008/pef\" version=\"2008-1\"><body>\n" +
+            "<volume>\n" +
+            "  <section><page><row>title</row></page></section>\n" +
+            "  <section>\n" +
+            "    <page><row>    _i</row><row>text</row></page>\n" +
+            "    <page><row>    __ii</row></page>\n" +
+            "  </section>\n" +
+            "  <section>\n" +
+            "    <page><row>    #e--#g                  #a</row><row>text</row></page>\n" +
+            "    <page><row>    #b                      #g</row><row>text</row></page>\n" +
+            "    <page><row>                    _noter #c</row><row>text</row></page>\n" +
+            "    <page><row>    #h                      #c</row><row>text</row></page>\n" +
+            "  </section>\n" +
+            "</volume>\n" +
+            "<volume>\n" +
+            "  <section><page><row>title</row></page></section>\n" +
+            "  <section>\n" +
+            "    <page><row>    #i                      #e</row></page>\n" +
+            "    <page><row>    #f                      #j</row><row>text</row></page>\n" +
+            "  </section>\n" +
+            "  <section>\n" +
+            "    <page><row></row><row> :: _tryckuppgifter :::::::::</row></page>\n" +
+            "  </section>\n" +
+            "</volume>\n" +
+            "</body></pef>\n";
+
+    private String captureOutput(ThrowingRunnable runnable) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream outOrig = System.out;
+        System.setOut(new PrintStream(baos));
+        try {
+            runnable.run();
+        } finally {
+            System.setOut(outOrig);
+        }
+        return baos.toString().trim();
+    }
+
+    private String processWithDocument(String xml) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))
+        );
+        doc.normalize();
+        return captureOutput(() -> new PEFCheck().processDocument(doc, true));
+    }
+
+    private String processWithStream(String xml) throws Exception {
+        return captureOutput(() -> new PEFCheck().processStream(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), true
+        ));
+    }
+
+    @DisplayName("Test that streaming a file reports the same issues as the document walk.")
+    @Test
+    public void testSameResultAsDocument() throws Exception {
+        ClassLoader classLoader = PEFStreamProcessorTest.class.getClassLoader();
+        File bookFile = new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+
+        final PEFCheck pefCheck = new PEFCheck();
+        String expected = captureOutput(() -> pefCheck.processFileWithDocument(bookFile));
+        String actual = captureOutput(() -> pefCheck.processFile(bookFile));
+
+        assertEquals(expected, actual, "Streaming should report the same issues as the document walk");
+    }
+
+    @DisplayName("Test that streaming handles multiple volumes, notes and print information.")
+    @Test
+    public void testMultipleVolumes() throws Exception {
+        String expected = processWithDocument(TWO_VOLUMES);
+
+        assertEquals(
+                "--- Empty page __ii (2)\n" +
+                "--- Missing page(s) between #c (3) and #e (5)\n" +
+                "--- Empty page #e (5)",
+                expected,
+                "Check that the document walk reports the expected issues"
+        );
+        assertEquals(expected, processWithStream(TWO_VOLUMES), "Streaming should report the same issues");
+    }
+
+    @DisplayName("Test that print information is only allowed in the last volume.")
+    @Test
+    public void testPrintInformationNotLastVolume() {
+        String xml = TWO_VOLUMES.replace("</body>", "<volume><section/></volume></body>");
+
+        assertThrows(InvalidFormatException.class, () -> processWithStream(xml),
+                "Print information followed by another volume should throw InvalidFormatException");
+    }
+
+    @DisplayName("Test that print information followed by another section fails before the section is checked.")
+    @Test
+    public void testPrintInformationNotLastSection() throws Exception {
+        String xml = TWO_VOLUMES.replace(
+                "#c</row><row>text</row></page>\n  </section>\n",
+                "#c</row><row>text</row></page>\n  </section>\n" +
+                "  <section>\n    <page><row></row><row>::::</row></page>\n  </section>\n" +
+                "  <section>\n    <page><row>    #e                      #e</row><row>text</row></page>\n  </section>\n"
+        );
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))
+        );
+        doc.normalize();
+
+        String expected = outcome(pefCheck -> pefCheck.processDocument(doc, true));
+        assertTrue(expected.contains("InvalidFormatException: No data in first row"),
+                "Check that the document walk fails at the print information: " + expected);
+        assertFalse(expected.contains("Missing page(s)"), "Check that the document walk fails before the next section");
+        assertEquals(expected, outcome(pefCheck -> pefCheck.processStream(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), true
+        )), "Streaming should fail the same way");
+    }
+
+    @DisplayName("Test that streaming reports incorrect pages.")
+    @Test
+    public void testIncorrectPage() {
+        String xml = TWO_VOLUMES.replace("#h                      #c", "not a page number");
+
+        assertThrows(InvalidFormatException.class, () -> processWithStream(xml),
+                "A page without page number should throw InvalidFormatException");
+    }
+
+    /**
+     * @return  The issues reported and the exception thrown, if any.
+     */
+    private String outcome(CheckCall call) throws Exception {
+        StringWriter out = new StringWriter();
+        FindingsWriter writer = new TextFindingsWriter(out);
+        try {
+            call.run(new PEFCheck(writer));
+        } catch (InvalidFormatException e) {
+            out.write(e.toString());
+        } finally {
+            writer.flush();
+        }
+        return out.toString();
+    }
+
+    private interface CheckCall {
+        void run(PEFCheck pefCheck) throws Exception;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
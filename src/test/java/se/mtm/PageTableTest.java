@@ -0,0 +1,96 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageTableTest {
+
+    @DisplayName("Test that pages are stored and returned with all values.")
+    @Test
+    public void testAddAndGet() {
+        PageTable pageTable = new PageTable(1);
+        for (int i = 1; i <= 100; i++) {
+            pageTable.add(i, i * 2, i % 3 == 0 ? i * 2 + 1 : -1, i % 7 == 0, i % 2 == 0);
+        }
+
+        assertEquals(100, pageTable.size(), "The table should grow to hold all pages");
+        assertEquals(21, pageTable.getPefPage(20), "Check the pef page");
+        assertEquals(42, pageTable.getOrgStartPage(20), "Check the original start page");
+        assertEquals(43, pageTable.getOrgEndPage(20), "Check the original end page");
+        assertTrue(pageTable.isEmpty(20), "Check the empty flag");
+        assertFalse(pageTable.isIndexPage(20), "Check the index flag");
+
+        PageIdentifiers pi = pageTable.get(21);
+        assertEquals(22, pi.getPefPage(), "The view should have the pef page");
+        assertEquals(44, pi.getOrgStartPage(), "The view should have the original start page");
+        assertEquals(-1, pi.getOrgEndPage(), "The view should have the original end page");
+        assertFalse(pi.isEmpty(), "The view should have the empty flag");
+        assertTrue(pi.isIndexPage(), "The view should have the index flag");
+
+        pi.setPefPage(1000);
+        assertEquals(22, pageTable.getPefPage(21), "Changing the view should not change the table");
+    }
+
+    @DisplayName("Test that a cleared table can be filled again.")
+    @Test
+    public void testClear() {
+        PageTable pageTable = new PageTable();
+        pageTable.add(new PageIdentifiers(1, -1, -1, true, true));
+        pageTable.clear();
+
+        assertEquals(0, pageTable.size(), "The table should be empty after clear");
+        assertThrows(IndexOutOfBoundsException.class, () -> pageTable.getPefPage(0),
+                "Cleared pages should not be readable");
+
+        pageTable.add(new PageIdentifiers(5, -1, -1, false, false));
+        assertEquals(5, pageTable.getPefPage(0), "New pages should be stored from the start");
+        assertFalse(pageTable.isEmpty(0), "Flags of cleared pages should not be kept");
+    }
+
+    @DisplayName("Test that the validators report the same issues for a table as for a list.")
+    @Test
+    public void testSameResultAsList() throws Exception {
+        List<PageIdentifiers> list = new ArrayList<>();
+        list.add(new PageIdentifiers(2, -1, -1, true, false));
+        list.add(new PageIdentifiers(3, -1, -1, false, false));
+        list.add(new PageIdentifiers(7, -1, -1, true, false));
+        PageTable pageTable = new PageTable();
+        pageTable.addAll(list);
+
+        ByteArrayOutputStream listOutput = new ByteArrayOutputStream();
+        FindingsWriter listWriter = new TextFindingsWriter(new OutputStreamWriter(listOutput, StandardCharsets.UTF_8));
+        PEFCheck listCheck = new PEFCheck(listWriter);
+        assertEquals(7, listCheck.validatePageSequence(list, 0), "The list should end on the last page");
+        assertTrue(listCheck.hasEmptyPages(list), "The list has empty pages");
+        listWriter.flush();
+
+        ByteArrayOutputStream tableOutput = new ByteArrayOutputStream();
+        FindingsWriter tableWriter = new TextFindingsWriter(new OutputStreamWriter(tableOutput, StandardCharsets.UTF_8));
+        PEFCheck tableCheck = new PEFCheck(tableWriter);
+        assertEquals(7, tableCheck.validatePageSequence(pageTable, 0), "The table should end on the last page");
+        assertTrue(tableCheck.hasEmptyPages(pageTable), "The table has empty pages");
+        tableWriter.flush();
+
+        assertEquals(4, tableCheck.getIssueCount(), "Two gaps and two empty pages should be reported");
+        assertEquals(listOutput.toString("UTF-8"), tableOutput.toString("UTF-8"),
+                "The table should report the same issues as the list");
+    }
+
+    @DisplayName("Test that pages without number are reported when checking for empty pages.")
+    @Test
+    public void testIncorrectPageNumber() {
+        final PageTable pageTable = new PageTable();
+        pageTable.add(-1, -1, -1, true, false);
+
+        assertThrows(InvalidFormatException.class, () -> new PEFCheck().hasEmptyPages(pageTable),
+                "A page without page number should throw InvalidFormatException");
+    }
+}
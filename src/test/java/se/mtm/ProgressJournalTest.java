@@ -0,0 +1,104 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgressJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String run(List<File> files, ProgressJournal journal, BatchSummary[] summary,
+                              long[] filesProcessed) throws Exception {
+        BatchValidator validator = new BatchValidator.Builder(3)
+                .format(FindingsFormat.JSONL)
+                .fileResults(true)
+                .journal(journal)
+                .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        summary[0] = validator.validate(files, new PrintStream(baos, true, "UTF-8"));
+        filesProcessed[0] = validator.getSession().getMetrics().getFilesProcessed();
+        return baos.toString("UTF-8");
+    }
+
+    @DisplayName("Test that a resumed run reports completed files from the journal and validates the rest.")
+    @Test
+    public void testResume() throws Exception {
+        List<File> files = TestBooks.copyBooks(tempDir, 6);
+        File journalFile = tempDir.resolve("run.journal").toFile();
+        BatchSummary[] summary = new BatchSummary[1];
+        long[] filesProcessed = new long[1];
+
+        String expected;
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            // The first run is stopped after four files.
+            run(files.subList(0, 4), journal, summary, filesProcessed);
+        }
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            expected = run(files, journal, summary, filesProcessed);
+        }
+
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            run(files.subList(0, 4), journal, summary, filesProcessed);
+        }
+        try (ProgressJournal journal = new ProgressJournal(journalFile, true)) {
+            assertEquals(4, journal.getCompletedCount(), "The stopped run completed four files");
+            String output = run(files, journal, summary, filesProcessed);
+            assertEquals(expected, output, "Stored results should be merged into the report in order");
+            assertEquals(3, filesProcessed[0], "Only the files not in the journal should be validated");
+            assertEquals(7, summary[0].getFiles(), "The summary should cover all files");
+            assertEquals(1, summary[0].getFailedFiles(), "The broken file should fail");
+            assertEquals(12, summary[0].getIssues(), "Stored issues should be counted");
+        }
+
+        // Files that changed since they were recorded are validated again.
+        Files.write(files.get(0).toPath(), " ".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (ProgressJournal journal = new ProgressJournal(journalFile, true)) {
+            run(files, journal, summary, filesProcessed);
+            assertEquals(1, filesProcessed[0], "Only the changed file should be validated");
+        }
+    }
+
+    @DisplayName("Test that a record cut short by a crash is dropped and the journal can be appended to.")
+    @Test
+    public void testTornRecord() throws Exception {
+        File book = TestBooks.copyBooks(tempDir, 1).get(0);
+        File journalFile = tempDir.resolve("run.journal").toFile();
+
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            journal.record("a.xml", 1, 2, "options", false, 0, Collections.emptyList());
+            journal.record("b.xml", 1, 2, "options", true, 0, Collections.emptyList());
+        }
+        long complete = journalFile.length();
+        Files.write(journalFile.toPath(), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (ProgressJournal journal = new ProgressJournal(journalFile, true)) {
+            assertEquals(2, journal.getCompletedCount(), "Both complete records should be read");
+            assertEquals(complete, journalFile.length(), "The partial record should be cut off");
+            journal.record(book.getName(), book.length(), book.lastModified(), "options", false, 2,
+                    Collections.emptyList());
+        }
+        try (ProgressJournal journal = new ProgressJournal(journalFile, true)) {
+            assertEquals(3, journal.getCompletedCount(), "The new record should follow the complete ones");
+            assertNotNull(journal.get(book.getName(), book, "options"), "The unchanged file should be found");
+            assertNull(journal.get(book.getName(), book, "other"), "Other options should validate again");
+            assertEquals(2, journal.get(book.getName(), book, "options").getIssues(), "Issues should be stored");
+        }
+        try (ProgressJournal journal = new ProgressJournal(journalFile, false)) {
+            assertEquals(0, journal.getCompletedCount(), "A new journal should start empty");
+        }
+    }
+}
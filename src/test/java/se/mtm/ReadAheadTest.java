@@ -0,0 +1,101 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadAheadTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<File> copyBooks(int count) throws Exception {
+        List<File> files = TestBooks.copyBooks(tempDir, count);
+        files.add(tempDir.resolve("missing.xml").toFile());
+        return files;
+    }
+
+    private static String validate(List<File> files, int readAhead, long bytes, boolean fastScan) throws Exception {
+        BatchValidator validator = new BatchValidator.Builder(1)
+                .session(new ValidationSession(CheckOptions.defaults().withFastScan(fastScan), 0))
+                .readAhead(readAhead, bytes)
+                .build();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BatchSummary summary = validator.validate(files, new PrintStream(baos, true, "UTF-8"));
+        return baos.toString("UTF-8") + summary;
+    }
+
+    @DisplayName("Test that files read ahead are reported the same as files read by the workers.")
+    @Test
+    public void testSameFindings() throws Exception {
+        List<File> files = copyBooks(8);
+        String expected = validate(files, 0, 1, false);
+
+        assertEquals(expected, validate(files, 3, 1 << 20, false), "Streamed from the buffers");
+        assertEquals(expected, validate(files, 3, 1 << 20, true), "Scanned from the buffers");
+        assertEquals(expected, validate(files, 2, 100, false), "Files over the budget are read by the worker");
+    }
+
+    @DisplayName("Test that files are read in order into reused buffers within the budget.")
+    @Test
+    public void testBudget() throws Exception {
+        List<File> files = copyBooks(10).subList(0, 10);
+        long size = files.get(0).length();
+        long budget = 3 * ((size + 65535) / 65536 * 65536);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<ReadAhead.Content> contents = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch read = new CountDownLatch(files.size());
+        ReadAhead readAhead = new ReadAhead(2, budget);
+        Thread submitter = new Thread(() -> {
+            for (File file : files) {
+                readAhead.read(file, content -> {
+                    order.add(file.getName());
+                    contents.add(content);
+                    read.countDown();
+                });
+            }
+        });
+        submitter.start();
+
+        // Two files are read ahead, the reader waits until one of them is taken.
+        while (contents.size() < 2) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals(2, contents.size(), "Only two files should be read ahead");
+
+        for (int i = 0; i < files.size(); i++) {
+            while (contents.size() <= i) {
+                Thread.sleep(5);
+            }
+            ReadAhead.Content content = contents.get(i);
+            ByteBuffer buffer = content.take();
+            assertEquals(size, buffer.remaining(), "The whole file should be read");
+            assertEquals('<', buffer.get(0), "The file should start at index 0");
+            content.release();
+            // Ten files pass through room for three buffers, so the buffers are reused.
+            assertTrue(readAhead.getAllocated() <= budget, "The buffers should stay within the budget");
+        }
+        assertTrue(read.await(10, TimeUnit.SECONDS), "All files should be read");
+        submitter.join();
+        readAhead.close();
+
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals("book-" + i + ".xml", order.get(i), "Files should be read in order");
+        }
+    }
+}
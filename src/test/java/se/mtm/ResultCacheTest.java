@@ -0,0 +1,131 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File copyBook(String name) throws Exception {
+        Path copy = tempDir.resolve(name);
+        Files.copy(TestBooks.simpleBook().toPath(), copy);
+        return copy.toFile();
+    }
+
+    private String process(File file, ResultCache cache, int[] issues) throws Exception {
+        return process(file, CheckOptions.defaults().withResultCache(cache), issues);
+    }
+
+    private String process(File file, CheckOptions options, int[] issues) throws Exception {
+        StringWriter out = new StringWriter();
+        PEFCheck pefCheck = new PEFCheck(new JsonLinesFindingsWriter(out), ValidationSession.getDefault(), options);
+        pefCheck.processFile(file);
+        issues[0] = pefCheck.getIssueCount();
+        return out.toString();
+    }
+
+    @DisplayName("Test that cached findings are replayed for unchanged files.")
+    @Test
+    public void testReplay() throws Exception {
+        File book = copyBook("book.xml");
+        ResultCache cache = new ResultCache(tempDir.resolve("cache").toFile(), 100);
+        int[] issues = new int[1];
+
+        String first = process(book, cache, issues);
+        assertEquals(2, issues[0], "The book has two issues");
+        String contentHash = cache.getKnownContentHash(book);
+        assertNotNull(contentHash, "The file should be indexed");
+        assertEquals(ResultCache.hashContent(book), contentHash, "The whole content should be hashed");
+
+        String second = process(book, cache, issues);
+        assertEquals(first, second, "Replayed findings should be the same");
+        assertEquals(2, issues[0], "Replayed issues should be counted");
+
+        File copy = copyBook("copy.xml");
+        assertNull(cache.getKnownContentHash(copy), "A new path isn't indexed");
+        String copied = process(copy, cache, issues);
+        assertEquals(first.replace("book.xml", "copy.xml"), copied, "Findings are reported with the file name");
+    }
+
+    @DisplayName("Test that files checked with the scanner are hashed and replayed like parsed files.")
+    @Test
+    public void testFastScan() throws Exception {
+        File book = copyBook("book.xml");
+        ResultCache cache = new ResultCache(tempDir.resolve("cache").toFile(), 100);
+        CheckOptions options = CheckOptions.defaults().withResultCache(cache).withFastScan(true);
+        int[] issues = new int[1];
+
+        String first = process(book, options, issues);
+        assertEquals(2, issues[0], "The book has two issues");
+        assertEquals(ResultCache.hashContent(book), cache.getKnownContentHash(book), "The whole content should be hashed");
+
+        ValidationMetrics metrics = ValidationSession.getDefault().getMetrics();
+        long hits = metrics.getCacheHits();
+        assertEquals(first, process(book, options, issues), "Replayed findings should be the same");
+        assertEquals(hits + 1, metrics.getCacheHits(), "The second check should be replayed from the cache");
+    }
+
+    @DisplayName("Test that changed files are validated again.")
+    @Test
+    public void testChangedFile() throws Exception {
+        File book = copyBook("book.xml");
+        ResultCache cache = new ResultCache(tempDir.resolve("cache").toFile(), 100);
+        int[] issues = new int[1];
+
+        process(book, cache, issues);
+        String content = new String(Files.readAllBytes(book.toPath()), "UTF-8");
+        Files.write(book.toPath(), content.replace("#d                      #g", "#b                      #g").getBytes("UTF-8"));
+        book.setLastModified(book.lastModified() + 2000);
+
+        process(book, cache, issues);
+        assertEquals(1, issues[0], "The changed book only has one issue");
+    }
+
+    @DisplayName("Test that the least recently used entries are evicted.")
+    @Test
+    public void testEviction() throws Exception {
+        ResultCache cache = new ResultCache(tempDir.resolve("cache").toFile(), 10);
+        File book = copyBook("book.xml");
+
+        for (int i = 0; i < 30; i++) {
+            cache.put(book, i, i, "hash" + i, "", java.util.Collections.emptyList());
+        }
+        cache.evict();
+
+        try (java.util.stream.Stream<Path> entries = Files.list(tempDir.resolve("cache").resolve("results"))) {
+            assertTrue(entries.count() <= 10, "The cache should be within its limit");
+        }
+    }
+
+    @DisplayName("Test that the time files took is kept in the cache for the next run.")
+    @Test
+    public void testTimings() throws Exception {
+        File directory = tempDir.resolve("cache").toFile();
+        ValidationSession first = new ValidationSession(
+                CheckOptions.defaults().withResultCache(new ResultCache(directory, 10)), 0
+        );
+        first.getTimings().record("slow.xml", 100, 5000);
+        first.getTimings().record("fast.xml", 100, 1000);
+        first.storeTimings();
+
+        ValidationSession next = new ValidationSession(
+                CheckOptions.defaults().withResultCache(new ResultCache(directory, 10)), 0
+        );
+        assertEquals(5000, next.getTimings().estimate("slow.xml", 100), "The time of the earlier run should be used");
+        assertEquals(1000, next.getTimings().estimate("fast.xml", 100), "The time of the earlier run should be used");
+        assertEquals(60, next.getTimings().estimate("slow.xml", 2), "A changed file should be estimated from its size");
+        assertEquals(300, next.getTimings().estimate("new.xml", 10), "A new file should be estimated from its size");
+        assertEquals(10, new ValidationSession().getTimings().estimate("slow.xml", 10),
+                "A session without cache should start without timings");
+    }
+}
@@ -0,0 +1,136 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RulesTest {
+
+    private static final String BOOK =
+            "<pef><body>\n" +
+            "<volume>\n" +
+            "  <section><page><row>title</row></page></section>\n" +
+            "  <section>\n" +
+            "    <page><row>    _i</row><row>text</row></page>\n" +
+            "    <page><row>    __ii</row></page>\n" +
+            "  </section>\n" +
+            "  <section>\n" +
+            "    <page><row>    #e--#g                  #a</row><row>text</row></page>\n" +
+            "    <page><row>    #b                      #g</row><row>text</row></page>\n" +
+            "    <page><row>    #i                      #c</row><row>text</row></page>\n" +
+            "    <page><row>    #d                      #h</row><row>text</row></page>\n" +
+            "    <page><row>    #i--#g                  #f</row></page>\n" +
+            "  </section>\n" +
+            "</volume>\n" +
+            "</body></pef>\n";
+
+    private static String stream(List<String> rules) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        TextFindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        PEFCheck pefCheck = new PEFCheck(writer, ValidationSession.getDefault(), CheckOptions.defaults().withRules(rules));
+        pefCheck.processStream("book.xml", new ByteArrayInputStream(BOOK.getBytes(StandardCharsets.UTF_8)));
+        return buffer.toString("UTF-8");
+    }
+
+    private static String document(List<String> rules) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        TextFindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        PEFCheck pefCheck = new PEFCheck(writer, ValidationSession.getDefault(), CheckOptions.defaults().withRules(rules));
+        pefCheck.startFile("book.xml");
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(BOOK.getBytes(StandardCharsets.UTF_8)));
+        document.normalize();
+        pefCheck.processDocument(document, true);
+        writer.flush();
+        return buffer.toString("UTF-8");
+    }
+
+    @DisplayName("Test that the default rules report missing and empty pages.")
+    @Test
+    public void testDefaultRules() throws Exception {
+        String output = stream(Rules.getDefaults());
+
+        assertEquals(Arrays.asList(
+                "Checking file book.xml",
+                "--- Empty page __ii (2)",
+                "--- Missing page(s) between #d (4) and #f (6)",
+                "--- Empty page #f (6)"
+        ), Arrays.asList(output.split("\\r?\\n")), "Missing pages come before empty pages in each section");
+        assertEquals(output, document(Rules.getDefaults()), "Both walks should run the rules the same way");
+    }
+
+    @DisplayName("Test that the original page numbers are checked when the rule is enabled.")
+    @Test
+    public void testOriginalPages() throws Exception {
+        List<String> rules = Collections.singletonList(Rules.ORIGINAL_PAGES);
+        String output = stream(rules);
+
+        assertEquals(Arrays.asList(
+                "Checking file book.xml",
+                "--- Original page(s) missing between #g (7) and #i (9)",
+                "--- Original page(s) out of order between #i (9) and #h (8)",
+                "--- Original page(s) out of order between #i (9) and #g (7)"
+        ), Arrays.asList(output.split("\\r?\\n")), "Gaps, steps back and reversed ranges should be reported");
+        assertFalse(output.contains("Missing page(s)"), "Only the chosen rules should run");
+        assertEquals(output, document(rules), "Both walks should run the rules the same way");
+    }
+
+    @DisplayName("Test that registered rules see the events of the checked sections and pages in order.")
+    @Test
+    public void testCustomRule() throws Exception {
+        List<String> events = new ArrayList<>();
+        Rules.register("test-events", () -> new Rule() {
+            @Override
+            public void startVolume(RuleContext context) {
+                events.add("volume " + context.getVolume());
+            }
+
+            @Override
+            public void startSection(RuleContext context, boolean indexSection) {
+                events.add("section " + context.getSection() + (indexSection ? " index" : ""));
+            }
+
+            @Override
+            public void page(RuleContext context, PageIdentifiers page) {
+                events.add("page " + page.getPefPage());
+            }
+
+            @Override
+            public void endDocument(RuleContext context) {
+                events.add("end");
+            }
+        });
+
+        stream(Collections.singletonList("test-events"));
+        assertEquals(Arrays.asList(
+                "volume 1", "section 2 index", "page 1", "page 2",
+                "section 3", "page 1", "page 2", "page 3", "page 4", "page 6", "end"
+        ), events, "Title sections should be skipped and every other page visited");
+
+        List<String> streamed = new ArrayList<>(events);
+        events.clear();
+        document(Collections.singletonList("test-events"));
+        assertEquals(streamed, events, "Both walks should give the same events");
+    }
+
+    @DisplayName("Test that unknown rules are refused.")
+    @Test
+    public void testUnknownRule() {
+        assertThrows(IllegalArgumentException.class, () -> Rules.parse("page-sequence,no-such-rule"),
+                "An unknown rule name should be refused");
+        assertEquals(Arrays.asList(Rules.EMPTY_PAGES, Rules.ORIGINAL_PAGES), Rules.parse(" empty-pages, original-pages,empty-pages"),
+                "Names should be trimmed and repeated names dropped");
+    }
+}
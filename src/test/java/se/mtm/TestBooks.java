@@ -0,0 +1,49 @@
+package se.mtm;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Books shared by the tests of batches of files.
+ */
+final class TestBooks {
+    /**
+     * Content of a file that can't be parsed, the document is never closed.
+     */
+    static final String BROKEN = "<pef><body><volume>";
+
+    private TestBooks() {}
+
+    /**
+     * @return  The test book, it has an empty page and a missing page.
+     */
+    static File simpleBook() {
+        ClassLoader classLoader = TestBooks.class.getClassLoader();
+        return new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+    }
+
+    /**
+     * Copy the test book into a directory as book-0.xml, book-1.xml and so on, followed by
+     * broken.xml that fails to parse.
+     *
+     * @param dir       Directory to copy to, like a @TempDir of the test
+     * @param count     Number of copies of the test book
+     * @return          The copies followed by the broken file
+     */
+    static List<File> copyBooks(Path dir, int count) throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path copy = dir.resolve("book-" + i + ".xml");
+            Files.copy(simpleBook().toPath(), copy);
+            files.add(copy.toFile());
+        }
+        Path broken = dir.resolve("broken.xml");
+        Files.write(broken, BROKEN.getBytes(StandardCharsets.UTF_8));
+        files.add(broken.toFile());
+        return files;
+    }
+}
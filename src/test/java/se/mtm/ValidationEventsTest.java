@@ -0,0 +1,129 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ValidationEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Call a public method by name, jdk.jfr is used through reflection so the test compiles for Java 8.
+     */
+    private static Object call(Object target, String name, Object... args) throws Exception {
+        Class<?> type = target instanceof Class ? (Class<?>) target : target.getClass();
+        while (!Modifier.isPublic(type.getModifiers())) {
+            type = type.getSuperclass();
+        }
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && accepts(method.getParameterTypes(), args)) {
+                try {
+                    return method.invoke(target instanceof Class ? null : target, args);
+                } catch (InvocationTargetException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static boolean accepts(Class<?>[] types, Object[] args) {
+        if (types.length != args.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (!types[i].isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Object> events(List<?> events, String name) throws Exception {
+        List<Object> matching = new ArrayList<>();
+        for (Object event : events) {
+            if (name.equals(call(call(event, "getEventType"), "getName"))) {
+                matching.add(event);
+            }
+        }
+        return matching;
+    }
+
+    private static int getInt(Object event, String field) throws Exception {
+        return (Integer) call(event, "getInt", field);
+    }
+
+    @DisplayName("Test that files, volumes, sections and findings are recorded in a flight recording.")
+    @Test
+    public void testRecording() throws Exception {
+        assumeTrue(ValidationEvents.isAvailable(), "The flight recorder is not available");
+
+        PEFGenerator generator = new PEFGenerator();
+        generator.setVolumes(2);
+        generator.setSectionsPerVolume(3);
+        generator.setPagesPerSection(10);
+        generator.setGapRate(0.1);
+        File file = tempDir.resolve("book.xml").toFile();
+        generator.write(file);
+
+        ValidationSession session = new ValidationSession();
+        Path dump = tempDir.resolve("validation.jfr");
+        int issues;
+        Object recording = Class.forName("jdk.jfr.Recording").getConstructor().newInstance();
+        try {
+            for (String name : new String[]{"se.mtm.ValidateFile", "se.mtm.ValidateVolume",
+                    "se.mtm.ValidateSection", "se.mtm.Finding"}) {
+                call(call(recording, "enable", name), "withoutThreshold");
+            }
+            call(recording, "start");
+            issues = session.processFile(file, new TextFindingsWriter(new OutputStreamWriter(new ByteArrayOutputStream())));
+            call(recording, "stop");
+            call(recording, "dump", dump);
+        } finally {
+            call(recording, "close");
+        }
+        List<?> events = (List<?>) call(Class.forName("jdk.jfr.consumer.RecordingFile"), "readAllEvents", dump);
+
+        List<Object> files = events(events, "se.mtm.ValidateFile");
+        assertEquals(1, files.size(), "One file was validated");
+        Object fileEvent = files.get(0);
+        assertEquals("book.xml", call(fileEvent, "getString", "file"), "The file name should be recorded");
+        assertEquals(file.length(), call(fileEvent, "getLong", "bytes"), "The size of the file should be recorded");
+        assertEquals(2, getInt(fileEvent, "volumes"), "Both volumes should be counted");
+        assertEquals(issues, getInt(fileEvent, "findings"), "The findings of the file should be counted");
+
+        List<Object> volumes = events(events, "se.mtm.ValidateVolume");
+        assertEquals(2, volumes.size(), "Each volume should be recorded");
+        int pages = 0;
+        for (Object volume : volumes) {
+            pages += getInt(volume, "pages");
+        }
+        assertEquals(getInt(fileEvent, "pages"), pages, "The volumes should hold the pages of the file");
+
+        List<Object> sections = events(events, "se.mtm.ValidateSection");
+        assertEquals(getInt(fileEvent, "sections"), sections.size(), "Each checked section should be recorded");
+        int sectionPages = 0;
+        for (Object section : sections) {
+            sectionPages += getInt(section, "pages");
+        }
+        assertEquals(pages, sectionPages, "The sections should hold the pages of the volumes");
+
+        assertTrue(issues > 0, "The generated book has gaps");
+        assertEquals(issues, events(events, "se.mtm.Finding").size(), "Each finding should be recorded");
+    }
+}
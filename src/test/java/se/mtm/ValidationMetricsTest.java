@@ -0,0 +1,111 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValidationMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File generateBook(boolean index) throws Exception {
+        PEFGenerator generator = new PEFGenerator();
+        generator.setVolumes(2);
+        generator.setSectionsPerVolume(3);
+        generator.setPagesPerSection(10);
+        generator.setIndexPagesPerVolume(index ? 2 : 0);
+        generator.setNoteInterval(4);
+        generator.setEmptyPageRate(0.1);
+        generator.setGapRate(0.1);
+        File file = tempDir.resolve("book.xml").toFile();
+        generator.write(file);
+        return file;
+    }
+
+    private FindingsWriter nullWriter() {
+        return new TextFindingsWriter(new OutputStreamWriter(new ByteArrayOutputStream()));
+    }
+
+    @DisplayName("Test that files, pages and findings are counted the same for both engines.")
+    @Test
+    public void testCounters() throws Exception {
+        File file = generateBook(true);
+
+        ValidationSession streaming = new ValidationSession();
+        int issues = streaming.processFile(file, nullWriter());
+        ValidationSession document = new ValidationSession();
+        document.processFileWithDocument(file, nullWriter());
+
+        for (ValidationSession session : new ValidationSession[]{streaming, document}) {
+            ValidationMetrics metrics = session.getMetrics();
+            assertEquals(1, metrics.getFilesProcessed(), "One file was processed");
+            assertEquals(file.length(), metrics.getBytesRead(), "The whole file was read");
+            assertEquals(2, metrics.getVolumes(), "The book has two volumes");
+            assertEquals(1, metrics.getParseCount(), "The file was parsed once");
+            assertEquals(1, metrics.getValidateCount(), "The file was validated once");
+            assertEquals(issues, metrics.getMissingPageFindings() + metrics.getEmptyPageFindings(),
+                    "Every issue should be counted by kind");
+            assertEquals(0, metrics.getErrorFindings(), "No errors were reported");
+            assertTrue(metrics.getParseTimeMillis() > 0, "Parse time should be measured");
+        }
+        assertEquals(streaming.getMetrics().getSections(), document.getMetrics().getSections(),
+                "Both engines should count the same sections");
+        assertEquals(streaming.getMetrics().getPages(), document.getMetrics().getPages(),
+                "Both engines should count the same pages");
+        assertEquals(2 * 3 * 10 + 2 * 2, streaming.getMetrics().getPages(),
+                "Content and index pages should be counted, notes pages are skipped");
+
+        streaming.getMetrics().reset();
+        assertEquals(0, streaming.getMetrics().getPages(), "Reset should clear the counters");
+    }
+
+    @DisplayName("Test that findings of a scan that falls back are only counted once.")
+    @Test
+    public void testFastScanFallback() throws Exception {
+        ClassLoader classLoader = ValidationMetricsTest.class.getClassLoader();
+        File bookFile = new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+        String xml = new String(java.nio.file.Files.readAllBytes(bookFile.toPath()), "UTF-8");
+        File file = tempDir.resolve("comment.xml").toFile();
+        // The comment near the end makes the scanner give up after it has found the issues.
+        java.nio.file.Files.write(file.toPath(), xml.replace("</pef>", "<!-- end --></pef>").getBytes("UTF-8"));
+
+        ValidationSession session = new ValidationSession(CheckOptions.defaults().withFastScan(true), 0);
+        int issues = session.processFile(file, nullWriter());
+
+        assertEquals(2, issues, "The book has two issues");
+        assertEquals(issues, session.getMetrics().getMissingPageFindings() + session.getMetrics().getEmptyPageFindings(),
+                "Findings of the abandoned scan should not be counted");
+    }
+
+    @DisplayName("Test that the metrics are published over JMX.")
+    @Test
+    public void testRegister() throws Exception {
+        ValidationSession session = new ValidationSession();
+        session.processFile(generateBook(false), nullWriter());
+
+        ObjectName name = session.getMetrics().register("test-" + System.nanoTime());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(1L, server.getAttribute(name, "FilesProcessed"), "Attributes should be readable over JMX");
+            assertEquals(session.getMetrics().getPages(), server.getAttribute(name, "Pages"),
+                    "Pages should be readable over JMX");
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "FilesProcessed"), "Reset should be callable over JMX");
+        } finally {
+            server.unregisterMBean(name);
+        }
+        assertTrue(session.getMetrics().summary().startsWith("Processed 0 file(s)"),
+                "The summary should start with the number of files");
+    }
+}
@@ -0,0 +1,184 @@
+package se.mtm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValidationServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ValidationServer server;
+
+    @AfterEach
+    public void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private File bookFile() {
+        ClassLoader classLoader = ValidationServerTest.class.getClassLoader();
+        return new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+    }
+
+    private ValidationServer startServer(int maxConcurrent) throws Exception {
+        server = new ValidationServer(tempDir.toFile(), 0, maxConcurrent);
+        server.start();
+        return server;
+    }
+
+    private HttpURLConnection request(String method, String pathAndQuery, byte[] body) throws Exception {
+        URL url = new URL("http://localhost:" + server.getPort() + pathAndQuery);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        return connection;
+    }
+
+    private String readBody(HttpURLConnection connection) throws Exception {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        in.close();
+        return baos.toString("UTF-8");
+    }
+
+    @DisplayName("Test that a posted document is validated and the findings are returned.")
+    @Test
+    public void testPostDocument() throws Exception {
+        startServer(2);
+        byte[] book = Files.readAllBytes(bookFile().toPath());
+
+        HttpURLConnection connection = request("POST", "/validate?name=book.xml&format=text", book);
+
+        assertEquals(200, connection.getResponseCode(), "A valid document should give 200");
+        assertEquals("2", connection.getHeaderField("X-PEFCheck-Issues"), "The book has two issues");
+        String body = readBody(connection);
+        assertTrue(body.startsWith("Checking file book.xml"), "The findings should be reported under the given name");
+        assertEquals(3, body.trim().split("\\R").length, "The file line and two issues should be returned");
+    }
+
+    @DisplayName("Test that a file below the root directory is validated by path.")
+    @Test
+    public void testPath() throws Exception {
+        Files.copy(bookFile().toPath(), tempDir.resolve("book.xml"));
+        startServer(2);
+
+        HttpURLConnection connection = request("GET", "/validate?path=book.xml", null);
+        assertEquals(200, connection.getResponseCode(), "A file below the root should be validated");
+        assertEquals("application/x-ndjson; charset=utf-8", connection.getHeaderField("Content-Type"),
+                "JSON Lines should be the default format");
+        String body = readBody(connection);
+        assertEquals(2, body.trim().split("\\R").length, "Each issue should be one line");
+        assertTrue(body.contains("\"file\":\"book.xml\""), "The findings should have the file name");
+
+        assertEquals(404, request("GET", "/validate?path=missing.xml", null).getResponseCode(),
+                "A missing file should give 404");
+        assertEquals(403, request("GET", "/validate?path=../outside.xml", null).getResponseCode(),
+                "A file outside the root should give 403");
+        assertEquals(400, request("GET", "/validate?path=book.xml&format=xml", null).getResponseCode(),
+                "An unknown format should give 400");
+    }
+
+    @DisplayName("Test that a document that can't be processed gives 422 with the error.")
+    @Test
+    public void testIncorrectDocument() throws Exception {
+        startServer(2);
+
+        HttpURLConnection connection = request("POST", "/validate", "<pef><volume>".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(422, connection.getResponseCode(), "An incorrect document should give 422");
+        assertTrue(readBody(connection).contains("\"kind\":\"ERROR\""), "The error should be returned as a finding");
+    }
+
+    @DisplayName("Test that external entities in a posted document are not read.")
+    @Test
+    public void testExternalEntity() throws Exception {
+        startServer(2);
+        Path secret = tempDir.resolve("secret.txt");
+        Files.write(secret, "secret-content".getBytes(StandardCharsets.UTF_8));
+        String book = new String(Files.readAllBytes(bookFile().toPath()), StandardCharsets.UTF_8)
+                .replaceFirst("<pef", "<!DOCTYPE pef [<!ENTITY xxe SYSTEM \"" + secret.toUri() + "\">]><pef")
+                .replaceFirst("<row>", "<row>&xxe;");
+
+        HttpURLConnection connection = request("POST", "/validate", book.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(422, connection.getResponseCode(), "The undeclared entity should make the document fail");
+        assertFalse(readBody(connection).contains("secret-content"), "The file of the entity should not be read");
+    }
+
+    @DisplayName("Test that requests over the limit are rejected with 503.")
+    @Test
+    public void testOverloaded() throws Exception {
+        startServer(1);
+        byte[] book = Files.readAllBytes(bookFile().toPath());
+
+        // Hold the only permit with a request whose body hasn't arrived yet.
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /validate HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + book.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(book, 0, 100);
+            out.flush();
+
+            HttpURLConnection rejected = null;
+            long deadline = System.currentTimeMillis() + 10000;
+            while (System.currentTimeMillis() < deadline) {
+                rejected = request("GET", "/health", null);
+                if (rejected.getResponseCode() == 503) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+            assertEquals(503, rejected.getResponseCode(), "A request over the limit should give 503");
+            assertEquals("1", rejected.getHeaderField("Retry-After"), "Clients should be told when to try again");
+
+            out.write(book, 100, book.length - 100);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] statusLine = new byte[12];
+            int read = 0;
+            while (read < statusLine.length) {
+                int n = in.read(statusLine, read, statusLine.length - read);
+                assertNotEquals(-1, n, "The held request should be answered");
+                read += n;
+            }
+            assertEquals("HTTP/1.1 200", new String(statusLine, StandardCharsets.US_ASCII),
+                    "The held request should be validated when the body arrives");
+        }
+
+        // The permit is released just after the answer is sent.
+        int status = 503;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (status == 503 && System.currentTimeMillis() < deadline) {
+            status = request("GET", "/health", null).getResponseCode();
+            Thread.sleep(20);
+        }
+        assertEquals(200, status, "The server should accept requests again when the permit is released");
+    }
+}
@@ -0,0 +1,112 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValidationSessionTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String validate(ValidationSession session, File file, boolean document) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        FindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        if (document) {
+            session.processFileWithDocument(file, writer);
+        } else {
+            session.processFile(file, writer);
+        }
+        return buffer.toString("UTF-8");
+    }
+
+    @DisplayName("Test that a session reports the same issues as a new checker.")
+    @Test
+    public void testSameResultAsPEFCheck() throws Exception {
+        ClassLoader classLoader = ValidationSessionTest.class.getClassLoader();
+        File bookFile = new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+        ValidationSession session = new ValidationSession();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        FindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        new PEFCheck(writer).processFileWithDocument(bookFile);
+        String expected = buffer.toString("UTF-8");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, validate(session, bookFile, true),
+                    "Reused parsers should report the same issues, run " + i);
+            assertEquals(expected, validate(session, bookFile, false),
+                    "Streaming through the session should report the same issues, run " + i);
+        }
+    }
+
+    @DisplayName("Test that a session can be shared by several threads.")
+    @Test
+    public void testSharedByThreads() throws Exception {
+        List<File> files = new ArrayList<>();
+        List<Integer> expectedIssues = new ArrayList<>();
+        for (int seed = 1; seed <= 8; seed++) {
+            PEFGenerator generator = new PEFGenerator();
+            generator.setSeed(seed);
+            generator.setIndexPagesPerVolume(2);
+            generator.setEmptyPageRate(0.1);
+            generator.setGapRate(0.1);
+            File file = tempDir.resolve("book-" + seed + ".xml").toFile();
+            expectedIssues.add(generator.write(file));
+            files.add(file);
+        }
+
+        ValidationSession session = new ValidationSession();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int round = 0; round < 5; round++) {
+                for (File file : files) {
+                    boolean document = round % 2 == 0;
+                    results.add(executor.submit(() -> {
+                        FindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(new ByteArrayOutputStream()));
+                        return document ? session.processFileWithDocument(file, writer) : session.processFile(file, writer);
+                    }));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expectedIssues.get(i % files.size()), results.get(i).get(),
+                        "Each file should get its own issues when the session is shared, task " + i);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @DisplayName("Test that options of the session are used by its checkers.")
+    @Test
+    public void testOptions() throws Exception {
+        ResultCache cache = new ResultCache(tempDir.resolve("cache").toFile(), 10);
+        ValidationSession session = new ValidationSession(
+                CheckOptions.defaults().withResultCache(cache).withFastScan(true), 0
+        );
+
+        assertSame(cache, session.getCheckOptions().getResultCache(), "The cache should be kept by the session");
+        assertTrue(session.getCheckOptions().isFastScan(), "Fast scan should be kept by the session");
+        assertSame(session.getCheckOptions(), session.newCheck(null).getOptions(),
+                "Checkers of the session should get its options");
+
+        ClassLoader classLoader = ValidationSessionTest.class.getClassLoader();
+        File bookFile = new File(classLoader.getResource("testfiles/simple-book.xml").getFile());
+        validate(session, bookFile, false);
+        assertTrue(cache.isIndexed(bookFile), "Checkers of the session should store results in its cache");
+    }
+}
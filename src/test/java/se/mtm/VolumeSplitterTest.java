@@ -0,0 +1,152 @@
+package se.mtm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VolumeSplitterTest {
+
+    private static final String VOLUME =
+            "<volume cols=\"32\">\n" +
+            "  <section><page><row>title</row></page></section>\n" +
+            "  <section>\n" +
+            "    <page><row>    _i</row><row>text</row></page>\n" +
+            "  </section>\n" +
+            "  <section>\n" +
+            "%s" +
+            "  </section>\n" +
+            "</volume>\n";
+
+    private static final String PRINT_SECTION =
+            "  <section><page><row/><row>::::</row></page></section>\n";
+
+    @TempDir
+    Path tempDir;
+
+    private static String page(String number) {
+        return "    <page><row>    #" + number + "                      #" + number + "</row><row>text</row></page>\n";
+    }
+
+    private static String book(String... volumes) {
+        StringBuilder xml = new StringBuilder(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<pef xmlns=\"http://www.daisy.org/ns/2008/pef\" version=\"2008-1\"><head/><body>\n"
+        );
+        for (String volume : volumes) {
+            xml.append(volume);
+        }
+        return xml.append("</body></pef>\n").toString();
+    }
+
+    private File write(String name, String xml) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    private String processFile(File file, int volumeThreads) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        TextFindingsWriter writer = new TextFindingsWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        ValidationSession session = new ValidationSession(CheckOptions.defaults(), volumeThreads);
+        try {
+            session.processFile(file, writer);
+        } catch (Exception e) {
+            writer.flush();
+            return buffer.toString("UTF-8") + e;
+        }
+        return buffer.toString("UTF-8");
+    }
+
+    private boolean split(File file) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ValidationSession session = new ValidationSession();
+            PEFCheck pefCheck = session.newCheck(new RecordingFindingsWriter(null));
+            pefCheck.startFile(file.getName());
+            return new VolumeSplitter(pefCheck, session, executor).process(file);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @DisplayName("Test that splitting reports the same issues as the sequential walk for generated books.")
+    @Test
+    public void testSameResultForGeneratedBooks() throws Exception {
+        for (int seed = 1; seed <= 5; seed++) {
+            PEFGenerator generator = new PEFGenerator();
+            generator.setSeed(seed);
+            generator.setVolumes(4);
+            generator.setIndexPagesPerVolume(3);
+            generator.setNoteInterval(7);
+            generator.setPrintSection(true);
+            generator.setEmptyPageRate(0.05);
+            generator.setGapRate(0.05);
+            File file = tempDir.resolve("generated-" + seed + ".xml").toFile();
+            generator.write(file);
+
+            assertTrue(split(file), "Generated books should be split");
+            String expected = processFile(file, 0);
+            assertEquals(expected, processFile(file, 3),
+                    "Splitting should report the same issues as the sequential walk for seed " + seed);
+        }
+    }
+
+    @DisplayName("Test that gaps between volumes are reported where the sequential walk reports them.")
+    @Test
+    public void testGapBetweenVolumes() throws Exception {
+        File file = write("gap.xml", book(
+                String.format(VOLUME, page("a") + page("b")),
+                String.format(VOLUME, page("e") + page("f") + page("h")),
+                String.format(VOLUME, "    <page><row>    _ii</row><row>text</row></page>\n"),
+                String.format(VOLUME, page("j")) + PRINT_SECTION
+        ));
+
+        String expected = processFile(file, 0);
+        assertTrue(expected.contains("Missing page(s)"), "Check that the book has issues to compare");
+        assertEquals(expected, processFile(file, 2), "Splitting should report the same issues");
+    }
+
+    @DisplayName("Test that a print section before the last volume gives the same error.")
+    @Test
+    public void testPrintSectionBeforeLastVolume() throws Exception {
+        File file = write("print.xml", book(
+                String.format(VOLUME, page("a") + page("c")).replace("</volume>", PRINT_SECTION + "</volume>"),
+                String.format(VOLUME, page("d") + "    <page><row>    </row></page>\n")
+        ));
+
+        String expected = processFile(file, 0);
+        assertTrue(expected.contains("InvalidFormatException"), "The sequential walk should fail");
+        assertEquals(expected, processFile(file, 2), "Splitting should fail the same way");
+    }
+
+    @DisplayName("Test that files that can't be split are left to the sequential walk.")
+    @Test
+    public void testFallback() throws Exception {
+        String volume = String.format(VOLUME, page("a") + page("c"));
+        String[] books = {
+                book(volume),
+                book(volume, "<!-- comment -->", volume),
+                book(volume, volume).replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\""),
+                book(volume, volume.replace("<volume", "<pef:volume xmlns:pef=\"http://www.daisy.org/ns/2008/pef\"")
+                        .replace("</volume>", "</pef:volume>")),
+        };
+        for (int i = 0; i < books.length; i++) {
+            File file = write("fallback-" + i + ".xml", books[i]);
+
+            assertFalse(split(file), "Book " + i + " should not be split");
+            assertEquals(processFile(file, 0), processFile(file, 2),
+                    "Falling back should report the same issues for book " + i);
+        }
+    }
+}